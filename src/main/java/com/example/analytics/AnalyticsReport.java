@@ -0,0 +1,107 @@
+package com.example.analytics;
+
+import java.util.List;
+
+/**
+ * Aggregates computed from one snapshot of the message table
+ */
+public class AnalyticsReport {
+
+    private final long computedAt;
+    private final long messageCount;
+    private final List<PosterCount> topPosters;
+    private final long bucketSeconds;
+    private final List<HistogramBucket> histogram;
+    private final long distinctPosters;
+    private final double distinctPostersError;
+
+    public AnalyticsReport(long computedAt, long messageCount, List<PosterCount> topPosters, long bucketSeconds,
+            List<HistogramBucket> histogram, long distinctPosters, double distinctPostersError) {
+        this.computedAt = computedAt;
+        this.messageCount = messageCount;
+        this.topPosters = topPosters;
+        this.bucketSeconds = bucketSeconds;
+        this.histogram = histogram;
+        this.distinctPosters = distinctPosters;
+        this.distinctPostersError = distinctPostersError;
+    }
+
+    /**
+     * @return When the snapshot was taken, in epoch milliseconds
+     */
+    public long getComputedAt() {
+        return computedAt;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return The accounts with the most messages, most first
+     */
+    public List<PosterCount> getTopPosters() {
+        return topPosters;
+    }
+
+    public long getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    /**
+     * @return Message counts of every non-empty bucket in ascending time order
+     */
+    public List<HistogramBucket> getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * @return The HyperLogLog estimate of the number of accounts that have posted
+     */
+    public long getDistinctPosters() {
+        return distinctPosters;
+    }
+
+    public double getDistinctPostersError() {
+        return distinctPostersError;
+    }
+
+    public static class PosterCount {
+        private final int accountId;
+        private final long messageCount;
+
+        public PosterCount(int accountId, long messageCount) {
+            this.accountId = accountId;
+            this.messageCount = messageCount;
+        }
+
+        public int getAccountId() {
+            return accountId;
+        }
+
+        public long getMessageCount() {
+            return messageCount;
+        }
+    }
+
+    public static class HistogramBucket {
+        private final long start;
+        private final long messageCount;
+
+        public HistogramBucket(long start, long messageCount) {
+            this.start = start;
+            this.messageCount = messageCount;
+        }
+
+        /**
+         * @return The first epoch second of the bucket
+         */
+        public long getStart() {
+            return start;
+        }
+
+        public long getMessageCount() {
+            return messageCount;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.analytics.AnalyticsReport.HistogramBucket;
+import com.example.analytics.AnalyticsReport.PosterCount;
+import com.example.entity.Message;
+import com.example.repository.ShardedMessageRepository;
+
+/**
+ * Computes top posters, an activity histogram and a distinct poster estimate
+ * over a snapshot of the message table, so reporting does not need a full
+ * export.
+ * 
+ * The snapshot copies only postedBy and timePostedEpoch into primitive arrays.
+ * The arrays are aggregated by a fork-join task that splits them into ranges;
+ * each leaf sorts its posters into counted runs, buckets its times, and fills a
+ * HyperLogLog sketch, and halves are merged on the way back up.
+ * 
+ * A report is reused until it is app.analytics.refresh-interval-ms old. The
+ * first request after that recomputes it while concurrent requests keep
+ * getting the previous report.
+ */
+@Service
+public class MessageAnalytics {
+
+    private static final int HLL_PRECISION = 14;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    private ShardedMessageRepository shardedMessageRepository;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Value("${app.analytics.refresh-interval-ms}")
+    private long refreshIntervalMillis;
+
+    @Value("${app.analytics.bucket-seconds}")
+    private long bucketSeconds;
+
+    @Value("${app.analytics.top-posters}")
+    private int topPosterCount;
+
+    @Value("${app.analytics.leaf-size}")
+    private int leafSize;
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile AnalyticsReport report;
+
+    public MessageAnalytics(PlatformTransactionManager transactionManager) {
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * @return The current report, computed first if there is none or it has
+     *         expired and no other request is already recomputing it
+     */
+    public AnalyticsReport report() {
+        AnalyticsReport current = report;
+        if (current != null && !isExpired(current)) {
+            return current;
+        }
+        if (current == null) {
+            refreshLock.lock();
+        } else if (!refreshLock.tryLock()) {
+            return current; // Another request is refreshing it
+        }
+        try {
+            current = report;
+            if (current == null || isExpired(current)) {
+                current = compute();
+                report = current;
+            }
+            return current;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private boolean isExpired(AnalyticsReport current) {
+        return System.currentTimeMillis() - current.getComputedAt() >= refreshIntervalMillis;
+    }
+
+    private AnalyticsReport compute() {
+        long computedAt = System.currentTimeMillis();
+        Snapshot snapshot = readOnlyTransaction.execute(status -> loadSnapshot());
+        Partial total = snapshot.size == 0 ? new Partial()
+                : ForkJoinPool.commonPool().invoke(new AggregateTask(snapshot, 0, snapshot.size));
+
+        List<HistogramBucket> histogram = new ArrayList<>(total.histogram.size());
+        for (Map.Entry<Long, long[]> bucket : total.histogram.entrySet()) {
+            histogram.add(new HistogramBucket(bucket.getKey(), bucket.getValue()[0]));
+        }
+        return new AnalyticsReport(computedAt, snapshot.size, topPosters(total), bucketSeconds,
+                Collections.unmodifiableList(histogram), total.distinct.estimate(), total.distinct.standardError());
+    }
+
+    private Snapshot loadSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        if (shardedMessageRepository != null) {
+            for (Message message : shardedMessageRepository.findAll()) {
+                snapshot.add(message.getPostedBy(), message.getTimePostedEpoch());
+            }
+        } else {
+            jdbcTemplate.query("select postedBy, timePostedEpoch from message",
+                    (RowCallbackHandler) rs -> snapshot.add(rs.getInt(1), rs.getLong(2)));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Picks the accounts with the most messages with a bounded min-heap
+     */
+    private List<PosterCount> topPosters(Partial total) {
+        PriorityQueue<PosterCount> heap = new PriorityQueue<>(
+                (a, b) -> a.getMessageCount() != b.getMessageCount()
+                        ? Long.compare(a.getMessageCount(), b.getMessageCount())
+                        : Integer.compare(b.getAccountId(), a.getAccountId()));
+        for (int i = 0; i < total.runs; i++) {
+            if (heap.size() < topPosterCount) {
+                heap.add(new PosterCount(total.posters[i], total.counts[i]));
+            } else if (total.counts[i] > heap.peek().getMessageCount()) {
+                heap.poll();
+                heap.add(new PosterCount(total.posters[i], total.counts[i]));
+            }
+        }
+        List<PosterCount> top = new ArrayList<>(heap);
+        top.sort(heap.comparator().reversed());
+        return Collections.unmodifiableList(top);
+    }
+
+    /**
+     * The two columns of the message table the reports need
+     */
+    private static final class Snapshot {
+        int[] postedBy = new int[1024];
+        long[] timePostedEpoch = new long[1024];
+        int size;
+
+        void add(int poster, long time) {
+            if (size == postedBy.length) {
+                postedBy = Arrays.copyOf(postedBy, size * 2);
+                timePostedEpoch = Arrays.copyOf(timePostedEpoch, size * 2);
+            }
+            postedBy[size] = poster;
+            timePostedEpoch[size] = time;
+            size++;
+        }
+    }
+
+    /**
+     * Aggregates of one range of the snapshot. Posters are held as runs sorted
+     * by accountId, so two partials merge in one linear pass.
+     */
+    private static final class Partial {
+        int[] posters = new int[0];
+        long[] counts = new long[0];
+        int runs;
+        final TreeMap<Long, long[]> histogram = new TreeMap<>();
+        final HyperLogLog distinct = new HyperLogLog(HLL_PRECISION);
+
+        Partial merge(Partial other) {
+            int[] mergedPosters = new int[runs + other.runs];
+            long[] mergedCounts = new long[runs + other.runs];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < runs || j < other.runs) {
+                if (j == other.runs || (i < runs && posters[i] < other.posters[j])) {
+                    mergedPosters[n] = posters[i];
+                    mergedCounts[n++] = counts[i++];
+                } else if (i == runs || other.posters[j] < posters[i]) {
+                    mergedPosters[n] = other.posters[j];
+                    mergedCounts[n++] = other.counts[j++];
+                } else {
+                    mergedPosters[n] = posters[i];
+                    mergedCounts[n++] = counts[i++] + other.counts[j++];
+                }
+            }
+            posters = mergedPosters;
+            counts = mergedCounts;
+            runs = n;
+
+            for (Map.Entry<Long, long[]> bucket : other.histogram.entrySet()) {
+                histogram.computeIfAbsent(bucket.getKey(), start -> new long[1])[0] += bucket.getValue()[0];
+            }
+            distinct.merge(other.distinct);
+            return this;
+        }
+    }
+
+    private final class AggregateTask extends RecursiveTask<Partial> {
+        private final Snapshot snapshot;
+        private final int from;
+        private final int to;
+
+        AggregateTask(Snapshot snapshot, int from, int to) {
+            this.snapshot = snapshot;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from > leafSize) {
+                int middle = (from + to) >>> 1;
+                AggregateTask left = new AggregateTask(snapshot, from, middle);
+                left.fork();
+                Partial right = new AggregateTask(snapshot, middle, to).compute();
+                return left.join().merge(right);
+            }
+
+            Partial partial = new Partial();
+            int[] sorted = Arrays.copyOfRange(snapshot.postedBy, from, to);
+            Arrays.sort(sorted);
+            partial.posters = new int[sorted.length];
+            partial.counts = new long[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                if (partial.runs > 0 && partial.posters[partial.runs - 1] == sorted[i]) {
+                    partial.counts[partial.runs - 1]++;
+                } else {
+                    partial.posters[partial.runs] = sorted[i];
+                    partial.counts[partial.runs++] = 1;
+                    partial.distinct.add(sorted[i]);
+                }
+            }
+            for (int i = from; i < to; i++) {
+                long start = Math.floorDiv(snapshot.timePostedEpoch[i], bucketSeconds) * bucketSeconds;
+                partial.histogram.computeIfAbsent(start, key -> new long[1])[0]++;
+            }
+            return partial;
+        }
+    }
+}
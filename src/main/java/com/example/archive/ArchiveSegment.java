@@ -0,0 +1,277 @@
+package com.example.archive;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.example.entity.Message;
+
+/**
+ * An immutable file of archived messages, sorted by messageId.
+ * 
+ * The data file is a sequence of deflate-compressed blocks of up to
+ * {@link #BLOCK_RECORDS} messages and is read through a MappedByteBuffer. A
+ * companion index file holds one entry per block: the first and last
+ * messageId, the block's position in the data file and the distinct postedBy
+ * values it contains. The index is small enough to keep on the heap, and a
+ * lookup decompresses only the blocks it points at.
+ */
+class ArchiveSegment {
+
+    static final int BLOCK_RECORDS = 64;
+    static final String DATA_SUFFIX = ".dat";
+    static final String INDEX_SUFFIX = ".idx";
+
+    private final Path dataFile;
+    private final MappedByteBuffer data;
+    private final int[] firstIds;
+    private final int[] lastIds;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[][] postedBy;
+
+    private ArchiveSegment(Path dataFile, MappedByteBuffer data, int[] firstIds, int[] lastIds, long[] offsets,
+            int[] lengths, int[][] postedBy) {
+        this.dataFile = dataFile;
+        this.data = data;
+        this.firstIds = firstIds;
+        this.lastIds = lastIds;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.postedBy = postedBy;
+    }
+
+    /**
+     * Writes a new segment. Both files are written under temporary names and
+     * moved into place once synced, data file last, so a segment is either
+     * complete or absent.
+     * 
+     * @param base     The path of the segment without a suffix
+     * @param messages The messages to archive, sorted by messageId
+     */
+    static void write(Path base, List<Message> messages) throws IOException {
+        Path dataTmp = Paths.tmp(base, DATA_SUFFIX);
+        Path indexTmp = Paths.tmp(base, INDEX_SUFFIX);
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        int blocks = (messages.size() + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+        indexOut.writeInt(blocks);
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (FileChannel out = FileChannel.open(dataTmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long offset = 0;
+            for (int from = 0; from < messages.size(); from += BLOCK_RECORDS) {
+                List<Message> block = messages.subList(from, Math.min(from + BLOCK_RECORDS, messages.size()));
+                byte[] compressed = compress(deflater, encode(block));
+                ByteBuffer buffer = ByteBuffer.wrap(compressed);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+
+                int[] accounts = block.stream().mapToInt(Message::getPostedBy).distinct().sorted().toArray();
+                indexOut.writeInt(block.get(0).getMessageId());
+                indexOut.writeInt(block.get(block.size() - 1).getMessageId());
+                indexOut.writeLong(offset);
+                indexOut.writeInt(compressed.length);
+                indexOut.writeInt(accounts.length);
+                for (int account : accounts) {
+                    indexOut.writeInt(account);
+                }
+                offset += compressed.length;
+            }
+            out.force(true);
+        } finally {
+            deflater.end();
+        }
+        indexOut.flush();
+        Files.write(indexTmp, index.toByteArray());
+
+        Files.move(indexTmp, Paths.with(base, INDEX_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        Files.move(dataTmp, Paths.with(base, DATA_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Opens a segment from its data file
+     */
+    static ArchiveSegment open(Path dataFile) throws IOException {
+        String name = dataFile.getFileName().toString();
+        Path indexFile = dataFile.resolveSibling(name.substring(0, name.length() - DATA_SUFFIX.length())
+                + INDEX_SUFFIX);
+        int[] firstIds;
+        int[] lastIds;
+        long[] offsets;
+        int[] lengths;
+        int[][] postedBy;
+        try (InputStream in = Files.newInputStream(indexFile);
+                DataInputStream indexIn = new DataInputStream(new BufferedInputStream(in))) {
+            int blocks = indexIn.readInt();
+            firstIds = new int[blocks];
+            lastIds = new int[blocks];
+            offsets = new long[blocks];
+            lengths = new int[blocks];
+            postedBy = new int[blocks][];
+            for (int i = 0; i < blocks; i++) {
+                firstIds[i] = indexIn.readInt();
+                lastIds[i] = indexIn.readInt();
+                offsets[i] = indexIn.readLong();
+                lengths[i] = indexIn.readInt();
+                postedBy[i] = new int[indexIn.readInt()];
+                for (int j = 0; j < postedBy[i].length; j++) {
+                    postedBy[i][j] = indexIn.readInt();
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ArchiveSegment(dataFile, data, firstIds, lastIds, offsets, lengths, postedBy);
+        }
+    }
+
+    Path dataFile() {
+        return dataFile;
+    }
+
+    /**
+     * Finds a message by id, decompressing at most one block
+     */
+    Message findById(int messageId) {
+        if (firstIds.length == 0 || messageId < firstIds[0] || messageId > lastIds[lastIds.length - 1]) {
+            return null;
+        }
+        int block = Arrays.binarySearch(firstIds, messageId);
+        if (block < 0) {
+            block = -block - 2;
+        }
+        if (messageId > lastIds[block]) {
+            return null;
+        }
+        for (Message message : readBlock(block)) {
+            if (message.getMessageId() == messageId) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds an account's messages to a list, decompressing only the blocks whose
+     * index entry lists the account
+     */
+    void collectByPostedBy(int accountId, List<Message> into) {
+        for (int block = 0; block < postedBy.length; block++) {
+            if (Arrays.binarySearch(postedBy[block], accountId) >= 0) {
+                for (Message message : readBlock(block)) {
+                    if (message.getPostedBy() == accountId) {
+                        into.add(message);
+                    }
+                }
+            }
+        }
+    }
+
+    private List<Message> readBlock(int block) {
+        byte[] compressed = new byte[lengths[block]];
+        ByteBuffer view = data.duplicate();
+        view.position((int) offsets[block]);
+        view.get(compressed);
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] chunk = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated block " + block + " in " + dataFile);
+                }
+                raw.write(chunk, 0, n);
+            }
+            return decode(ByteBuffer.wrap(raw.toByteArray()));
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt block " + block + " in " + dataFile, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] encode(List<Message> block) {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(block.size() * 64);
+        DataOutputStream out = new DataOutputStream(raw);
+        try {
+            out.writeInt(block.size());
+            for (Message message : block) {
+                byte[] text = message.getMessageText() != null
+                        ? message.getMessageText().getBytes(StandardCharsets.UTF_8)
+                        : new byte[0];
+                out.writeInt(message.getMessageId());
+                out.writeInt(message.getPostedBy());
+                out.writeLong(message.getTimePostedEpoch());
+                out.writeShort(text.length);
+                out.write(text);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return raw.toByteArray();
+    }
+
+    private static List<Message> decode(ByteBuffer raw) {
+        int count = raw.getInt();
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int messageId = raw.getInt();
+            int postedBy = raw.getInt();
+            long timePostedEpoch = raw.getLong();
+            byte[] text = new byte[raw.getShort() & 0xFFFF];
+            raw.get(text);
+            messages.add(new Message(messageId, postedBy, new String(text, StandardCharsets.UTF_8),
+                    timePostedEpoch));
+        }
+        return messages;
+    }
+
+    private static byte[] compress(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] chunk = new byte[4096];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            compressed.write(chunk, 0, n);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Path helpers for segment files
+     */
+    private static final class Paths {
+        static Path with(Path base, String suffix) {
+            return base.resolveSibling(base.getFileName() + suffix);
+        }
+
+        static Path tmp(Path base, String suffix) {
+            return base.resolveSibling(base.getFileName() + suffix + ".tmp");
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.archive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.entity.Message;
+
+/**
+ * Cold storage for messages moved out of the message table by the
+ * {@link MessageArchiver}. Holds every segment in the archive directory and
+ * answers lookups from them, newest segment first. Enabled with
+ * app.archive.enabled=true.
+ */
+@Component
+@ConditionalOnProperty(name = "app.archive.enabled", havingValue = "true")
+public class MessageArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageArchive.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    @Value("${app.archive.dir}")
+    private String dir;
+
+    private final List<ArchiveSegment> segments = new CopyOnWriteArrayList<>();
+    private long nextSegment;
+
+    @PostConstruct
+    public void open() throws IOException {
+        Path directory = Paths.get(dir);
+        Files.createDirectories(directory);
+        List<Path> dataFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            dataFiles = files
+                    .filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && file.getFileName().toString().endsWith(ArchiveSegment.DATA_SUFFIX))
+                    .sorted(Comparator.comparing(Path::getFileName).reversed())
+                    .collect(Collectors.toList());
+        }
+        for (Path dataFile : dataFiles) {
+            segments.add(ArchiveSegment.open(dataFile));
+            nextSegment = Math.max(nextSegment, segmentNumber(dataFile) + 1);
+        }
+        log.info("Opened {} archive segments in {}", segments.size(), directory.toAbsolutePath());
+    }
+
+    /**
+     * Writes messages to a new segment and makes it visible to lookups
+     * 
+     * @param messages The messages to archive, sorted by messageId
+     */
+    public synchronized void append(List<Message> messages) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Path base = Paths.get(dir).resolve(String.format("%s%012d", SEGMENT_PREFIX, nextSegment++));
+        ArchiveSegment.write(base, messages);
+        segments.add(0, ArchiveSegment.open(base.resolveSibling(base.getFileName() + ArchiveSegment.DATA_SUFFIX)));
+    }
+
+    /**
+     * Retrieves an archived message by its id
+     */
+    public Optional<Message> findById(int messageId) {
+        for (ArchiveSegment segment : segments) {
+            Message message = segment.findById(messageId);
+            if (message != null) {
+                return Optional.of(message);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Retrieves an account's archived messages, in no particular order
+     */
+    public List<Message> findByPostedBy(int accountId) {
+        List<Message> messages = new ArrayList<>();
+        for (ArchiveSegment segment : segments) {
+            segment.collectByPostedBy(accountId, messages);
+        }
+        return messages;
+    }
+
+    private static long segmentNumber(Path dataFile) {
+        String name = dataFile.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                name.length() - ArchiveSegment.DATA_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.archive;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.entity.Message;
+import com.example.repository.MessageReadRepository;
+
+/**
+ * Periodically moves messages older than app.archive.max-age-seconds, by
+ * timePostedEpoch, from the message table into a new {@link MessageArchive}
+ * segment. Each batch is deleted and written in one transaction: a row is
+ * deleted only at the version that was read, and only the rows whose delete
+ * matched go into the segment, which is made durable before the transaction
+ * commits. A row edited or deleted after the batch was read is left out, so an
+ * edit stays in the table and a deleted message does not come back from the
+ * archive. If the process dies between the segment write and the commit, the
+ * rows exist in both places and the hot copy wins on reads until the next run
+ * archives them again.
+ */
+@Component
+@ConditionalOnProperty(name = "app.archive.enabled", havingValue = "true")
+public class MessageArchiver implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageArchiver.class);
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${app.archive.max-age-seconds}")
+    private long maxAgeSeconds;
+
+    @Value("${app.archive.batch-size}")
+    private int batchSize;
+
+    @Value("${app.archive.interval-ms}")
+    private long intervalMillis;
+
+    private ScheduledExecutorService executor;
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "message-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::archiveSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void archiveSafely() {
+        try {
+            int archived = archive();
+            if (archived > 0) {
+                log.info("Archived {} messages", archived);
+            }
+        } catch (Exception e) {
+            log.warn("Message archival failed, will retry", e);
+        }
+    }
+
+    /**
+     * Archives old messages one batch, and one segment, at a time
+     * 
+     * @return The number of messages archived
+     */
+    int archive() throws IOException {
+        long cutoff = System.currentTimeMillis() / 1000 - maxAgeSeconds;
+        int archived = 0;
+        List<Message> batch;
+        do {
+            batch = jdbcTemplate.query(
+                    "select messageId, postedBy, messageText, timePostedEpoch, version from message"
+                            + " where timePostedEpoch < ? order by messageId limit ?",
+                    MessageReadRepository.MESSAGE_ROW_MAPPER, cutoff, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            archived += archiveBatch(batch);
+        } while (batch.size() == batchSize && !Thread.currentThread().isInterrupted());
+        return archived;
+    }
+
+    /**
+     * Deletes a batch of messages at the versions they were read with and
+     * writes the deleted ones to a new segment, in one transaction
+     * 
+     * @param batch Messages read from the table, sorted by messageId
+     * @return The number of messages archived
+     */
+    int archiveBatch(List<Message> batch) throws IOException {
+        try {
+            return transactionTemplate.execute(status -> {
+                int[] deleted = jdbcTemplate.batchUpdate("delete from message where messageId = ? and version = ?",
+                        batch, batch.size(), (ps, message) -> {
+                            ps.setInt(1, message.getMessageId());
+                            ps.setInt(2, message.getVersion());
+                        })[0];
+                List<Message> archived = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    if (deleted[i] > 0) {
+                        archived.add(batch.get(i));
+                    }
+                }
+                if (archived.size() < batch.size()) {
+                    log.info("Left {} messages changed since they were read out of the archive",
+                            batch.size() - archived.size());
+                }
+                try {
+                    // A failed write rolls the deletes back
+                    messageArchive.append(archived);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return archived.size();
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
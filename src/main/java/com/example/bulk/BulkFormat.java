@@ -0,0 +1,27 @@
+package com.example.bulk;
+
+/**
+ * File formats supported by bulk import and export
+ */
+public enum BulkFormat {
+    CSV("text/csv"), NDJSON("application/x-ndjson");
+
+    private final String contentType;
+
+    BulkFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Looks a format up by name, ignoring case
+     * 
+     * @throws IllegalArgumentException if there is no such format
+     */
+    public static BulkFormat of(String name) {
+        return valueOf(name.toUpperCase());
+    }
+}
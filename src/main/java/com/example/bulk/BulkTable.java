@@ -0,0 +1,55 @@
+package com.example.bulk;
+
+import java.sql.Types;
+
+/**
+ * The tables that can be exported and imported, with their columns in file
+ * order.
+ */
+public enum BulkTable {
+    ACCOUNT("account", "accountId",
+            new String[] { "accountId", "username", "password" },
+            new int[] { Types.INTEGER, Types.VARCHAR, Types.VARCHAR }),
+    MESSAGE("message", "messageId",
+            new String[] { "messageId", "postedBy", "messageText", "timePostedEpoch" },
+            new int[] { Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.BIGINT });
+
+    final String tableName;
+    final String idColumn;
+    final String[] columns;
+    final int[] types;
+
+    BulkTable(String tableName, String idColumn, String[] columns, int[] types) {
+        this.tableName = tableName;
+        this.idColumn = idColumn;
+        this.columns = columns;
+        this.types = types;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    String selectSql() {
+        return "select " + String.join(", ", columns) + " from " + tableName + " order by " + idColumn;
+    }
+
+    String insertSql() {
+        return "insert into " + tableName + " (" + String.join(", ", columns) + ") values ("
+                + "?, ".repeat(columns.length - 1) + "?)";
+    }
+
+    /**
+     * Looks a table up by name, ignoring case
+     * 
+     * @throws IllegalArgumentException if there is no such table
+     */
+    public static BulkTable of(String name) {
+        for (BulkTable table : values()) {
+            if (table.tableName.equalsIgnoreCase(name)) {
+                return table;
+            }
+        }
+        throw new IllegalArgumentException("Unknown table " + name);
+    }
+}
@@ -0,0 +1,475 @@
+package com.example.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.entity.Message;
+import com.example.event.MessageChangedEvent;
+import com.example.repository.ShardedMessageRepository;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Streams the account and message tables to and from CSV or NDJSON.
+ * 
+ * Export reads a forward-only cursor and encodes rows into a direct buffer
+ * that is written to the target channel whenever it fills. Import parses the
+ * input in chunks and inserts each chunk with one batched statement in its own
+ * transaction, recording the chunk in import_checkpoint. Re-running a job with
+ * the same id skips the chunks it already committed. Each imported message is
+ * published as a MessageChangedEvent within its chunk's transaction, so the
+ * indexes, caches and outbox see it as they would a message posted through the
+ * API once the chunk commits. Before a chunk of messages is inserted, its
+ * postedBy values are checked against the account table in the same
+ * transaction, so a chunk naming an unknown account is rejected whole, with
+ * the missing ids in the error.
+ * 
+ * Every imported row must carry its id, so that a re-run inserts the same
+ * rows. With sharding on, messages are exported from each shard in turn and
+ * imported onto their accounts' shards. The shard writes commit on their own
+ * as the last step of the chunk, and a re-run skips the messages a shard
+ * already holds.
+ */
+@Service
+public class BulkTransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkTransferService.class);
+    private static final int EXPORT_BUFFER_BYTES = 64 * 1024;
+    private static final int EXPORT_FETCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private ShardedMessageRepository shardedMessageRepository;
+
+    @Value("${app.bulk.chunk-size}")
+    private int chunkSize;
+
+    /**
+     * Writes every row of a table to a channel, in id order, or shard by shard
+     * in id order within each shard for sharded messages
+     * 
+     * @param table  The table to export
+     * @param format The file format
+     * @param target Where to write the file
+     * @return Row count and throughput
+     */
+    public TransferReport export(BulkTable table, BulkFormat format, WritableByteChannel target) {
+        long startedAt = System.currentTimeMillis();
+        ChannelWriter out = new ChannelWriter(target);
+        StringBuilder line = new StringBuilder(512);
+        if (format == BulkFormat.CSV) {
+            line.append(String.join(",", table.columns)).append('\n');
+            out.write(line);
+        }
+
+        long[] rows = new long[1];
+        RowCallbackHandler writeRow = rs -> {
+            line.setLength(0);
+            if (format == BulkFormat.CSV) {
+                appendCsv(table, rs, line);
+            } else {
+                appendJson(table, rs, line);
+            }
+            out.write(line);
+            rows[0]++;
+        };
+        if (isSharded(table)) {
+            shardedMessageRepository.queryEachShard(table.selectSql(), EXPORT_FETCH_SIZE, writeRow);
+        } else {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(table.selectSql(), ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(EXPORT_FETCH_SIZE);
+                return ps;
+            }, writeRow);
+        }
+        out.flush();
+
+        TransferReport report = new TransferReport(table.tableName, rows[0], 0, 0,
+                System.currentTimeMillis() - startedAt);
+        log.info("Exported {}", report);
+        return report;
+    }
+
+    /**
+     * Loads rows from a channel into a table
+     * 
+     * @param table  The table to load
+     * @param format The file format
+     * @param source The file to read
+     * @param jobId  Identifies the job across retries, so a re-run resumes after
+     *               the last committed chunk
+     * @return Row and chunk counts and throughput
+     * @throws DataAccessException      if a chunk cannot be inserted, including
+     *                                  a chunk of messages posted by unknown
+     *                                  accounts
+     * @throws IllegalArgumentException if a row has no id or cannot be parsed
+     */
+    public TransferReport importRows(BulkTable table, BulkFormat format, ReadableByteChannel source, String jobId)
+            throws IOException {
+        long startedAt = System.currentTimeMillis();
+        ensureCheckpointTable();
+        long committedChunks = committedChunks(jobId, table);
+
+        BufferedReader reader = new BufferedReader(Channels.newReader(source, StandardCharsets.UTF_8.newDecoder(),
+                EXPORT_BUFFER_BYTES));
+        if (format == BulkFormat.CSV) {
+            readCsvRecord(reader); // header
+        }
+
+        long chunk = 0;
+        long read = 0;
+        long rows = 0;
+        List<Object[]> batch = new ArrayList<>(chunkSize);
+        while (true) {
+            Object[] row = nextRow(table, format, reader);
+            if (row != null) {
+                read++;
+                if (row[0] == null) {
+                    throw new IllegalArgumentException("Row " + read + " has no " + table.idColumn);
+                }
+                batch.add(row);
+            }
+            if (batch.size() == chunkSize || (row == null && !batch.isEmpty())) {
+                if (chunk >= committedChunks) {
+                    commitChunk(table, jobId, chunk, batch);
+                    rows += batch.size();
+                }
+                chunk++;
+                batch.clear();
+            }
+            if (row == null) {
+                break;
+            }
+        }
+        advanceIdSequence();
+
+        TransferReport report = new TransferReport(table.tableName, rows, chunk - Math.min(chunk, committedChunks),
+                Math.min(chunk, committedChunks), System.currentTimeMillis() - startedAt);
+        log.info("Imported {} for job {}", report, jobId);
+        return report;
+    }
+
+    private void commitChunk(BulkTable table, String jobId, long chunk, List<Object[]> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (table == BulkTable.MESSAGE) {
+                checkPostedBy(batch);
+            }
+            if (!isSharded(table)) {
+                jdbcTemplate.batchUpdate(table.insertSql(), batch, batch.size(), (ps, row) -> {
+                    for (int i = 0; i < row.length; i++) {
+                        ps.setObject(i + 1, row[i], table.types[i]);
+                    }
+                });
+            }
+            if (jdbcTemplate.update("update import_checkpoint set chunksCommitted = ? where jobId = ? and tableName = ?",
+                    chunk + 1, jobId, table.tableName) == 0) {
+                jdbcTemplate.update("insert into import_checkpoint (jobId, tableName, chunksCommitted) values (?, ?, ?)",
+                        jobId, table.tableName, chunk + 1);
+            }
+            if (table == BulkTable.MESSAGE) {
+                List<Message> messages = toMessages(batch);
+                if (isSharded(table)) {
+                    shardedMessageRepository.insertAllExisting(messages);
+                }
+                for (Message message : messages) {
+                    eventPublisher.publishEvent(MessageChangedEvent.created(message));
+                }
+            }
+        });
+    }
+
+    private boolean isSharded(BulkTable table) {
+        return table == BulkTable.MESSAGE && shardedMessageRepository != null;
+    }
+
+    /**
+     * Checks that every account a chunk of messages names exists, with one
+     * query for the chunk's distinct postedBy values
+     * 
+     * @throws DataIntegrityViolationException naming the accounts that do not
+     *                                         exist
+     */
+    private void checkPostedBy(List<Object[]> batch) {
+        Set<Integer> missing = new TreeSet<>();
+        for (Object[] row : batch) {
+            if (row[1] != null) {
+                missing.add((Integer) row[1]);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("select accountId from account where accountId in (");
+        sql.append("?, ".repeat(missing.size() - 1)).append("?)");
+        List<Integer> found = jdbcTemplate.queryForList(sql.toString(), Integer.class, missing.toArray());
+        missing.removeAll(found);
+        if (!missing.isEmpty()) {
+            throw new DataIntegrityViolationException("Messages posted by unknown accounts " + missing);
+        }
+    }
+
+    private static List<Message> toMessages(List<Object[]> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (Object[] row : batch) {
+            Message message = new Message((Integer) row[0], (Integer) row[1], (String) row[2], (Long) row[3]);
+            message.setVersion(0);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private void ensureCheckpointTable() {
+        jdbcTemplate.execute("create table if not exists import_checkpoint ("
+                + "jobId varchar(128), tableName varchar(64), chunksCommitted bigint, primary key (jobId, tableName))");
+    }
+
+    private long committedChunks(String jobId, BulkTable table) {
+        List<Long> committed = jdbcTemplate.queryForList(
+                "select chunksCommitted from import_checkpoint where jobId = ? and tableName = ?", Long.class, jobId,
+                table.tableName);
+        return committed.isEmpty() ? 0 : committed.get(0);
+    }
+
+    /**
+     * Moves the shared Hibernate id sequence past any imported ids, so new rows
+     * created through the API do not collide with them
+     */
+    private void advanceIdSequence() {
+        Long maxId = jdbcTemplate.queryForObject(
+                "select greatest(coalesce((select max(accountId) from account), 0),"
+                        + " coalesce((select max(messageId) from message), 0))", Long.class);
+        List<Long> next = jdbcTemplate.queryForList(
+                "select base_value from information_schema.sequences where lower(sequence_name) = 'hibernate_sequence'",
+                Long.class);
+        if (!next.isEmpty() && next.get(0) != null && next.get(0) <= maxId) {
+            jdbcTemplate.execute("alter sequence hibernate_sequence restart with " + (maxId + 1));
+        }
+    }
+
+    private static void appendCsv(BulkTable table, ResultSet rs, StringBuilder line) throws SQLException {
+        for (int i = 0; i < table.columns.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            String value = rs.getString(i + 1);
+            if (value == null) {
+                continue;
+            }
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+                    || value.indexOf('\r') >= 0 || value.isEmpty()) {
+                line.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                line.append(value);
+            }
+        }
+        line.append('\n');
+    }
+
+    private static void appendJson(BulkTable table, ResultSet rs, StringBuilder line) throws SQLException {
+        line.append('{');
+        for (int i = 0; i < table.columns.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append('"').append(table.columns[i]).append("\":");
+            String value = rs.getString(i + 1);
+            if (value == null) {
+                line.append("null");
+            } else if (table.types[i] == Types.VARCHAR) {
+                line.append('"').append(JsonStringEncoder.getInstance().quoteAsString(value)).append('"');
+            } else {
+                line.append(value);
+            }
+        }
+        line.append("}\n");
+    }
+
+    /**
+     * Reads one CSV record, following quoted fields across line breaks
+     * 
+     * @return The fields, with null for empty unquoted fields, or null at end of input
+     */
+    private static List<String> readCsvRecord(BufferedReader reader) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Unterminated quoted CSV field");
+                }
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        reader.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',' || c == '\n' || c == -1) {
+                fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+                field.setLength(0);
+                wasQuoted = false;
+                if (c != ',') {
+                    return fields;
+                }
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+
+    /**
+     * Reads the next row, skipping blank lines
+     * 
+     * @return The column values in table order, or null at end of input
+     */
+    private Object[] nextRow(BulkTable table, BulkFormat format, BufferedReader reader) throws IOException {
+        if (format == BulkFormat.CSV) {
+            List<String> fields;
+            do {
+                fields = readCsvRecord(reader);
+            } while (fields != null && fields.size() == 1 && fields.get(0) == null);
+            return fields == null ? null : parseCsv(table, fields);
+        }
+
+        String line;
+        do {
+            line = reader.readLine();
+        } while (line != null && line.isBlank());
+        return line == null ? null : parseJson(table, line);
+    }
+
+    private static Object[] parseCsv(BulkTable table, List<String> fields) {
+        if (fields.size() != table.columns.length) {
+            throw new IllegalArgumentException("Expected " + table.columns.length + " CSV fields but found "
+                    + fields.size());
+        }
+        Object[] row = new Object[fields.size()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = convert(fields.get(i), table.types[i]);
+        }
+        return row;
+    }
+
+    private Object[] parseJson(BulkTable table, String line) throws IOException {
+        JsonNode node = objectMapper.readTree(line);
+        Object[] row = new Object[table.columns.length];
+        for (int i = 0; i < row.length; i++) {
+            JsonNode value = node.get(table.columns[i]);
+            row[i] = value == null || value.isNull() ? null : convert(value.asText(), table.types[i]);
+        }
+        return row;
+    }
+
+    private static Object convert(String value, int type) {
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case Types.INTEGER:
+                return Integer.valueOf(value);
+            case Types.BIGINT:
+                return Long.valueOf(value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Encodes text into a direct buffer and writes the buffer to a channel
+     * whenever it fills
+     */
+    private static final class ChannelWriter {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(EXPORT_BUFFER_BYTES);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+        ChannelWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(CharSequence text) {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, false);
+                if (result.isOverflow()) {
+                    drain();
+                } else {
+                    break;
+                }
+            }
+        }
+
+        void flush() {
+            drain();
+        }
+
+        private void drain() {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.bulk;
+
+/**
+ * The outcome of an import or export run
+ */
+public class TransferReport {
+    private final String table;
+    private final long rows;
+    private final long chunks;
+    private final long skippedChunks;
+    private final long elapsedMillis;
+
+    public TransferReport(String table, long rows, long chunks, long skippedChunks, long elapsedMillis) {
+        this.table = table;
+        this.rows = rows;
+        this.chunks = chunks;
+        this.skippedChunks = skippedChunks;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return The rows written by this run
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The chunks committed by this run
+     */
+    public long getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return The chunks skipped because an earlier run of the same job had already committed them
+     */
+    public long getSkippedChunks() {
+        return skippedChunks;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getRowsPerSecond() {
+        return elapsedMillis == 0 ? rows * 1000 : rows * 1000 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferReport{" +
+                "table='" + table + '\'' +
+                ", rows=" + rows +
+                ", chunks=" + chunks +
+                ", skippedChunks=" + skippedChunks +
+                ", elapsedMillis=" + elapsedMillis +
+                ", rowsPerSecond=" + getRowsPerSecond() +
+                '}';
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.event.MessageChangedEvent;
+import com.example.event.RemoteInvalidationEvent;
+
+/**
+ * An in-memory index from accountId to the sorted ids of the account's
+ * messages, so listing an account's messages is a lookup by primary key
+ * rather than a scan by postedBy. Enabled with app.account-index.enabled=true.
+ * 
+ * Each account's ids are held in a growable int[] with a length, reached
+ * through an {@link IntIntOpenHashMap} from accountId to a row of those arrays,
+ * so the index holds no boxed Integers and costs about four bytes per message.
+ * 
+ * The index is loaded from the message table on startup and then kept current
+ * by creation and deletion events after they commit. The load holds the write
+ * lock, so events that commit during it apply afterwards. Adding an id is a
+ * no-op if the id is already present, and removing an absent id does nothing,
+ * so such an event is safe whether or not the load saw its row. Until the load
+ * finishes, {@link #findMessageIds} returns null and callers query the table.
+ */
+@Component
+@ConditionalOnProperty(name = "app.account-index.enabled", havingValue = "true")
+public class AccountMessageIndex implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountMessageIndex.class);
+
+    private static final int[] NO_IDS = new int[0];
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntIntOpenHashMap rows = new IntIntOpenHashMap(1024);
+    private int[][] ids = new int[16][];
+    private int[] sizes = new int[16];
+    private int rowCount;
+    private long messageCount;
+
+    private volatile boolean ready;
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        long startedAt = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            load();
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        running = true;
+        log.info("Indexed {} messages of {} accounts in {} ms", messageCount, rowCount,
+                System.currentTimeMillis() - startedAt);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return The ids of the account's messages in ascending order, empty if it
+     *         has none, or null if the index is not loaded yet
+     */
+    public int[] findMessageIds(int accountId) {
+        if (!ready) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            int row = rows.get(accountId);
+            return row == IntIntOpenHashMap.MISSING ? NO_IDS : Arrays.copyOf(ids[row], sizes[row]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageChanged(MessageChangedEvent event) {
+        if (event.getType() == MessageChangedEvent.Type.UPDATED) {
+            return; // The author of a message never changes
+        }
+        lock.writeLock().lock();
+        try {
+            if (event.getType() == MessageChangedEvent.Type.CREATED) {
+                add(event.getPostedBy(), event.getMessageId());
+            } else {
+                remove(event.getPostedBy(), event.getMessageId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reloads the ids of accounts whose messages changed on another instance,
+     * or of every account if some of its invalidations were lost. The rows are
+     * read under the write lock, so a local event that commits meanwhile
+     * applies after the reload rather than being overwritten by it.
+     */
+    @EventListener
+    public void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (!ready || (!event.isEverything() && event.getAccountIds().length == 0)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (event.isEverything()) {
+                rows.clear();
+                ids = new int[16][];
+                sizes = new int[16];
+                rowCount = 0;
+                messageCount = 0;
+                load();
+                return;
+            }
+            for (int accountId : event.getAccountIds()) {
+                clear(accountId);
+                jdbcTemplate.query("select messageId from message where postedBy = ? order by messageId",
+                        (RowCallbackHandler) rs -> add(accountId, rs.getInt(1)), accountId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes every stored message. Called with the write lock held.
+     */
+    private void load() {
+        // Rows arrive in messageId order, so every insert is an append
+        jdbcTemplate.query("select postedBy, messageId from message order by messageId",
+                (RowCallbackHandler) rs -> add(rs.getInt(1), rs.getInt(2)));
+    }
+
+    /**
+     * Inserts an id into an account's sorted ids. Called with the write lock held.
+     */
+    private void add(int accountId, int messageId) {
+        int row = rows.get(accountId);
+        if (row == IntIntOpenHashMap.MISSING) {
+            row = rowCount++;
+            if (row == ids.length) {
+                ids = Arrays.copyOf(ids, row * 2);
+                sizes = Arrays.copyOf(sizes, row * 2);
+            }
+            ids[row] = new int[4];
+            rows.put(accountId, row);
+        }
+        int[] accountIds = ids[row];
+        int size = sizes[row];
+
+        // New messages have the highest id so far, so check the end first
+        int at = size == 0 || accountIds[size - 1] < messageId ? size
+                : Arrays.binarySearch(accountIds, 0, size, messageId);
+        if (at >= 0 && at < size) {
+            return; // Already present
+        }
+        if (at < 0) {
+            at = -at - 1;
+        }
+        if (size == accountIds.length) {
+            accountIds = ids[row] = Arrays.copyOf(accountIds, size + (size >> 1) + 1);
+        }
+        System.arraycopy(accountIds, at, accountIds, at + 1, size - at);
+        accountIds[at] = messageId;
+        sizes[row] = size + 1;
+        messageCount++;
+    }
+
+    /**
+     * Empties an account's ids, keeping its row. Called with the write lock held.
+     */
+    private void clear(int accountId) {
+        int row = rows.get(accountId);
+        if (row != IntIntOpenHashMap.MISSING) {
+            messageCount -= sizes[row];
+            sizes[row] = 0;
+        }
+    }
+
+    /**
+     * Removes an id from an account's sorted ids. Called with the write lock held.
+     */
+    private void remove(int accountId, int messageId) {
+        int row = rows.get(accountId);
+        if (row == IntIntOpenHashMap.MISSING) {
+            return;
+        }
+        int[] accountIds = ids[row];
+        int size = sizes[row];
+        int at = Arrays.binarySearch(accountIds, 0, size, messageId);
+        if (at < 0) {
+            return;
+        }
+        System.arraycopy(accountIds, at + 1, accountIds, at, size - at - 1);
+        sizes[row] = size - 1;
+        messageCount--;
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.example.entity.Message;
+import com.example.repository.FollowRepository;
+import com.example.repository.MessageReadRepository;
+import com.example.repository.ShardedMessageRepository;
+import com.example.service.FeedService;
+
+/**
+ * Loads the newest messages into the message cache and builds the home
+ * timelines of the accounts following their posters before the app reports
+ * ready.
+ *
+ * Spring Boot publishes the ACCEPTING_TRAFFIC readiness state only after every
+ * ApplicationRunner has returned, so the warm-up holds readiness back for as
+ * long as it runs. It is ordered last so that it sees messages moved by the
+ * shard migration. Messages are read in ranges of messageId rather than
+ * timePostedEpoch, since ids are assigned in insertion order by the database
+ * and looked up through the primary key, while post times are supplied by
+ * clients. Without the message cache there is nothing to load them into, and
+ * only the timelines are built. Those are chosen by how many of the newest
+ * messages their followees posted, counted in one query, since those readers
+ * would otherwise pay for the most pulls. The tag and per-account message
+ * indexes are not warmed here because they are already loaded during context
+ * refresh.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+@ConditionalOnProperty(name = "app.warmup.enabled", havingValue = "true")
+public class CacheWarmer implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheWarmer.class);
+
+    @Autowired
+    private MessageReadRepository messageReadRepository;
+
+    @Autowired
+    private FollowRepository followRepository;
+
+    @Autowired
+    private FeedService feedService;
+
+    @Autowired(required = false)
+    private OffHeapMessageCache messageCache;
+
+    @Autowired(required = false)
+    private ShardedMessageRepository shardedMessageRepository;
+
+    @Value("${app.warmup.messages}")
+    private int messageCount;
+
+    @Value("${app.warmup.chunk-size}")
+    private int chunkSize;
+
+    @Value("${app.warmup.accounts}")
+    private int accountCount;
+
+    @Value("${app.warmup.threads}")
+    private int threads;
+
+    private volatile Map<String, Object> report = Collections.emptyMap();
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (shardedMessageRepository != null) {
+            // Sharded messages are not in the message table, and are not cached
+            log.info("Skipping warm-up, messages are sharded");
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "cache-warmer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            long start = System.nanoTime();
+            int[] range = messageCount > 0 ? messageReadRepository.findNewestIdRange(messageCount) : null;
+            int loaded = 0;
+            if (range != null && messageCache != null) {
+                loaded = warmMessages(executor, range);
+            }
+            long messagesDone = System.nanoTime();
+            int inboxes = 0;
+            if (range != null && accountCount > 0) {
+                inboxes = warmInboxes(executor,
+                        followRepository.findFollowersByPostCount(range[0], range[1], accountCount));
+            }
+            long end = System.nanoTime();
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("messages", loaded);
+            result.put("messagesCached", messageCache != null);
+            result.put("messagesMillis", (messagesDone - start) / 1_000_000);
+            result.put("inboxes", inboxes);
+            result.put("inboxesMillis", (end - messagesDone) / 1_000_000);
+            result.put("totalMillis", (end - start) / 1_000_000);
+            report = result;
+            log.info("Warmed {} messages and {} inboxes in {} ms", loaded, inboxes, (end - start) / 1_000_000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return How many messages were loaded and how long each phase took, or an
+     *         empty map if the warm-up has not finished
+     */
+    public Map<String, Object> report() {
+        return report;
+    }
+
+    /**
+     * Reads a range of message ids in chunks, caching each chunk
+     *
+     * @return The number of messages read
+     */
+    private int warmMessages(ExecutorService executor, int[] range) throws InterruptedException, ExecutionException {
+        List<Future<List<Message>>> chunks = new ArrayList<>();
+        for (long from = range[0]; from <= range[1]; from += chunkSize) {
+            int fromId = (int) from;
+            int toId = (int) Math.min(from + chunkSize - 1, range[1]);
+            chunks.add(executor.submit(() -> {
+                long stamp = messageCache.stamp();
+                List<Message> messages = messageReadRepository.findByIdRange(fromId, toId);
+                messageCache.putAllIfUnchanged(messages, stamp);
+                return messages;
+            }));
+        }
+
+        int loaded = 0;
+        for (Future<List<Message>> chunk : chunks) {
+            loaded += chunk.get().size();
+        }
+        return loaded;
+    }
+
+    /**
+     * Builds the home timeline inboxes of the given accounts in parallel
+     *
+     * @return The number of inboxes built
+     */
+    private int warmInboxes(ExecutorService executor, List<Integer> accountIds)
+            throws InterruptedException, ExecutionException {
+        AtomicInteger built = new AtomicInteger();
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(() -> {
+                for (int index = next.getAndIncrement(); index < accountIds.size(); index = next.getAndIncrement()) {
+                    if (feedService.warmInbox(accountIds.get(index))) {
+                        built.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        return built.get();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.cache;
+
+import java.util.Arrays;
+
+/**
+ * An int to int hash map with linear probing over two flat arrays, so an entry
+ * costs eight bytes of table and no objects. Key 0 marks an empty bucket, which
+ * is safe because generated ids start at 1. Removal shifts later entries of the
+ * probe run back instead of leaving tombstones. Not thread-safe.
+ */
+class IntIntOpenHashMap {
+
+    static final int MISSING = -1;
+
+    private static final float MAX_LOAD = 0.6f;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    IntIntOpenHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The value for key, or {@link #MISSING}
+     */
+    int get(int key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == 0) {
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * @return The previous value for key, or {@link #MISSING}
+     */
+    int put(int key, int value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("key 0 is reserved");
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            if (k == 0) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size > keys.length * MAX_LOAD) {
+                    resize(keys.length << 1);
+                }
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * @return The removed value, or {@link #MISSING}
+     */
+    int remove(int key) {
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == 0) {
+                return MISSING;
+            }
+            i = (i + 1) & mask;
+        }
+        int removed = values[i];
+        size--;
+
+        // Pull back any later entry whose home bucket is not between the hole and itself
+        int hole = i;
+        for (int j = (hole + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = 0;
+        return removed;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+
+    /**
+     * @return Bytes held by the two tables
+     */
+    long footprintBytes() {
+        return 8L * keys.length;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int j = slot(oldKeys[i]);
+                while (keys[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private int slot(int key) {
+        // Murmur3 finalizer, so sequential ids spread across the table
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.entity.Message;
+import com.example.event.MessageChangedEvent;
+import com.example.event.RemoteInvalidationEvent;
+import com.example.service.MessageService;
+
+/**
+ * Holds a snapshot of every message for GET /messages and serves it
+ * stale-while-revalidate.
+ *
+ * A snapshot younger than app.message-list-cache.soft-ttl-ms is served as is.
+ * An older one is still served, and a refresh is handed to a background
+ * thread; only one refresh runs at a time, so a burst of requests on a stale
+ * snapshot starts a single reload. A snapshot older than
+ * app.message-list-cache.hard-ttl-ms is never served: the request reloads it
+ * itself, and requests arriving meanwhile wait for that load instead of
+ * starting their own.
+ *
+ * A committed message change makes the current snapshot stale at once, so the
+ * next request refreshes it without waiting out the soft TTL. A change that
+ * commits while a refresh is reading leaves the new snapshot stale as well.
+ * Like counts are read with the snapshot and are as old as it is.
+ */
+@Component
+@ConditionalOnProperty(name = "app.message-list-cache.enabled", havingValue = "true")
+public class MessageListCache implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageListCache.class);
+
+    @Autowired
+    private MessageService messageService;
+
+    @Value("${app.message-list-cache.soft-ttl-ms}")
+    private long softTtlMillis;
+
+    @Value("${app.message-list-cache.hard-ttl-ms}")
+    private long hardTtlMillis;
+
+    private final Object loadLock = new Object();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final AtomicLong changes = new AtomicLong();
+    private final LongAdder fresh = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder blockingLoads = new LongAdder();
+    private final LongAdder failedRefreshes = new LongAdder();
+
+    private volatile Snapshot current;
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    /**
+     * Every message with its like count, as of when it was read
+     */
+    public static class Snapshot {
+
+        private final List<Message> messages;
+        private final long loadedAt;
+        private final long changes;
+
+        Snapshot(List<Message> messages, long loadedAt, long changes) {
+            this.messages = messages;
+            this.loadedAt = loadedAt;
+            this.changes = changes;
+        }
+
+        /**
+         * @return The messages ordered by messageId, not to be modified
+         */
+        public List<Message> getMessages() {
+            return messages;
+        }
+
+        /**
+         * @return Whole seconds since the messages were read, as the Age header
+         *         reports them
+         */
+        public long getAgeSeconds() {
+            return Math.max(0, System.currentTimeMillis() - loadedAt) / 1000;
+        }
+    }
+
+    /**
+     * Retrieves the current snapshot, starting a background refresh if it is
+     * stale, or reading a new one if it is missing or past the hard TTL
+     */
+    public Snapshot get() {
+        Snapshot snapshot = current;
+        if (snapshot == null || System.currentTimeMillis() - snapshot.loadedAt >= hardTtlMillis) {
+            return loadNow();
+        }
+        if (System.currentTimeMillis() - snapshot.loadedAt >= softTtlMillis || snapshot.changes != changes.get()) {
+            stale.increment();
+            refreshInBackground();
+        } else {
+            fresh.increment();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Marks the current snapshot stale once a message change commits
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageChanged(MessageChangedEvent event) {
+        changes.incrementAndGet();
+    }
+
+    /**
+     * Marks the current snapshot stale when messages change on another instance
+     */
+    @EventListener
+    public void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (event.isEverything() || event.getMessageIds().length > 0) {
+            changes.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Fresh and stale hit counts, load counts and the current
+     *         snapshot's size and age
+     */
+    public Map<String, Object> snapshot() {
+        Snapshot snapshot = current;
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("freshHits", fresh.sum());
+        metrics.put("staleHits", stale.sum());
+        metrics.put("loads", loads.sum());
+        metrics.put("blockingLoads", blockingLoads.sum());
+        metrics.put("failedRefreshes", failedRefreshes.sum());
+        metrics.put("messages", snapshot != null ? snapshot.messages.size() : 0);
+        metrics.put("ageSeconds", snapshot != null ? snapshot.getAgeSeconds() : 0);
+        return metrics;
+    }
+
+    @Override
+    public void start() {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "message-list-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private Snapshot loadNow() {
+        synchronized (loadLock) {
+            // Another request, or the background refresh, may have loaded it while this one waited
+            Snapshot snapshot = current;
+            if (snapshot != null && System.currentTimeMillis() - snapshot.loadedAt < hardTtlMillis) {
+                fresh.increment();
+                return snapshot;
+            }
+            blockingLoads.increment();
+            return load();
+        }
+    }
+
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return; // A refresh is already in flight
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    synchronized (loadLock) {
+                        load();
+                    }
+                } catch (RuntimeException e) {
+                    failedRefreshes.increment();
+                    log.warn("Message list refresh failed, serving the previous snapshot", e);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false); // Shutting down
+        }
+    }
+
+    private Snapshot load() {
+        // Taken before reading, so a change committed during the read leaves the result stale
+        long changesAtStart = changes.get();
+        long loadedAt = System.currentTimeMillis();
+        List<Message> messages = Collections.unmodifiableList(messageService.getAllMessages());
+        Snapshot snapshot = new Snapshot(messages, loadedAt, changesAtStart);
+        current = snapshot;
+        loads.increment();
+        return snapshot;
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.entity.Message;
+import com.example.event.MessageChangedEvent;
+import com.example.event.RemoteInvalidationEvent;
+
+/**
+ * Caches messages outside the Java heap, so a large cache adds no objects for
+ * the garbage collector to trace. Enabled with app.message-cache.enabled=true.
+ * 
+ * Records are packed into fixed-size slots of direct ByteBuffer slabs, one set
+ * of slabs per slot size class. An {@link IntIntOpenHashMap} maps messageId to
+ * a slot handle. Slabs are allocated on demand up to app.message-cache.max-bytes.
+ * After that, each size class reuses slots by CLOCK eviction: a read sets the
+ * slot's reference bit, and the clock hand clears set bits until it finds a
+ * clear one.
+ * 
+ * Record layout: messageId (int), postedBy (int), timePostedEpoch (long),
+ * version (int, -1 for none), text length (short), then the text as UTF-8.
+ */
+@Component
+@ConditionalOnProperty(name = "app.message-cache.enabled", havingValue = "true")
+public class OffHeapMessageCache {
+
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 2;
+    private static final int[] SLOT_SIZES = { 64, 128, 256, 512, 1024 };
+    private static final int SLOT_BITS = 26;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntIntOpenHashMap index = new IntIntOpenHashMap(1024);
+    private final SizeClass[] sizeClasses = new SizeClass[SLOT_SIZES.length];
+    private final int slabBytes;
+    private final long maxBytes;
+    private long allocatedBytes;
+
+    // Bumped by every invalidation, so a load that raced with a write is not cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public OffHeapMessageCache(@Value("${app.message-cache.max-bytes}") long maxBytes,
+            @Value("${app.message-cache.slab-bytes}") int slabBytes) {
+        if (slabBytes < SLOT_SIZES[SLOT_SIZES.length - 1]) {
+            throw new IllegalArgumentException("slab-bytes must be at least " + SLOT_SIZES[SLOT_SIZES.length - 1]);
+        }
+        this.maxBytes = maxBytes;
+        this.slabBytes = slabBytes;
+        for (int i = 0; i < SLOT_SIZES.length; i++) {
+            sizeClasses[i] = new SizeClass(SLOT_SIZES[i], slabBytes / SLOT_SIZES[i]);
+        }
+    }
+
+    /**
+     * @return The cached message, decoded into a new detached Message, or null
+     */
+    public Message get(int messageId) {
+        lock.readLock().lock();
+        try {
+            int handle = index.get(messageId);
+            if (handle == IntIntOpenHashMap.MISSING) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            SizeClass sizeClass = sizeClasses[handle >>> SLOT_BITS];
+            int slot = handle & SLOT_MASK;
+            // A racing reader may set the same bit, which is harmless
+            sizeClass.referenced[slot] = 1;
+            return sizeClass.read(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return A token to pass to {@link #putIfUnchanged} after loading a message
+     */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * Caches a message loaded from the database, unless a message was updated
+     * or deleted since the stamp was taken, in which case the load may be stale
+     */
+    public void putIfUnchanged(Message message, long stamp) {
+        lock.writeLock().lock();
+        try {
+            if (invalidations.get() == stamp) {
+                store(message);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Caches messages loaded together, such as a chunk read while warming up,
+     * under one stamp
+     */
+    public void putAllIfUnchanged(List<Message> messages, long stamp) {
+        lock.writeLock().lock();
+        try {
+            if (invalidations.get() == stamp) {
+                for (Message message : messages) {
+                    store(message);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a message from the cache
+     */
+    public void invalidate(int messageId) {
+        lock.writeLock().lock();
+        try {
+            invalidations.incrementAndGet();
+            int handle = index.remove(messageId);
+            if (handle != IntIntOpenHashMap.MISSING) {
+                sizeClasses[handle >>> SLOT_BITS].free(handle & SLOT_MASK);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Empties the cache, keeping its slabs for reuse
+     */
+    public void invalidateAll() {
+        lock.writeLock().lock();
+        try {
+            invalidations.incrementAndGet();
+            index.clear();
+            for (SizeClass sizeClass : sizeClasses) {
+                sizeClass.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Caches new messages and drops changed ones once the change has committed.
+     * Updates invalidate rather than overwrite, since two updates can commit in
+     * one order and deliver their events in the other.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageChanged(MessageChangedEvent event) {
+        if (event.getType() == MessageChangedEvent.Type.CREATED) {
+            lock.writeLock().lock();
+            try {
+                store(event.getMessage());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } else {
+            invalidate(event.getMessageId());
+        }
+    }
+
+    /**
+     * Drops messages changed on another instance, or every message if some of
+     * its invalidations were lost
+     */
+    @EventListener
+    public void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (event.isEverything()) {
+            invalidateAll();
+            return;
+        }
+        for (int messageId : event.getMessageIds()) {
+            invalidate(messageId);
+        }
+    }
+
+    /**
+     * @return Entry count, hit and miss counts, evictions, and bytes held on and
+     *         off the heap
+     */
+    public Map<String, Object> snapshot() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("entries", index.size());
+            snapshot.put("hits", hits.sum());
+            snapshot.put("misses", misses.sum());
+            snapshot.put("evictions", evictions.sum());
+            snapshot.put("offHeapBytes", allocatedBytes);
+            snapshot.put("maxOffHeapBytes", maxBytes);
+            long heapBytes = index.footprintBytes();
+            for (SizeClass sizeClass : sizeClasses) {
+                heapBytes += sizeClass.footprintBytes();
+            }
+            snapshot.put("heapBytes", heapBytes);
+            return snapshot;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a message into a slot. Called with the write lock held.
+     */
+    private void store(Message message) {
+        Integer messageId = message.getMessageId();
+        if (messageId == null || messageId <= 0 || message.getPostedBy() == null
+                || message.getTimePostedEpoch() == null || message.getMessageText() == null) {
+            return;
+        }
+        byte[] text = message.getMessageText().getBytes(StandardCharsets.UTF_8);
+        int classIndex = sizeClassFor(HEADER_BYTES + text.length);
+        if (classIndex < 0) {
+            return; // Larger than the largest slot; served from the database
+        }
+
+        int existing = index.remove(messageId);
+        if (existing != IntIntOpenHashMap.MISSING) {
+            sizeClasses[existing >>> SLOT_BITS].free(existing & SLOT_MASK);
+        }
+
+        SizeClass sizeClass = sizeClasses[classIndex];
+        int slot = sizeClass.allocate();
+        if (slot < 0) {
+            return; // No slab for this size class and no budget left for one
+        }
+        sizeClass.write(slot, messageId, message.getPostedBy(), message.getTimePostedEpoch(),
+                message.getVersion() != null ? message.getVersion() : -1, text);
+        index.put(messageId, (classIndex << SLOT_BITS) | slot);
+    }
+
+    private static int sizeClassFor(int recordBytes) {
+        for (int i = 0; i < SLOT_SIZES.length; i++) {
+            if (recordBytes <= SLOT_SIZES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The slabs and slot bookkeeping for one slot size. Guarded by the cache's
+     * lock.
+     */
+    private final class SizeClass {
+        final int slotSize;
+        final int slotsPerSlab;
+        final List<ByteBuffer> slabs = new ArrayList<>();
+        int[] slotKeys = new int[0];
+        byte[] referenced = new byte[0];
+        int[] freeSlots = new int[16];
+        int freeCount;
+        int usedSlots;
+        int clockHand;
+
+        SizeClass(int slotSize, int slotsPerSlab) {
+            this.slotSize = slotSize;
+            this.slotsPerSlab = slotsPerSlab;
+        }
+
+        int allocate() {
+            if (freeCount > 0) {
+                return freeSlots[--freeCount];
+            }
+            if (usedSlots < slotKeys.length) {
+                return usedSlots++;
+            }
+            if (allocatedBytes + slabBytes <= maxBytes) {
+                slabs.add(ByteBuffer.allocateDirect(slabBytes));
+                allocatedBytes += slabBytes;
+                slotKeys = Arrays.copyOf(slotKeys, slotKeys.length + slotsPerSlab);
+                referenced = Arrays.copyOf(referenced, referenced.length + slotsPerSlab);
+                return usedSlots++;
+            }
+            return evict();
+        }
+
+        /**
+         * Advances the clock hand to the first slot not read since the hand last
+         * passed it, and frees that slot's message
+         */
+        private int evict() {
+            if (usedSlots == 0) {
+                return -1;
+            }
+            while (true) {
+                int slot = clockHand;
+                clockHand = (clockHand + 1) % usedSlots;
+                if (slotKeys[slot] == 0) {
+                    continue; // Free-listed slots are only seen here if the list was empty
+                }
+                if (referenced[slot] != 0) {
+                    referenced[slot] = 0;
+                    continue;
+                }
+                index.remove(slotKeys[slot]);
+                slotKeys[slot] = 0;
+                evictions.increment();
+                return slot;
+            }
+        }
+
+        void free(int slot) {
+            slotKeys[slot] = 0;
+            referenced[slot] = 0;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        }
+
+        void clear() {
+            Arrays.fill(slotKeys, 0);
+            Arrays.fill(referenced, (byte) 0);
+            freeCount = 0;
+            usedSlots = 0;
+            clockHand = 0;
+        }
+
+        void write(int slot, int messageId, int postedBy, long timePostedEpoch, int version, byte[] text) {
+            ByteBuffer slab = slabs.get(slot / slotsPerSlab);
+            int offset = (slot % slotsPerSlab) * slotSize;
+            slab.putInt(offset, messageId);
+            slab.putInt(offset + 4, postedBy);
+            slab.putLong(offset + 8, timePostedEpoch);
+            slab.putInt(offset + 16, version);
+            slab.putShort(offset + 20, (short) text.length);
+            ByteBuffer view = slab.duplicate();
+            view.position(offset + HEADER_BYTES);
+            view.put(text);
+            slotKeys[slot] = messageId;
+            referenced[slot] = 0;
+        }
+
+        Message read(int slot) {
+            ByteBuffer slab = slabs.get(slot / slotsPerSlab);
+            int offset = (slot % slotsPerSlab) * slotSize;
+            byte[] text = new byte[slab.getShort(offset + 20)];
+            ByteBuffer view = slab.duplicate();
+            view.position(offset + HEADER_BYTES);
+            view.get(text);
+            Message message = new Message(slab.getInt(offset), slab.getInt(offset + 4),
+                    new String(text, StandardCharsets.UTF_8), slab.getLong(offset + 8));
+            int version = slab.getInt(offset + 16);
+            message.setVersion(version >= 0 ? version : null);
+            return message;
+        }
+
+        long footprintBytes() {
+            return 4L * slotKeys.length + referenced.length + 4L * freeSlots.length;
+        }
+    }
+}
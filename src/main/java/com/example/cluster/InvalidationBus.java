@@ -0,0 +1,298 @@
+package com.example.cluster;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.event.MessageChangedEvent;
+import com.example.event.RemoteInvalidationEvent;
+
+/**
+ * Tells the other instances of the app which messages and accounts changed
+ * here, so they stop serving what they cached for them. Enabled with
+ * app.cluster.enabled=true.
+ *
+ * Message changes are taken from MessageChangedEvent once they commit, and
+ * carry both the message id and its author's account id. Account changes are
+ * queued with {@link #invalidateAccount}, which waits for the caller's
+ * transaction to commit. Ids are queued in sets, so an id changed many times
+ * between flushes is sent once, and every app.cluster.flush-interval-ms the
+ * queued ids are sent in frames of at most app.cluster.batch-size ids.
+ *
+ * A received frame is published as a {@link RemoteInvalidationEvent} on the
+ * transport's thread. Frames carry the sender's random node id, and an
+ * instance ignores its own. Delivery is best effort, and failed frames are not
+ * retried, so each frame also carries the next of its sender's sequence
+ * numbers. A receiver that finds a number skipped, or out of order, cannot
+ * tell which ids it missed and publishes {@link RemoteInvalidationEvent#everything()}
+ * instead, so its caches start over. A lost frame goes unnoticed until its
+ * sender's next one arrives.
+ */
+@Component
+@ConditionalOnProperty(name = "app.cluster.enabled", havingValue = "true")
+public class InvalidationBus implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+
+    private static final int MAGIC = 0x494e5632; // "INV2"
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 4 + 4;
+
+    @Autowired
+    private InvalidationTransport transport;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.cluster.flush-interval-ms}")
+    private long flushIntervalMillis;
+
+    @Value("${app.cluster.batch-size}")
+    private int batchSize;
+
+    private final long nodeId = ThreadLocalRandom.current().nextLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, Long> lastSequences = new ConcurrentHashMap<>();
+    private final Object pendingLock = new Object();
+    private Set<Integer> pendingMessages = new LinkedHashSet<>();
+    private Set<Integer> pendingAccounts = new LinkedHashSet<>();
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder sentFrames = new LongAdder();
+    private final LongAdder sentIds = new LongAdder();
+    private final LongAdder failedFrames = new LongAdder();
+    private final LongAdder receivedFrames = new LongAdder();
+    private final LongAdder receivedIds = new LongAdder();
+    private final LongAdder malformedFrames = new LongAdder();
+    private final LongAdder gaps = new LongAdder();
+
+    private ScheduledExecutorService executor;
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        try {
+            transport.start(this::receive);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start the invalidation transport", e);
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "invalidation-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+        flushSafely(); // Send what is queued before the transport closes
+        transport.close();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Queues a changed message, and its author, once the change commits
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageChanged(MessageChangedEvent event) {
+        synchronized (pendingLock) {
+            queue(pendingMessages, event.getMessageId());
+            queue(pendingAccounts, event.getPostedBy());
+        }
+    }
+
+    /**
+     * Queues a changed account, after the current transaction commits if there
+     * is one
+     */
+    public void invalidateAccount(int accountId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    queueAccount(accountId);
+                }
+            });
+        } else {
+            queueAccount(accountId);
+        }
+    }
+
+    /**
+     * @return Queued, coalesced, sent and received counts, and how many times
+     *         received frames showed a gap
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("nodeId", Long.toHexString(nodeId));
+        snapshot.put("queued", queued.sum());
+        snapshot.put("coalesced", coalesced.sum());
+        snapshot.put("sentFrames", sentFrames.sum());
+        snapshot.put("sentIds", sentIds.sum());
+        snapshot.put("failedFrames", failedFrames.sum());
+        snapshot.put("receivedFrames", receivedFrames.sum());
+        snapshot.put("receivedIds", receivedIds.sum());
+        snapshot.put("malformedFrames", malformedFrames.sum());
+        snapshot.put("gaps", gaps.sum());
+        synchronized (pendingLock) {
+            snapshot.put("pending", pendingMessages.size() + pendingAccounts.size());
+        }
+        return snapshot;
+    }
+
+    private void queueAccount(int accountId) {
+        synchronized (pendingLock) {
+            queue(pendingAccounts, accountId);
+        }
+    }
+
+    /**
+     * Adds an id to a pending set. Called with the pending lock held.
+     */
+    private void queue(Set<Integer> pending, int id) {
+        queued.increment();
+        if (!pending.add(id)) {
+            coalesced.increment();
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Invalidation flush failed", e);
+        }
+    }
+
+    /**
+     * Sends every queued id. A frame that fails is counted and dropped rather
+     * than retried, since its peers may be gone for good; its sequence number
+     * is not reused, so the peers that missed it see the gap.
+     */
+    private void flush() {
+        Set<Integer> messageIds;
+        Set<Integer> accountIds;
+        synchronized (pendingLock) {
+            if (pendingMessages.isEmpty() && pendingAccounts.isEmpty()) {
+                return;
+            }
+            messageIds = pendingMessages;
+            accountIds = pendingAccounts;
+            pendingMessages = new LinkedHashSet<>();
+            pendingAccounts = new LinkedHashSet<>();
+        }
+
+        Iterator<Integer> messages = messageIds.iterator();
+        Iterator<Integer> accounts = accountIds.iterator();
+        int messagesLeft = messageIds.size();
+        int accountsLeft = accountIds.size();
+        while (messagesLeft + accountsLeft > 0) {
+            int messageCount = Math.min(batchSize, messagesLeft);
+            int accountCount = Math.min(batchSize - messageCount, accountsLeft);
+            messagesLeft -= messageCount;
+            accountsLeft -= accountCount;
+            byte[] frame = encode(messages, messageCount, accounts, accountCount);
+            try {
+                transport.send(frame);
+                sentFrames.increment();
+                sentIds.add(messageCount + accountCount);
+            } catch (IOException e) {
+                failedFrames.increment();
+                log.warn("Sending {} invalidations failed: {}", messageCount + accountCount, e.getMessage());
+            }
+        }
+    }
+
+    private byte[] encode(Iterator<Integer> messages, int messageCount, Iterator<Integer> accounts,
+            int accountCount) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (messageCount + accountCount) * 4);
+        buffer.putInt(MAGIC).putLong(nodeId).putLong(sequence.incrementAndGet()).putInt(messageCount)
+                .putInt(accountCount);
+        for (int i = 0; i < messageCount; i++) {
+            buffer.putInt(messages.next());
+        }
+        for (int i = 0; i < accountCount; i++) {
+            buffer.putInt(accounts.next());
+        }
+        return buffer.array();
+    }
+
+    private void receive(byte[] frame) {
+        RemoteInvalidationEvent event;
+        long sender;
+        long frameSequence;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+            if (buffer.getInt() != MAGIC) {
+                malformedFrames.increment();
+                return;
+            }
+            sender = buffer.getLong();
+            if (sender == nodeId) {
+                return; // Our own, looped back by multicast
+            }
+            frameSequence = buffer.getLong();
+            int messageCount = buffer.getInt();
+            int accountCount = buffer.getInt();
+            if (messageCount < 0 || accountCount < 0 || ((long) messageCount + accountCount) * 4 != buffer.remaining()) {
+                malformedFrames.increment();
+                return;
+            }
+            int[] messageIds = new int[messageCount];
+            int[] accountIds = new int[accountCount];
+            buffer.asIntBuffer().get(messageIds).get(accountIds);
+            event = new RemoteInvalidationEvent(messageIds, accountIds);
+        } catch (BufferUnderflowException e) {
+            malformedFrames.increment();
+            return;
+        }
+        receivedFrames.increment();
+        receivedIds.add(event.getMessageIds().length + event.getAccountIds().length);
+        // A sender numbers its frames from 1, so the first one seen from it can show a gap too
+        Long previous = lastSequences.put(sender, frameSequence);
+        if (frameSequence != (previous != null ? previous : 0) + 1) {
+            gaps.increment();
+            log.warn("Missed invalidations from node {} (frame {} after {}), invalidating everything",
+                    Long.toHexString(sender), frameSequence, previous != null ? previous : 0);
+            event = RemoteInvalidationEvent.everything();
+        }
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (RuntimeException e) {
+            log.warn("Applying {} failed", event, e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.cluster;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Carries encoded invalidation batches between instances of the app. A
+ * transport delivers each frame whole or not at all, and need not guarantee
+ * delivery.
+ */
+public interface InvalidationTransport {
+
+    /**
+     * Starts receiving frames from peers
+     * 
+     * @param receiver Called with each frame received, on a transport thread
+     * @throws IOException If the transport cannot listen
+     */
+    void start(Consumer<byte[]> receiver) throws IOException;
+
+    /**
+     * Sends a frame to every peer
+     * 
+     * @throws IOException If it could not be sent to some peer
+     */
+    void send(byte[] frame) throws IOException;
+
+    /**
+     * Stops receiving and releases the transport's sockets. Safe to call more
+     * than once.
+     */
+    void close();
+}
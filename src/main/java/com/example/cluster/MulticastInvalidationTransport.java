@@ -0,0 +1,80 @@
+package com.example.cluster;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends each frame as one UDP datagram to a multicast group that every
+ * instance joins, so peers need not be listed. The time-to-live is zero, which
+ * keeps datagrams on this host.
+ * 
+ * Datagrams can be dropped, and a sender receives its own, which the
+ * InvalidationBus skips by the sender id in each frame.
+ */
+public class MulticastInvalidationTransport implements InvalidationTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(MulticastInvalidationTransport.class);
+
+    private static final int MAX_DATAGRAM_BYTES = 65507;
+
+    private final InetAddress group;
+    private final int port;
+
+    private MulticastSocket socket;
+    private volatile boolean closed;
+
+    public MulticastInvalidationTransport(InetAddress group, int port) {
+        this.group = group;
+        this.port = port;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) throws IOException {
+        socket = new MulticastSocket(port);
+        socket.setTimeToLive(0);
+        socket.setLoopbackMode(false); // false enables loopback, so instances on this host hear each other
+        socket.joinGroup(group);
+        Thread reader = new Thread(() -> read(receiver), "invalidation-receiver");
+        reader.setDaemon(true);
+        reader.start();
+        log.info("Listening for invalidations on multicast group {}:{}", group.getHostAddress(), port);
+    }
+
+    @Override
+    public void send(byte[] frame) throws IOException {
+        if (frame.length > MAX_DATAGRAM_BYTES) {
+            throw new IOException("Invalidation frame of " + frame.length + " bytes does not fit a datagram");
+        }
+        socket.send(new DatagramPacket(frame, frame.length, group, port));
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    private void read(Consumer<byte[]> receiver) {
+        byte[] buffer = new byte[MAX_DATAGRAM_BYTES];
+        while (!closed) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                receiver.accept(Arrays.copyOfRange(buffer, packet.getOffset(), packet.getOffset() + packet.getLength()));
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Receiving invalidations failed", e);
+                }
+            }
+        }
+    }
+}
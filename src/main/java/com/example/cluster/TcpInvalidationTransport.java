@@ -0,0 +1,172 @@
+package com.example.cluster;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends frames over TCP to a fixed list of peers, each frame prefixed with its
+ * length. The server socket is bound to the loopback address, so only
+ * instances on the same host can connect.
+ * 
+ * One connection is kept open per peer and reopened on the next send after it
+ * fails, so a peer that restarts is reached again without configuration. A
+ * frame sent while a peer is down is lost for that peer.
+ */
+public class TcpInvalidationTransport implements InvalidationTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpInvalidationTransport.class);
+
+    private static final int MAX_FRAME_BYTES = 1 << 20;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private final int port;
+    private final List<Peer> peers = new ArrayList<>();
+    private final Set<Socket> accepted = ConcurrentHashMap.newKeySet();
+
+    private ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    public TcpInvalidationTransport(int port, List<InetSocketAddress> peerAddresses) {
+        this.port = port;
+        for (InetSocketAddress address : peerAddresses) {
+            peers.add(new Peer(address));
+        }
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> accept(receiver), "invalidation-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Listening for invalidations on {}, sending to {} peers", serverSocket.getLocalSocketAddress(),
+                peers.size());
+    }
+
+    @Override
+    public void send(byte[] frame) throws IOException {
+        List<InetSocketAddress> failed = new ArrayList<>();
+        for (Peer peer : peers) {
+            if (!peer.send(frame)) {
+                failed.add(peer.address);
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new IOException("Could not send invalidations to " + failed);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(serverSocket);
+        for (Socket socket : accepted) {
+            closeQuietly(socket);
+        }
+        for (Peer peer : peers) {
+            peer.close();
+        }
+    }
+
+    private void accept(Consumer<byte[]> receiver) {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                accepted.add(socket);
+                Thread reader = new Thread(() -> read(socket, receiver), "invalidation-receiver");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Accepting an invalidation connection failed", e);
+                }
+            }
+        }
+    }
+
+    private void read(Socket socket, Consumer<byte[]> receiver) {
+        try (DataInputStream in = new DataInputStream(socket.getInputStream())) {
+            while (!closed) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Invalidation frame of " + length + " bytes");
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                receiver.accept(frame);
+            }
+        } catch (EOFException e) {
+            // The peer closed its connection
+        } catch (IOException e) {
+            if (!closed) {
+                log.warn("Reading invalidations from {} failed", socket.getRemoteSocketAddress(), e);
+            }
+        } finally {
+            accepted.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    /**
+     * The connection to one peer, opened on first use
+     */
+    private static final class Peer {
+        final InetSocketAddress address;
+        Socket socket;
+        DataOutputStream out;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        synchronized boolean send(byte[] frame) {
+            try {
+                if (socket == null) {
+                    socket = new Socket();
+                    socket.setTcpNoDelay(true);
+                    socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                    out = new DataOutputStream(socket.getOutputStream());
+                }
+                out.writeInt(frame.length);
+                out.write(frame);
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                close();
+                return false;
+            }
+        }
+
+        synchronized void close() {
+            closeQuietly(socket);
+            socket = null;
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.h2.api.Trigger;
+
+/**
+ * H2 row trigger that records the primary key of every changed row in the
+ * replica_changelog table, in the same transaction as the change itself.
+ * The first column of each captured table must be its primary key.
+ */
+public class ChangeCaptureTrigger implements Trigger {
+
+    private String tableName;
+
+    @Override
+    public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before,
+            int type) {
+        this.tableName = tableName.toLowerCase();
+    }
+
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        if (newRow != null) {
+            capture(conn, newRow[0]);
+        }
+        // Deletes, and updates that change the primary key, leave the old key behind on the replica
+        if (oldRow != null && (newRow == null || !oldRow[0].equals(newRow[0]))) {
+            capture(conn, oldRow[0]);
+        }
+    }
+
+    private void capture(Connection conn, Object pk) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "insert into replica_changelog (tableName, pk, capturedAt) values (?, ?, ?)")) {
+            ps.setString(1, tableName);
+            ps.setObject(2, pk);
+            ps.setLong(3, System.currentTimeMillis());
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.config;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.cluster.InvalidationTransport;
+import com.example.cluster.MulticastInvalidationTransport;
+import com.example.cluster.TcpInvalidationTransport;
+
+/**
+ * Chooses how the InvalidationBus reaches the other instances of the app.
+ * Enabled with app.cluster.enabled=true.
+ * 
+ * With app.cluster.transport=tcp, frames go to each host:port listed in
+ * app.cluster.tcp.peers, and this instance listens on app.cluster.tcp.port on
+ * the loopback address. With app.cluster.transport=multicast, every instance
+ * joins app.cluster.multicast.group on app.cluster.multicast.port and no peers
+ * are listed.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.cluster.enabled", havingValue = "true")
+public class ClusterConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.cluster.transport", havingValue = "tcp", matchIfMissing = true)
+    public InvalidationTransport tcpInvalidationTransport(@Value("${app.cluster.tcp.port}") int port,
+            @Value("${app.cluster.tcp.peers}") String peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            if (peer.isBlank()) {
+                continue;
+            }
+            int colon = peer.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("app.cluster.tcp.peers entry without a port: " + peer);
+            }
+            addresses.add(new InetSocketAddress(peer.substring(0, colon).trim(),
+                    Integer.parseInt(peer.substring(colon + 1).trim())));
+        }
+        return new TcpInvalidationTransport(port, addresses);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.cluster.transport", havingValue = "multicast")
+    public InvalidationTransport multicastInvalidationTransport(@Value("${app.cluster.multicast.group}") String group,
+            @Value("${app.cluster.multicast.port}") int port) throws UnknownHostException {
+        return new MulticastInvalidationTransport(InetAddress.getByName(group), port);
+    }
+}
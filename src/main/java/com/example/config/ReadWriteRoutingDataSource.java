@@ -0,0 +1,192 @@
+package com.example.config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Sends read-only transactions to the replica and everything else to the
+ * primary.
+ * 
+ * A read goes to the primary instead when the replica has fallen further behind
+ * than the configured lag bound, or when the client issuing it wrote to the
+ * primary recently enough that the replica may not have its write yet.
+ * 
+ * A client that sends the X-Client-Id header is tracked here by that id. For
+ * any other client, a write sets a primary-until cookie holding the end of its
+ * window, and its reads check the cookie, so clients sharing a proxy's address
+ * do not share a window. A client that sends neither gets no stickiness and
+ * reads within the lag bound. Once a request has written, its own later reads
+ * go to the primary either way.
+ * 
+ * Reads whose results are cached beyond the request, and so cannot be left to
+ * catch up, are made through {@link #readFromPrimary}. A read-only
+ * transaction's connection is chosen on its first statement, so this only
+ * routes a transaction that has not read yet; {@link #lastReadFromReplica}
+ * tells the caller where the read actually went.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+    public static final String REPLICA = "replica";
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+    public static final String STICKY_COOKIE = "primary-until";
+
+    private static final String WROTE_ATTRIBUTE = ReadWriteRoutingDataSource.class.getName() + ".wrote";
+
+    private static final int STICKY_PRUNE_THRESHOLD = 10_000;
+
+    private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+    private static final ThreadLocal<Object> LAST_TARGET = new ThreadLocal<>();
+
+    private final ReplicaReplayer replayer;
+    private final long maxLagMillis;
+    private final long stickyWindowMillis;
+    private final Map<String, Long> stickyUntil = new ConcurrentHashMap<>();
+
+    public ReadWriteRoutingDataSource(ReplicaReplayer replayer, long maxLagMillis, long stickyWindowMillis) {
+        this.replayer = replayer;
+        this.maxLagMillis = maxLagMillis;
+        this.stickyWindowMillis = stickyWindowMillis;
+    }
+
+    /**
+     * Runs reads that choose a connection on the primary, even in a read-only
+     * transaction
+     */
+    public static <T> T readFromPrimary(Supplier<T> reads) {
+        Boolean outer = PRIMARY_READS.get();
+        PRIMARY_READS.set(Boolean.TRUE);
+        try {
+            return reads.get();
+        } finally {
+            if (outer == null) {
+                PRIMARY_READS.remove();
+            }
+        }
+    }
+
+    /**
+     * @return Whether the last connection chosen on this thread was the
+     *         replica's; false when there is no replica
+     */
+    public static boolean lastReadFromReplica() {
+        return REPLICA.equals(LAST_TARGET.get());
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Object target = route();
+        LAST_TARGET.set(target);
+        return target;
+    }
+
+    private Object route() {
+        ServletRequestAttributes attributes = currentRequest();
+
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            // Writes pin the client to the primary until the replica can be expected to have caught up
+            if (attributes != null && TransactionSynchronizationManager.isActualTransactionActive()) {
+                pin(attributes);
+            }
+            return PRIMARY;
+        }
+
+        if (PRIMARY_READS.get() != null || replayer.lagMillis() > maxLagMillis) {
+            return PRIMARY;
+        }
+
+        if (attributes != null && isPinned(attributes.getRequest())) {
+            return PRIMARY;
+        }
+        return REPLICA;
+    }
+
+    /**
+     * Starts a client's sticky window, by its id if it sent one and otherwise
+     * with a cookie, once per request
+     */
+    private void pin(ServletRequestAttributes attributes) {
+        HttpServletRequest request = attributes.getRequest();
+        if (request.getAttribute(WROTE_ATTRIBUTE) != null) {
+            return;
+        }
+        long until = System.currentTimeMillis() + stickyWindowMillis;
+        request.setAttribute(WROTE_ATTRIBUTE, until);
+
+        String clientId = request.getHeader(CLIENT_ID_HEADER);
+        if (clientId != null) {
+            if (stickyUntil.size() > STICKY_PRUNE_THRESHOLD) {
+                pruneExpiredStickiness();
+            }
+            stickyUntil.put(clientId, until);
+            return;
+        }
+        HttpServletResponse response = attributes.getResponse();
+        if (response != null && !response.isCommitted()) {
+            Cookie cookie = new Cookie(STICKY_COOKIE, Long.toString(until));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) ((stickyWindowMillis + 999) / 1000));
+            response.addCookie(cookie);
+        }
+    }
+
+    /**
+     * @return Whether the request's client wrote within its sticky window
+     */
+    private boolean isPinned(HttpServletRequest request) {
+        if (request.getAttribute(WROTE_ATTRIBUTE) != null) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        String clientId = request.getHeader(CLIENT_ID_HEADER);
+        if (clientId != null) {
+            Long until = stickyUntil.get(clientId);
+            if (until == null) {
+                return false;
+            }
+            if (until > now) {
+                return true;
+            }
+            stickyUntil.remove(clientId, until);
+            return false;
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (STICKY_COOKIE.equals(cookie.getName())) {
+                    try {
+                        return Long.parseLong(cookie.getValue()) > now;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops stickiness entries whose window has passed
+     */
+    private void pruneExpiredStickiness() {
+        long now = System.currentTimeMillis();
+        stickyUntil.values().removeIf(until -> until <= now);
+    }
+
+    private static ServletRequestAttributes currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes ? (ServletRequestAttributes) attributes : null;
+    }
+}
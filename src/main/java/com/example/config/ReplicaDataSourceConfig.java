@@ -0,0 +1,72 @@
+package com.example.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Splits reads and writes between the primary database and a local read
+ * replica. Enabled with app.datasource.replica.enabled=true.
+ * 
+ * The application DataSource is a {@link ReadWriteRoutingDataSource} behind a
+ * lazy connection proxy, so the physical connection is only chosen once the
+ * transaction's read-only flag is known.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+            @Value("${app.datasource.replica.url}") String url) {
+        return DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.getDriverClassName())
+                .url(url)
+                .username(properties.getUsername())
+                .password(properties.getPassword())
+                .build();
+    }
+
+    @Bean
+    public ReplicaReplayer replicaReplayer(@Qualifier("primaryDataSource") DataSource primary,
+            @Qualifier("replicaDataSource") DataSource replica,
+            @Value("${app.datasource.replica.replay-interval-ms}") long replayIntervalMillis) {
+        return new ReplicaReplayer(primary, replica, replayIntervalMillis);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+            @Qualifier("replicaDataSource") DataSource replica, ReplicaReplayer replayer,
+            @Value("${app.datasource.replica.max-lag-ms}") long maxLagMillis,
+            @Value("${app.datasource.replica.sticky-window-ms}") long stickyWindowMillis) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(replayer, maxLagMillis,
+                stickyWindowMillis);
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReadWriteRoutingDataSource.PRIMARY, primary);
+        targets.put(ReadWriteRoutingDataSource.REPLICA, replica);
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+/**
+ * Keeps the replica in step with the primary by replaying captured changes.
+ * 
+ * On start the replica is loaded with a full copy of the replicated tables and
+ * a {@link ChangeCaptureTrigger} is installed on each of them. From then on the
+ * primary keys recorded in replica_changelog are replayed on a fixed interval
+ * by re-reading the current row from the primary and merging it into, or
+ * deleting it from, the replica. A table keyed on more than one column, such
+ * as account_follow, is captured by the first column of its key, and all of
+ * its rows with that value are replaced at once.
+ */
+public class ReplicaReplayer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaReplayer.class);
+
+    /**
+     * Replicated tables and the key column their changes are captured by, in
+     * foreign key order
+     */
+    static final Map<String, String> REPLICATED_TABLES = new LinkedHashMap<>();
+    static {
+        REPLICATED_TABLES.put("account", "accountId");
+        REPLICATED_TABLES.put("message", "messageId");
+        REPLICATED_TABLES.put("message_likes", "messageId");
+        REPLICATED_TABLES.put("account_follow", "followerId");
+    }
+
+    /**
+     * Replicated tables whose captured key column is only part of the primary
+     * key
+     */
+    static final Set<String> REPLACED_BY_KEY = Set.of("account_follow");
+
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_BATCHES_PER_POLL = 20;
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long replayIntervalMillis;
+
+    private ScheduledExecutorService executor;
+    private volatile long currentAsOf = -1;
+    private volatile boolean running;
+
+    public ReplicaReplayer(DataSource primary, DataSource replica, long replayIntervalMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.replayIntervalMillis = replayIntervalMillis;
+    }
+
+    /**
+     * How far the replica is behind the primary
+     * 
+     * @return The milliseconds since the capture time of the oldest change the
+     *         replica had not applied when the changelog was last read, or since
+     *         that read if nothing was pending, or Long.MAX_VALUE before the
+     *         first full copy
+     */
+    public long lagMillis() {
+        long at = currentAsOf;
+        return at < 0 ? Long.MAX_VALUE : System.currentTimeMillis() - at;
+    }
+
+    @Override
+    public void start() {
+        try {
+            bootstrap();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not initialize the read replica", e);
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-replayer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::replaySafely, replayIntervalMillis, replayIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void bootstrap() throws SQLException {
+        new ResourceDatabasePopulator(new ClassPathResource("data.sql")).execute(replica);
+
+        long startedAt = System.currentTimeMillis();
+        try (Connection source = primary.getConnection(); Connection target = replica.getConnection();
+                Statement ddl = source.createStatement()) {
+            ddl.execute("create table if not exists replica_changelog ("
+                    + "seq bigint auto_increment primary key, tableName varchar(64), pk int, capturedAt bigint)");
+            for (String table : REPLICATED_TABLES.keySet()) {
+                ddl.execute("create trigger if not exists " + table + "_replica_capture"
+                        + " after insert, update, delete on " + table
+                        + " for each row call '" + ChangeCaptureTrigger.class.getName() + "'");
+            }
+
+            target.setAutoCommit(false);
+            List<String> reversed = new ArrayList<>(REPLICATED_TABLES.keySet());
+            Collections.reverse(reversed);
+            try (Statement delete = target.createStatement()) {
+                for (String table : reversed) {
+                    delete.executeUpdate("delete from " + table);
+                }
+            }
+            for (Map.Entry<String, String> table : REPLICATED_TABLES.entrySet()) {
+                try (Statement select = source.createStatement();
+                        ResultSet rs = select.executeQuery("select * from " + table.getKey())) {
+                    while (rs.next()) {
+                        merge(target, table.getKey(),
+                                REPLACED_BY_KEY.contains(table.getKey()) ? null : table.getValue(), rs);
+                    }
+                }
+            }
+            target.commit();
+        }
+        currentAsOf = startedAt;
+        log.info("Read replica loaded in {} ms", System.currentTimeMillis() - startedAt);
+    }
+
+    private void replaySafely() {
+        try {
+            replay();
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Replica replay failed, will retry", e);
+        }
+    }
+
+    /**
+     * Applies pending changelog entries. Each read of the changelog moves the
+     * point the replica is current as of to the capture time of the oldest
+     * entry it returns, or to the time of the read if it returns none, so a
+     * steady stream of changes does not count as unbounded lag.
+     */
+    void replay() throws SQLException {
+        try (Connection source = primary.getConnection(); Connection target = replica.getConnection()) {
+            target.setAutoCommit(false);
+            for (int batch = 0; batch < MAX_BATCHES_PER_POLL; batch++) {
+                long readAt = System.currentTimeMillis();
+                long oldest = Long.MAX_VALUE;
+                List<Long> seqs = new ArrayList<>();
+                Set<String> changed = new LinkedHashSet<>();
+                try (PreparedStatement ps = source.prepareStatement(
+                        "select seq, tableName, pk, capturedAt from replica_changelog order by seq limit ?")) {
+                    ps.setInt(1, BATCH_SIZE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            seqs.add(rs.getLong(1));
+                            changed.add(rs.getString(2) + ":" + rs.getInt(3));
+                            oldest = Math.min(oldest, rs.getLong(4));
+                        }
+                    }
+                }
+                if (seqs.isEmpty()) {
+                    currentAsOf = readAt;
+                    return;
+                }
+                currentAsOf = oldest;
+
+                for (String key : changed) {
+                    int separator = key.indexOf(':');
+                    apply(source, target, key.substring(0, separator),
+                            Integer.parseInt(key.substring(separator + 1)));
+                }
+                target.commit();
+
+                // Entries are removed by sequence number, so changes committed late with a lower number are kept
+                try (PreparedStatement ps = source.prepareStatement("delete from replica_changelog where seq = ?")) {
+                    for (Long seq : seqs) {
+                        ps.setLong(1, seq);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+
+            // Still behind after this poll's batches; the next poll continues from the oldest entry left
+            long readAt = System.currentTimeMillis();
+            try (Statement select = source.createStatement();
+                    ResultSet rs = select.executeQuery("select min(capturedAt) from replica_changelog")) {
+                rs.next();
+                long oldest = rs.getLong(1);
+                currentAsOf = rs.wasNull() ? readAt : oldest;
+            }
+        }
+    }
+
+    private void apply(Connection source, Connection target, String table, int pk) throws SQLException {
+        String pkColumn = REPLICATED_TABLES.get(table);
+        if (pkColumn == null) {
+            return;
+        }
+        if (REPLACED_BY_KEY.contains(table)) {
+            replace(source, target, table, pkColumn, pk);
+            return;
+        }
+        try (PreparedStatement select = source.prepareStatement(
+                "select * from " + table + " where " + pkColumn + " = ?")) {
+            select.setInt(1, pk);
+            try (ResultSet rs = select.executeQuery()) {
+                if (rs.next()) {
+                    merge(target, table, pkColumn, rs);
+                    return;
+                }
+            }
+        }
+        try (PreparedStatement delete = target.prepareStatement(
+                "delete from " + table + " where " + pkColumn + " = ?")) {
+            delete.setInt(1, pk);
+            delete.executeUpdate();
+        }
+    }
+
+    /**
+     * Replaces every replica row with the given key value by the primary's rows
+     */
+    private void replace(Connection source, Connection target, String table, String keyColumn, int key)
+            throws SQLException {
+        try (PreparedStatement delete = target.prepareStatement(
+                "delete from " + table + " where " + keyColumn + " = ?")) {
+            delete.setInt(1, key);
+            delete.executeUpdate();
+        }
+        try (PreparedStatement select = source.prepareStatement(
+                "select * from " + table + " where " + keyColumn + " = ?")) {
+            select.setInt(1, key);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    merge(target, table, null, rs);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a row to the replica, merged on its primary key column, or
+     * inserted when that is null
+     */
+    private static void merge(Connection target, String table, String pkColumn, ResultSet row) throws SQLException {
+        ResultSetMetaData meta = row.getMetaData();
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            if (i > 1) {
+                columns.append(", ");
+                values.append(", ");
+            }
+            columns.append(meta.getColumnName(i));
+            values.append('?');
+        }
+        String sql = pkColumn != null
+                ? "merge into " + table + " (" + columns + ") key (" + pkColumn + ") values (" + values + ")"
+                : "insert into " + table + " (" + columns + ") values (" + values + ")";
+        try (PreparedStatement merge = target.prepareStatement(sql)) {
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                merge.setObject(i, row.getObject(i));
+            }
+            merge.executeUpdate();
+        }
+    }
+}
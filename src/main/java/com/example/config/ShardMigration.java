@@ -0,0 +1,90 @@
+package com.example.config;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.entity.Message;
+import com.example.repository.MessageReadRepository;
+import com.example.repository.ShardedMessageRepository;
+
+/**
+ * Moves the messages in the main message table onto their shards during
+ * startup, in a lifecycle phase below the web server's, so the move is done
+ * before the first request arrives.
+ * 
+ * The table is read in id order, app.sharding.migration-chunk-size messages at
+ * a time, and each chunk is copied and then deleted before the next is read,
+ * so memory use does not grow with the table. The move can be re-run after a
+ * crash at any point: a message its shard already holds is not copied again,
+ * so the shard's copy wins, and only the ids that were read are deleted from
+ * the main table afterwards.
+ */
+public class ShardMigration implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardMigration.class);
+
+    private final ShardedMessageRepository shardedMessageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int chunkSize;
+    private volatile boolean running;
+
+    public ShardMigration(ShardedMessageRepository shardedMessageRepository, JdbcTemplate jdbcTemplate,
+            int chunkSize) {
+        this.shardedMessageRepository = shardedMessageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void start() {
+        migrate();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    /**
+     * Moves every message in the main table onto its shard
+     * 
+     * @return The number of messages read from the main table
+     */
+    public long migrate() {
+        long moved = 0;
+        long copied = 0;
+        int lastId = Integer.MIN_VALUE;
+        while (true) {
+            List<Message> chunk = jdbcTemplate.query(
+                    "select messageId, postedBy, messageText, timePostedEpoch, version from message"
+                            + " where messageId > ? order by messageId limit ?",
+                    MessageReadRepository.MESSAGE_ROW_MAPPER, lastId, chunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            copied += shardedMessageRepository.insertAllExisting(chunk);
+            jdbcTemplate.batchUpdate("delete from message where messageId = ?", chunk, chunk.size(),
+                    (ps, message) -> ps.setInt(1, message.getMessageId()));
+            moved += chunk.size();
+            lastId = chunk.get(chunk.size() - 1).getMessageId();
+        }
+        log.info("Moved {} messages onto {} shards, {} already there", moved, shardedMessageRepository.shardCount(),
+                moved - copied);
+        return moved;
+    }
+}
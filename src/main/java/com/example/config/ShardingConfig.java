@@ -0,0 +1,54 @@
+package com.example.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.repository.ShardedMessageRepository;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Partitions the message table across several databases. Enabled with
+ * app.sharding.enabled=true.
+ * 
+ * Accounts stay in the main database. Messages already in the main message
+ * table at startup are moved onto their shards by {@link ShardMigration}
+ * before the web server starts, and keep their ids.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    @Bean(destroyMethod = "close")
+    public ShardedMessageRepository shardedMessageRepository(DataSourceProperties properties,
+            @Value("${app.sharding.shard-count}") int shardCount,
+            @Value("${app.sharding.url-template}") String urlTemplate,
+            @Value("${app.sharding.virtual-nodes}") int virtualNodes) {
+        List<HikariDataSource> dataSources = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            dataSources.add(DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(properties.getDriverClassName())
+                    .url(String.format(urlTemplate, shard))
+                    .username(properties.getUsername())
+                    .password(properties.getPassword())
+                    .build());
+        }
+        ShardedMessageRepository repository = new ShardedMessageRepository(dataSources, virtualNodes);
+        repository.createSchema();
+        return repository;
+    }
+
+    @Bean
+    public ShardMigration shardMigration(ShardedMessageRepository shardedMessageRepository,
+            JdbcTemplate jdbcTemplate, @Value("${app.sharding.migration-chunk-size}") int chunkSize) {
+        return new ShardMigration(shardedMessageRepository, jdbcTemplate, chunkSize);
+    }
+}
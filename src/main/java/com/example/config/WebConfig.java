@@ -0,0 +1,68 @@
+package com.example.config;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.example.jdbc.StatementBudgetInterceptor;
+import com.example.web.ConcurrencyLimitInterceptor;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Spring MVC configuration.
+ * 
+ * Registers the per-endpoint {@link ConcurrencyLimitInterceptor} when it is
+ * enabled, and the {@link StatementBudgetInterceptor} when the JDBC profiler
+ * is.
+ * 
+ * Adds CBOR (application/cbor) and Smile (application/x-jackson-smile)
+ * converters, built from the same Jackson settings as the JSON converter. They
+ * are placed directly after the JSON converter, so a client only gets a binary
+ * encoding by asking for it in the Accept header and JSON stays the default.
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+    @Autowired(required = false)
+    private ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+
+    @Autowired(required = false)
+    private StatementBudgetInterceptor statementBudgetInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (concurrencyLimitInterceptor != null) {
+            registry.addInterceptor(concurrencyLimitInterceptor);
+        }
+        if (statementBudgetInterceptor != null) {
+            registry.addInterceptor(statementBudgetInterceptor);
+        }
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+                || converter instanceof MappingJackson2SmileHttpMessageConverter);
+
+        int json = converters.size() - 1;
+        while (json >= 0 && !(converters.get(json) instanceof MappingJackson2HttpMessageConverter)) {
+            json--;
+        }
+        converters.add(json + 1, new MappingJackson2CborHttpMessageConverter(
+                objectMapperBuilder.createXmlMapper(false).factory(new CBORFactory()).build()));
+        converters.add(json + 2, new MappingJackson2SmileHttpMessageConverter(
+                objectMapperBuilder.createXmlMapper(false).factory(new SmileFactory()).build()));
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.controller;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.example.bulk.BulkFormat;
+import com.example.bulk.BulkTable;
+import com.example.bulk.BulkTransferService;
+import com.example.bulk.TransferReport;
+import com.example.cache.CacheWarmer;
+import com.example.cache.MessageListCache;
+import com.example.cache.OffHeapMessageCache;
+import com.example.cluster.InvalidationBus;
+import com.example.jdbc.StatementProfiler;
+import com.example.likes.MessageLikes;
+import com.example.tracing.Tracer;
+import com.example.web.AccessLog;
+import com.example.web.Bulkheads;
+import com.example.web.ConcurrencyLimitInterceptor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Operational endpoints that are not part of the public API
+ */
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    @Autowired
+    private BulkTransferService bulkTransferService;
+
+    @Autowired
+    private Bulkheads bulkheads;
+
+    @Autowired(required = false)
+    private ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+
+    @Autowired(required = false)
+    private OffHeapMessageCache messageCache;
+
+    @Autowired(required = false)
+    private MessageListCache messageListCache;
+
+    @Autowired(required = false)
+    private AccessLog accessLog;
+
+    @Autowired(required = false)
+    private StatementProfiler statementProfiler;
+
+    @Autowired(required = false)
+    private Tracer tracer;
+
+    @Autowired
+    private MessageLikes messageLikes;
+
+    @Autowired
+    private ApplicationAvailability applicationAvailability;
+
+    @Autowired(required = false)
+    private CacheWarmer cacheWarmer;
+
+    @Autowired(required = false)
+    private InvalidationBus invalidationBus;
+
+    /**
+     * Streams every row of a table as a file
+     * 
+     * @param table  "account" or "message"
+     * @param format "csv" or "ndjson"
+     * @return A ResponseEntity whose body is written as rows are read
+     */
+    @GetMapping("/export/{table}")
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable String table,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        BulkTable bulkTable;
+        BulkFormat bulkFormat;
+        try {
+            bulkTable = BulkTable.of(table);
+            bulkFormat = BulkFormat.of(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build(); // Return 400 for an unknown table or format
+        }
+
+        StreamingResponseBody body = out -> bulkTransferService.export(bulkTable, bulkFormat,
+                Channels.newChannel(out));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(bulkFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + bulkTable.getTableName() + "." + format.toLowerCase() + "\"")
+                .body(body);
+    }
+
+    /**
+     * Loads rows from the request body into a table
+     * 
+     * @param table  "account" or "message"
+     * @param format "csv" or "ndjson"
+     * @param jobId  Identifies the import, so that re-sending the same file with
+     *               the same jobId resumes after the last committed chunk
+     * @return A ResponseEntity containing the row count and throughput, or 400 if
+     *         the file could not be loaded
+     */
+    @PostMapping("/import/{table}")
+    public ResponseEntity<TransferReport> importRows(@PathVariable String table,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) String jobId,
+            HttpServletRequest request) throws IOException {
+        try {
+            TransferReport report = bulkTransferService.importRows(BulkTable.of(table), BulkFormat.of(format),
+                    Channels.newChannel(request.getInputStream()),
+                    jobId != null ? jobId : UUID.randomUUID().toString());
+            return new ResponseEntity<>(report, HttpStatus.OK);
+        } catch (IllegalArgumentException | JsonProcessingException | DataAccessException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build(); // Return 400 if the file could not be loaded
+        }
+    }
+
+    /**
+     * Reports the adaptive concurrency limit of every endpoint that has been called
+     * 
+     * @return A ResponseEntity containing each endpoint's limit, in-flight count,
+     *         rejections and baseline latency, or an empty map if limiting is off
+     */
+    @GetMapping("/concurrency-limits")
+    public ResponseEntity<Map<String, Map<String, Object>>> getConcurrencyLimits() {
+        if (concurrencyLimitInterceptor == null) {
+            return ResponseEntity.ok(Collections.emptyMap());
+        }
+        return ResponseEntity.ok(concurrencyLimitInterceptor.snapshot());
+    }
+
+    /**
+     * Reports queue and rejection metrics for the read and write bulkheads
+     * 
+     * @return A ResponseEntity containing each bulkhead's threads, queue depth,
+     *         completed and rejected counts, or an empty map if bulkheads are off
+     */
+    @GetMapping("/bulkheads")
+    public ResponseEntity<Map<String, Map<String, Object>>> getBulkheads() {
+        return ResponseEntity.ok(bulkheads.snapshot());
+    }
+
+    /**
+     * Reports the size and hit rate of the off-heap message cache
+     * 
+     * @return A ResponseEntity containing entry, hit, miss and eviction counts and
+     *         the bytes held on and off the heap, or an empty map if the cache is off
+     */
+    @GetMapping("/message-cache")
+    public ResponseEntity<Map<String, Object>> getMessageCache() {
+        if (messageCache == null) {
+            return ResponseEntity.ok(Collections.emptyMap());
+        }
+        return ResponseEntity.ok(messageCache.snapshot());
+    }
+
+    /**
+     * Reports how GET /messages has been served from its snapshot
+     * 
+     * @return A ResponseEntity containing fresh and stale hits, loads and the
+     *         snapshot's size and age, or an empty map if the cache is off
+     */
+    @GetMapping("/message-list-cache")
+    public ResponseEntity<Map<String, Object>> getMessageListCache() {
+        if (messageListCache == null) {
+            return ResponseEntity.ok(Collections.emptyMap());
+        }
+        return ResponseEntity.ok(messageListCache.snapshot());
+    }
+
+    /**
+     * Reports how many access log entries have been written and dropped
+     * 
+     * @return A ResponseEntity containing the written and dropped counts and the
+     *         ring backlog, or an empty map if the access log is off
+     */
+    @GetMapping("/access-log")
+    public ResponseEntity<Map<String, Object>> getAccessLog() {
+        if (accessLog == null) {
+            return ResponseEntity.ok(Collections.emptyMap());
+        }
+        return ResponseEntity.ok(accessLog.snapshot());
+    }
+
+    /**
+     * Ranks the statements run so far by total time, and reports statement
+     * counts per endpoint against their budgets
+     * 
+     * @return A ResponseEntity containing the ranked statements, the most recent
+     *         slow ones and the per-endpoint counts, or an empty map if the
+     *         profiler is off
+     */
+    @GetMapping("/slow-queries")
+    public ResponseEntity<Map<String, Object>> getSlowQueries() {
+        if (statementProfiler == null) {
+            return ResponseEntity.ok(Collections.emptyMap());
+        }
+        return ResponseEntity.ok(statementProfiler.report());
+    }
+
+    /**
+     * Lists the stored traces, most recent first
+     * 
+     * @param minMillis Only traces that took at least this long
+     * @param limit     The most traces to list
+     * @return A ResponseEntity containing each trace's id, name, start and
+     *         duration, or an empty list if tracing is off
+     */
+    @GetMapping("/traces")
+    public ResponseEntity<List<Map<String, Object>>> getTraces(@RequestParam(defaultValue = "0") double minMillis,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (tracer == null) {
+            return ResponseEntity.ok(Collections.emptyList());
+        }
+        return ResponseEntity.ok(tracer.list(minMillis, limit));
+    }
+
+    /**
+     * Retrieves one trace as a tree of spans
+     * 
+     * @return A ResponseEntity containing the span tree, or status 404 if the
+     *         trace is not stored
+     */
+    @GetMapping("/traces/{traceId}")
+    public ResponseEntity<Map<String, Object>> getTrace(@PathVariable String traceId) {
+        Map<String, Object> trace = tracer == null ? null : tracer.get(traceId);
+        if (trace == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(trace);
+    }
+
+    /**
+     * Writes every stored trace to a JSON file for offline analysis
+     * 
+     * @return A ResponseEntity containing the export directory and trace count,
+     *         or an empty map if tracing is off
+     * @throws IOException If the files cannot be written
+     */
+    @PostMapping("/traces/export")
+    public ResponseEntity<Map<String, Object>> exportTraces() throws IOException {
+        if (tracer == null) {
+            return ResponseEntity.ok(Collections.emptyMap());
+        }
+        return ResponseEntity.ok(tracer.export());
+    }
+
+    /**
+     * Reports how many likes have been flushed and how many counters are held
+     * 
+     * @return A ResponseEntity containing the flush and counter totals
+     */
+    @GetMapping("/likes")
+    public ResponseEntity<Map<String, Object>> getLikes() {
+        return ResponseEntity.ok(messageLikes.snapshot());
+    }
+
+    /**
+     * Reports whether the app accepts traffic and what the startup warm-up loaded
+     * 
+     * @return A ResponseEntity containing the readiness state and the warm-up
+     *         report, with status 503 until the app is ready
+     */
+    @GetMapping("/readiness")
+    public ResponseEntity<Map<String, Object>> getReadiness() {
+        ReadinessState state = applicationAvailability.getReadinessState();
+        Map<String, Object> readiness = new LinkedHashMap<>();
+        readiness.put("state", state);
+        readiness.put("warmup", cacheWarmer != null ? cacheWarmer.report() : Collections.emptyMap());
+        return ResponseEntity.status(state == ReadinessState.ACCEPTING_TRAFFIC ? HttpStatus.OK
+                : HttpStatus.SERVICE_UNAVAILABLE).body(readiness);
+    }
+
+    /**
+     * Reports how many invalidations were queued, sent to and received from
+     * the other instances
+     * 
+     * @return A ResponseEntity containing the queued, coalesced, sent and
+     *         received counts, or an empty map if the bus is off
+     */
+    @GetMapping("/cluster")
+    public ResponseEntity<Map<String, Object>> getCluster() {
+        if (invalidationBus == null) {
+            return ResponseEntity.ok(Collections.emptyMap());
+        }
+        return ResponseEntity.ok(invalidationBus.snapshot());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.controller;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import com.example.analytics.AnalyticsReport;
+import com.example.analytics.AnalyticsReport.PosterCount;
+import com.example.analytics.MessageAnalytics;
+
+/**
+ * Aggregate reports over all messages. Results are recomputed at most once per
+ * refresh interval, and Last-Modified says when the data was read.
+ */
+@RestController
+@RequestMapping("/analytics")
+public class AnalyticsController {
+
+    @Autowired
+    private MessageAnalytics messageAnalytics;
+
+    /**
+     * Handles retrieving the accounts that have posted the most messages
+     * 
+     * @param limit The number of accounts to return, at most the configured
+     *              app.analytics.top-posters
+     * @return A ResponseEntity containing accountId and message count pairs,
+     *         most messages first
+     */
+    @GetMapping("/top-posters")
+    public ResponseEntity<List<PosterCount>> getTopPosters(@RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build(); // Return 400 for an invalid limit
+        }
+        AnalyticsReport report = messageAnalytics.report();
+        List<PosterCount> topPosters = report.getTopPosters();
+        return ResponseEntity.ok().lastModified(report.getComputedAt())
+                .body(topPosters.subList(0, Math.min(limit, topPosters.size())));
+    }
+
+    /**
+     * Handles retrieving the number of messages posted in each time bucket
+     * 
+     * @return A ResponseEntity containing the bucket width in seconds and the
+     *         start and message count of every non-empty bucket
+     */
+    @GetMapping("/activity-histogram")
+    public ResponseEntity<Map<String, Object>> getActivityHistogram() {
+        AnalyticsReport report = messageAnalytics.report();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("bucketSeconds", report.getBucketSeconds());
+        body.put("buckets", report.getHistogram());
+        return ResponseEntity.ok().lastModified(report.getComputedAt()).body(body);
+    }
+
+    /**
+     * Handles retrieving the approximate number of accounts that have posted
+     * 
+     * @return A ResponseEntity containing the estimate and its relative
+     *         standard error
+     */
+    @GetMapping("/distinct-posters")
+    public ResponseEntity<Map<String, Object>> getDistinctPosters() {
+        AnalyticsReport report = messageAnalytics.report();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("estimate", report.getDistinctPosters());
+        body.put("standardError", report.getDistinctPostersError());
+        body.put("messageCount", report.getMessageCount());
+        return ResponseEntity.ok().lastModified(report.getComputedAt()).body(body);
+    }
+}
@@ -1,17 +1,33 @@
 package com.example.controller;
 
+import com.example.cache.MessageListCache;
 import com.example.entity.*;
+import com.example.event.MessageStreamHub;
+import com.example.event.MessageStreamHub.OverflowPolicy;
 import com.example.service.AccountService;
+import com.example.service.FeedService;
 import com.example.service.MessageService;
-import com.example.exception.*;
+import com.example.tags.TagCount;
+import com.example.tags.Tags;
+import com.example.tags.TrendingTags;
+import com.example.exception.BulkheadFullException;
+import com.example.validation.Rejection;
+import com.example.validation.Result;
+import com.example.web.Bulkheads;
+import com.example.web.IdempotencyStore;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class SocialMediaController {
@@ -22,26 +38,53 @@ public class SocialMediaController {
     @Autowired
     private MessageService messageService;
 
+    @Autowired
+    private FeedService feedService;
+
+    @Autowired
+    private MessageStreamHub messageStreamHub;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    @Autowired
+    private TrendingTags trendingTags;
+
+    @Autowired
+    private Bulkheads bulkheads;
+
+    @Autowired(required = false)
+    private MessageListCache messageListCache;
+
     /**
      * Handles the registration of a new user account.
      * 
-     * @param account The account details provided in the request body (without the
-     *                accountId).
+     * @param account        The account details provided in the request body
+     *                       (without the accountId).
+     * @param idempotencyKey Optional key under which the response is remembered,
+     *                       so a retry with the same key gets the same response
      * @return A ResponseEntity containing the created Account object if successful,
      *         or an appropriate error status.
      */
     @PostMapping(value = "/register")
-    public ResponseEntity<Account> postRegisterAccount(@RequestBody Account account) {
-        try {
-            Account createdAccount = accountService.registerAccount(account);
-            return new ResponseEntity<>(createdAccount, HttpStatus.OK); // Return 200 OK if successful
-
-        } catch (DuplicateUsernameException e) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).build(); // Return 409 if username already exists
+    public CompletableFuture<ResponseEntity<Account>> postRegisterAccount(@RequestBody Account account,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return bulkheads.write(() -> {
+            if (idempotencyKey != null) {
+                return idempotencyStore.execute("register", idempotencyKey, account, Account.class,
+                        () -> registerAccount(account));
+            }
+            return registerAccount(account);
+        });
+    }
 
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build(); // Return 400 for validation errors
+    private ResponseEntity<Account> registerAccount(Account account) {
+        Result<Account> createdAccount = accountService.registerAccount(account);
+        if (!createdAccount.isOk()) {
+            // Return 409 if username already exists, 400 for validation errors
+            return ResponseEntity.status(statusOf(createdAccount.getRejection())).build();
         }
+        return new ResponseEntity<>(createdAccount.get(), HttpStatus.OK); // Return 200 OK if successful
     }
 
     /**
@@ -53,80 +96,149 @@ public class SocialMediaController {
      *         or an appropriate error status.
      */
     @PostMapping("/login")
-    public ResponseEntity<Account> login(@RequestBody Account loginRequest) {
-        try {
-            Account account = accountService.login(loginRequest.getUsername(), loginRequest.getPassword());
-
-            return new ResponseEntity<>(account, HttpStatus.OK); // If successful, return the account and 200 OK
+    public CompletableFuture<ResponseEntity<Account>> login(@RequestBody Account loginRequest) {
+        return bulkheads.read(() -> {
+            Result<Account> account = accountService.login(loginRequest.getUsername(), loginRequest.getPassword());
+            if (!account.isOk()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build(); // Return 401 Unauthorized if login fails
+            }
 
-        } catch (UnauthorizedException e) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build(); // Return 401 Unauthorized if login fails
-        }
+            return new ResponseEntity<>(account.get(), HttpStatus.OK); // If successful, return the account and 200 OK
+        });
     }
 
     /**
      * Handles the creation of messages
      * 
-     * @param message the message details provided in the request body (without
-     *                the messageId).
+     * @param message        the message details provided in the request body
+     *                       (without the messageId).
+     * @param idempotencyKey Optional key under which the response is remembered,
+     *                       so a retry with the same key gets the same response
      * @return A ResponseEntity containing the created Message object if successful,
      *         or an appropriate error status.
      */
     @PostMapping("/messages")
-    public ResponseEntity<Message> postMessage(@RequestBody Message message) {
-        try {
-            Message createdMessage = messageService.createMessage(message);
-
-            return new ResponseEntity<>(createdMessage, HttpStatus.OK); // Return the newly created message with 200 OK
-                                                                        // status
+    public CompletableFuture<ResponseEntity<Message>> postMessage(@RequestBody Message message,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return bulkheads.write(() -> {
+            if (idempotencyKey != null) {
+                return idempotencyStore.execute("messages", idempotencyKey, message, Message.class,
+                        () -> createMessage(message));
+            }
+            return createMessage(message);
+        });
+    }
 
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+    private ResponseEntity<Message> createMessage(Message message) {
+        Result<Message> createdMessage = messageService.createMessage(message);
+        if (!createdMessage.isOk()) {
+            return ResponseEntity.status(statusOf(createdMessage.getRejection())).build();
         }
+
+        // Return the newly created message with 200 OK status
+        return withETag(ResponseEntity.ok(), createdMessage.get()).body(createdMessage.get());
     }
 
     /**
-     * Handles the retrieval of all messages
+     * Handles the retrieval of all messages, or of one page of them when a page
+     * is requested
      * 
+     * With app.message-list-cache.enabled, every message is served from a
+     * snapshot that may be a few seconds old, and the Age header gives its age.
+     * 
+     * @param page The zero-based page number, or null for every message
+     * @param size The page size, 20 if not given
      * @return A ResponseEntity containing a list of the created Message objects if
      *         successful,
      *         or an empty list.
      */
     @GetMapping("/messages")
-    public ResponseEntity<List<Message>> getAllMessages() {
-        List<Message> messages = messageService.getAllMessages();
+    public CompletableFuture<ResponseEntity<List<Message>>> getAllMessages(
+            @RequestParam(required = false) Integer page,
+            @RequestParam(defaultValue = "20") int size) {
+        if (page != null && (page < 0 || size < 1)) {
+            // Return 400 for an invalid page
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        }
+        return bulkheads.read(() -> {
+            if (page == null && messageListCache != null) {
+                MessageListCache.Snapshot snapshot = messageListCache.get();
+                return ResponseEntity.ok()
+                        .header(HttpHeaders.AGE, Long.toString(snapshot.getAgeSeconds()))
+                        .body(snapshot.getMessages());
+            }
+            List<Message> messages = page == null ? messageService.getAllMessages()
+                    : messageService.getMessagesPage(page, size);
 
-        return new ResponseEntity<>(messages, HttpStatus.OK); // Return the list of messages with 200 OK status
+            return new ResponseEntity<>(messages, HttpStatus.OK); // Return the list of messages with 200 OK status
+        });
     }
 
     /**
      * Handles the retrieval of a message by its messageId
      * 
      * @param messageId The unique identifier of the message to be retrieved
-     * @return A ResponseEntity containing the Message object if
-     *         successful, or empty.
+     * @return A ResponseEntity containing the Message object, with its version as
+     *         the ETag, if successful, or empty.
      */
     @GetMapping("/messages/{messageId}")
-    public ResponseEntity<Message> getMessageById(@PathVariable Integer messageId) {
-        Optional<Message> message = messageService.getMessageById(messageId);
+    public CompletableFuture<ResponseEntity<Message>> getMessageById(@PathVariable Integer messageId) {
+        return bulkheads.read(() -> {
+            Optional<Message> message = messageService.getMessageById(messageId);
 
-        return message.map(ResponseEntity::ok)
-                .orElseGet(() -> new ResponseEntity<>(HttpStatus.OK));
+            return message.map(found -> withETag(ResponseEntity.ok(), found).body(found))
+                    .orElseGet(() -> new ResponseEntity<>(HttpStatus.OK));
+        });
+    }
+
+    /**
+     * Handles liking a message
+     * 
+     * @param messageId The unique identifier of the message to like
+     * @return A ResponseEntity containing the Message object with its like count,
+     *         or status 400 if the message does not exist
+     */
+    @PostMapping("/messages/{messageId}/likes")
+    public CompletableFuture<ResponseEntity<Message>> likeMessage(@PathVariable Integer messageId) {
+        // A like only reads the message; the count is written later in a batch, so it needs no write slot
+        return bulkheads.read(() -> {
+            Result<Message> liked = messageService.likeMessage(messageId);
+            if (!liked.isOk()) {
+                return ResponseEntity.status(statusOf(liked.getRejection())).build();
+            }
+            return ResponseEntity.ok(liked.get());
+        });
     }
 
     /**
      * Handles the deletion of a message
      * 
      * @param messageId The unique identifier of the message to be deleted
-     * @return A ResponseEntity containing an integer 1 if deleted, 0 if not found
+     * @param ifMatch   Optional ETag the message must still have
+     * @return A ResponseEntity containing an integer 1 if deleted, 0 if not found,
+     *         412 if the message no longer matches If-Match, or 409 if it changed
+     *         while being deleted or has been archived
      */
     @DeleteMapping("/messages/{messageId}")
-    public ResponseEntity<Integer> deleteMessage(@PathVariable Integer messageId) {
-        int rowsAffected = messageService.deleteMessage(messageId);
-        if (rowsAffected == 0) {
-            return new ResponseEntity<>(HttpStatus.OK); // Return 200 with empty body
-        }
-        return ResponseEntity.status(HttpStatus.OK).body(rowsAffected);
+    public CompletableFuture<ResponseEntity<Integer>> deleteMessage(@PathVariable Integer messageId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return bulkheads.write(() -> {
+            Result<Integer> deleted;
+            try {
+                deleted = messageService.deleteMessage(messageId, ifMatchVersion(ifMatch));
+            } catch (OptimisticLockingFailureException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build(); // Return 409 for a concurrent update
+            }
+            if (!deleted.isOk()) {
+                // Return 412 for a stale ETag, 409 for an archived message
+                return ResponseEntity.status(statusOf(deleted.getRejection())).build();
+            }
+            int rowsAffected = deleted.get();
+            if (rowsAffected == 0) {
+                return new ResponseEntity<>(HttpStatus.OK); // Return 200 with empty body
+            }
+            return ResponseEntity.status(HttpStatus.OK).body(rowsAffected);
+        });
     }
 
     /**
@@ -134,27 +246,34 @@ public class SocialMediaController {
      * 
      * @param messageId      The unique identifier of the message to be updated
      * @param newMessageText The new text for the message
-     * @return A ResponseEntity containing an integer 1 if updated successfully
+     * @param ifMatch        Optional ETag the message must still have
+     * @return A ResponseEntity containing an integer 1 and the new ETag if updated
+     *         successfully, 412 if the message no longer matches If-Match, or 409
+     *         if another update committed first or the message has been archived
      */
     @PatchMapping("/messages/{messageId}")
-    public ResponseEntity<Integer> updateMessageText(
+    public CompletableFuture<ResponseEntity<Integer>> updateMessageText(
             @PathVariable Integer messageId,
-            @RequestBody Map<String, String> requestBody) {
+            @RequestBody Map<String, String> requestBody,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
         // Extract the "messageText" from the request body map
         String newMessageText = requestBody.get("messageText");
 
-        // Validate the newMessageText input
-        if (newMessageText == null || newMessageText.isBlank()) {
-            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST); // Return 400 for blank messageText
-        }
-
-        try {
-            int rowsAffected = messageService.updateMessageText(messageId, newMessageText);
-            return new ResponseEntity<>(rowsAffected, HttpStatus.OK);
-        } catch (IllegalArgumentException e) {
-            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
-        }
+        return bulkheads.write(() -> {
+            Result<Message> updated;
+            try {
+                updated = messageService.updateMessageText(messageId, newMessageText, ifMatchVersion(ifMatch));
+            } catch (OptimisticLockingFailureException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build(); // Return 409 for a concurrent update
+            }
+            if (!updated.isOk()) {
+                // Return 400 for blank messageText or an unknown message, 412 for a stale ETag,
+                // 409 for an archived message
+                return ResponseEntity.status(statusOf(updated.getRejection())).build();
+            }
+            return withETag(ResponseEntity.ok(), updated.get()).body(1);
+        });
     }
 
     /**
@@ -164,11 +283,209 @@ public class SocialMediaController {
      * @return A ResponseEntity containing a List of messages 
      */
     @GetMapping("/accounts/{accountId}/messages")
-    public ResponseEntity<List<Message>> getMessagesByAccountId(@PathVariable Integer accountId) {
-        // Fetch the messages
-        List<Message> messages = messageService.getMessagesByAccountId(accountId);
+    public CompletableFuture<ResponseEntity<List<Message>>> getMessagesByAccountId(@PathVariable Integer accountId) {
+        return bulkheads.read(() -> {
+            // Fetch the messages
+            List<Message> messages = messageService.getMessagesByAccountId(accountId);
+
+            // Return the list of messages (empty if there are no messages)
+            return new ResponseEntity<>(messages, HttpStatus.OK);
+        });
+    }
+
+    /**
+     * Handles one account following another
+     * 
+     * @param accountId  The unique identifier of the follower
+     * @param followeeId The unique identifier of the account to follow
+     * @return A ResponseEntity containing an integer 1 if the follow is new or 0
+     *         if it already existed, or status 400 if either account does not
+     *         exist or they are the same account
+     */
+    @PostMapping("/accounts/{accountId}/following/{followeeId}")
+    public CompletableFuture<ResponseEntity<Integer>> follow(@PathVariable Integer accountId,
+            @PathVariable Integer followeeId) {
+        return bulkheads.write(() -> {
+            Result<Integer> followed = feedService.follow(accountId, followeeId);
+            if (!followed.isOk()) {
+                return ResponseEntity.status(statusOf(followed.getRejection())).build();
+            }
+            return ResponseEntity.ok(followed.get());
+        });
+    }
+
+    /**
+     * Handles one account unfollowing another
+     * 
+     * @param accountId  The unique identifier of the follower
+     * @param followeeId The unique identifier of the account to unfollow
+     * @return A ResponseEntity containing an integer 1 if the follow was removed,
+     *         or 0 if there was none
+     */
+    @DeleteMapping("/accounts/{accountId}/following/{followeeId}")
+    public CompletableFuture<ResponseEntity<Integer>> unfollow(@PathVariable Integer accountId,
+            @PathVariable Integer followeeId) {
+        return bulkheads.write(() -> ResponseEntity.ok(feedService.unfollow(accountId, followeeId).get()));
+    }
+
+    /**
+     * Handles retrieving the accounts an account follows
+     * 
+     * @param accountId The unique identifier of the follower
+     * @return A ResponseEntity containing the followed account ids, or status
+     *         400 if the account does not exist
+     */
+    @GetMapping("/accounts/{accountId}/following")
+    public CompletableFuture<ResponseEntity<int[]>> getFollowing(@PathVariable Integer accountId) {
+        return bulkheads.read(() -> {
+            Result<int[]> following = feedService.getFolloweeIds(accountId);
+            if (!following.isOk()) {
+                return ResponseEntity.status(statusOf(following.getRejection())).build();
+            }
+            return ResponseEntity.ok(following.get());
+        });
+    }
+
+    /**
+     * Handles retrieving an account's home timeline
+     * 
+     * @param accountId The unique identifier of the account reading its timeline
+     * @param limit     The most messages to return
+     * @return A ResponseEntity containing the newest messages of the accounts it
+     *         follows, newest first, or status 400 if the account does not exist
+     *         or the limit is invalid
+     */
+    @GetMapping("/accounts/{accountId}/feed")
+    public CompletableFuture<ResponseEntity<List<Message>>> getFeed(@PathVariable Integer accountId,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        }
+        return bulkheads.read(() -> {
+            Result<List<Message>> feed = feedService.getFeed(accountId, limit);
+            if (!feed.isOk()) {
+                return ResponseEntity.status(statusOf(feed.getRejection())).build();
+            }
+            return ResponseEntity.ok(feed.get());
+        });
+    }
+
+    /**
+     * Handles retrieving the messages that use a #hashtag or @mention
+     * 
+     * @param tag The tag, such as "java" or "@alice"; without a marker it is
+     *            taken as a hashtag
+     * @return A ResponseEntity containing a List of messages, or status 400 if
+     *         the tag is not valid
+     */
+    @GetMapping("/tags/{tag}/messages")
+    public CompletableFuture<ResponseEntity<List<Message>>> getMessagesByTag(@PathVariable String tag) {
+        String normalized = Tags.normalize(tag);
+        if (normalized == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        }
+        return bulkheads.read(() -> new ResponseEntity<>(messageService.getMessagesByTag(normalized), HttpStatus.OK));
+    }
+
+    /**
+     * Handles retrieving the most used tags in recent messages
+     * 
+     * @param limit The number of tags to return, at most the configured
+     *              app.tags.trending.top-k
+     * @return A ResponseEntity containing tag and estimated count pairs, most
+     *         used first
+     */
+    @GetMapping("/trending")
+    public CompletableFuture<ResponseEntity<List<TagCount>>> getTrending(@RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        }
+        return bulkheads.read(() -> ResponseEntity.ok(trendingTags.top(limit)));
+    }
+
+    /**
+     * Streams message creations, updates and deletions as Server-Sent Events
+     * 
+     * @param lastEventId The id of the last event received, to resume after it
+     * @param overflow    "drop" to skip the oldest pending events when the client
+     *                    falls behind, or "disconnect" to end the stream instead
+     * @return An emitter that sends one event per change
+     */
+    @GetMapping(value = "/messages/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessages(
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+            @RequestParam(defaultValue = "drop") String overflow) {
+        return messageStreamHub.subscribe(null, lastEventId, overflowPolicy(overflow));
+    }
+
+    /**
+     * Streams changes to the messages of one account as Server-Sent Events
+     * 
+     * @param accountId   The unique identifier of the account to follow
+     * @param lastEventId The id of the last event received, to resume after it
+     * @param overflow    "drop" or "disconnect", as for /messages/stream
+     * @return An emitter that sends one event per change
+     */
+    @GetMapping(value = "/accounts/{accountId}/messages/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessagesByAccountId(@PathVariable Integer accountId,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+            @RequestParam(defaultValue = "drop") String overflow) {
+        return messageStreamHub.subscribe(accountId, lastEventId, overflowPolicy(overflow));
+    }
+
+    /**
+     * Handles work turned away because its bulkhead's queue is full
+     * 
+     * @return A ResponseEntity with 503 and a Retry-After hint
+     */
+    @ExceptionHandler(BulkheadFullException.class)
+    public ResponseEntity<Void> handleBulkheadFull(BulkheadFullException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+    /**
+     * @return The status a request turned down for the given reason gets
+     */
+    private static HttpStatus statusOf(Rejection rejection) {
+        switch (rejection) {
+            case DUPLICATE_USERNAME:
+            case ARCHIVED:
+                return HttpStatus.CONFLICT;
+            case BAD_CREDENTIALS:
+                return HttpStatus.UNAUTHORIZED;
+            case STALE_VERSION:
+                return HttpStatus.PRECONDITION_FAILED;
+            default:
+                return HttpStatus.BAD_REQUEST;
+        }
+    }
+
+    private static ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder response, Message message) {
+        return message.getVersion() != null ? response.eTag("\"" + message.getVersion() + "\"") : response;
+    }
+
+    /**
+     * Reads the version out of an If-Match header
+     * 
+     * @return null if there is no header or it is "*", the version if it is one
+     *         of our ETags, or -1, which no message has, for anything else
+     */
+    private static Integer ifMatchVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String etag = ifMatch.trim();
+        if (etag.length() > 2 && etag.startsWith("\"") && etag.endsWith("\"")) {
+            try {
+                return Integer.valueOf(etag.substring(1, etag.length() - 1));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
 
-        // Return the list of messages (empty if there are no messages)
-        return new ResponseEntity<>(messages, HttpStatus.OK);
+    private static OverflowPolicy overflowPolicy(String overflow) {
+        return "disconnect".equalsIgnoreCase(overflow) ? OverflowPolicy.DISCONNECT : OverflowPolicy.DROP_OLDEST;
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,9 @@ package com.example.entity;
 
 import javax.persistence.*;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 /**
  * This is a class that models a Message.
  *
@@ -33,6 +36,21 @@ public class Message {
      */
     @Column (name="timePostedEpoch")
     private Long timePostedEpoch;
+    /**
+     * Incremented by every update, so a write based on an older read can be detected. It is not part of the JSON
+     * body; clients see it as the ETag.
+     */
+    @Version
+    @Column (name="version")
+    @JsonIgnore
+    private Integer version;
+    /**
+     * The number of likes, filled in when the message is read for a response. It is not stored in the message
+     * table, and is left out of the JSON body when it was not filled in.
+     */
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long likes;
     /**
      * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
      * Jackson Objectmapper to work.
@@ -121,6 +139,30 @@ public class Message {
     public void setTimePostedEpoch(Long timePostedEpoch) {
         this.timePostedEpoch = timePostedEpoch;
     }
+    /**
+     * @return version, or null for a message that has not been stored yet
+     */
+    public Integer getVersion() {
+        return version;
+    }
+    /**
+     * @param version
+     */
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+    /**
+     * @return likes, or null if they were not filled in
+     */
+    public Long getLikes() {
+        return likes;
+    }
+    /**
+     * @param likes
+     */
+    public void setLikes(Long likes) {
+        this.likes = likes;
+    }
     /**
      * Overriding the default equals() method adds functionality to tell when two objects are identical, allowing
      * Assert.assertEquals and List.contains to function.
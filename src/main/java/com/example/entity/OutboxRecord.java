@@ -0,0 +1,69 @@
+package com.example.entity;
+
+/**
+ * A row of the message_outbox table, describing one committed change to a
+ * message.
+ */
+public class OutboxRecord {
+    private final long seq;
+    private final String eventType;
+    private final Integer messageId;
+    private final Integer postedBy;
+    private final String payload;
+    private final long createdAt;
+
+    public OutboxRecord(long seq, String eventType, Integer messageId, Integer postedBy, String payload,
+            long createdAt) {
+        this.seq = seq;
+        this.eventType = eventType;
+        this.messageId = messageId;
+        this.postedBy = postedBy;
+        this.payload = payload;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * @return The outbox sequence number, increasing in insertion order
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * @return CREATED, UPDATED or DELETED
+     */
+    public String getEventType() {
+        return eventType;
+    }
+
+    public Integer getMessageId() {
+        return messageId;
+    }
+
+    public Integer getPostedBy() {
+        return postedBy;
+    }
+
+    /**
+     * @return The message as JSON after the change, or null for a deletion
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return The epoch milliseconds at which the change was recorded
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxRecord{" +
+                "seq=" + seq +
+                ", eventType='" + eventType + '\'' +
+                ", messageId=" + messageId +
+                '}';
+    }
+}
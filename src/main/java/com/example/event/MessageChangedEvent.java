@@ -0,0 +1,65 @@
+package com.example.event;
+
+import com.example.entity.Message;
+
+/**
+ * Published by MessageService after a message is created, updated or deleted.
+ */
+public class MessageChangedEvent {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private final Type type;
+    private final Integer messageId;
+    private final Integer postedBy;
+    private final Message message;
+
+    private MessageChangedEvent(Type type, Integer messageId, Integer postedBy, Message message) {
+        this.type = type;
+        this.messageId = messageId;
+        this.postedBy = postedBy;
+        this.message = message;
+    }
+
+    public static MessageChangedEvent created(Message message) {
+        return new MessageChangedEvent(Type.CREATED, message.getMessageId(), message.getPostedBy(), message);
+    }
+
+    public static MessageChangedEvent updated(Message message) {
+        return new MessageChangedEvent(Type.UPDATED, message.getMessageId(), message.getPostedBy(), message);
+    }
+
+    public static MessageChangedEvent deleted(Integer messageId, Integer postedBy) {
+        return new MessageChangedEvent(Type.DELETED, messageId, postedBy, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Integer getMessageId() {
+        return messageId;
+    }
+
+    public Integer getPostedBy() {
+        return postedBy;
+    }
+
+    /**
+     * @return The message as it is after the change, or null for a deletion
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageChangedEvent{" +
+                "type=" + type +
+                ", messageId=" + messageId +
+                ", postedBy=" + postedBy +
+                '}';
+    }
+}
@@ -0,0 +1,392 @@
+package com.example.event;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes message changes to Server-Sent Event subscribers.
+ * 
+ * Committed {@link MessageChangedEvent}s are written into a fixed-size ring
+ * buffer. A single fan-out thread copies each new entry into the bounded queue
+ * of every matching subscriber, and a small sender pool drains those queues
+ * into the subscribers' connections. When a subscriber's queue is full it
+ * either drops its oldest pending event or is disconnected, depending on the
+ * policy it chose. The ring also lets a reconnecting client resume from its
+ * Last-Event-ID while that event is still buffered.
+ * 
+ * Writes to a connection block, so a client that stops reading can hold a
+ * sender thread until its socket times out. The fan-out thread watches for
+ * sends that have taken longer than app.stream.send-timeout-ms and applies the
+ * subscriber's policy at once: a DROP_OLDEST subscriber's backlog is dropped,
+ * and a DISCONNECT subscriber is closed. Either way the pool gets an extra
+ * thread for as long as that send stays stuck, up to one per sender thread,
+ * so one slow client never holds up the others.
+ * 
+ * Every stream opens with a retry hint, so headers reach the client before
+ * its first matching change, which for a quiet account may be a long time.
+ * 
+ * The hub starts when it is created, ahead of the web server, and stops in
+ * the default lifecycle phase, which comes before the web server's. Open
+ * streams are therefore completed while their connections can still carry
+ * the end of the response.
+ */
+@Component
+public class MessageStreamHub implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageStreamHub.class);
+
+    /**
+     * What to do with a new event when a subscriber's queue is full
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST, DISCONNECT
+    }
+
+    /**
+     * An entry in the ring buffer
+     */
+    static final class Entry {
+        final long sequence;
+        final MessageChangedEvent event;
+
+        Entry(long sequence, MessageChangedEvent event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+    }
+
+    private final Entry[] ring;
+    private final int mask;
+    private final int subscriberQueueCapacity;
+    private final long emitterTimeoutMillis;
+    private final int senderThreads;
+    private final long sendTimeoutNanos;
+    private final long retryMillis;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    private long lastSequence;
+    private volatile long published;
+
+    private ThreadPoolExecutor senders;
+    private int stalledSenders;
+    private Thread fanOutThread;
+    private volatile boolean running;
+
+    public MessageStreamHub(@Value("${app.stream.ring-size}") int ringSize,
+            @Value("${app.stream.subscriber-queue-capacity}") int subscriberQueueCapacity,
+            @Value("${app.stream.emitter-timeout-ms}") long emitterTimeoutMillis,
+            @Value("${app.stream.sender-threads}") int senderThreads,
+            @Value("${app.stream.send-timeout-ms}") long sendTimeoutMillis,
+            @Value("${app.stream.retry-ms}") long retryMillis) {
+        if (Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("app.stream.ring-size must be a power of two");
+        }
+        this.ring = new Entry[ringSize];
+        this.mask = ringSize - 1;
+        this.subscriberQueueCapacity = subscriberQueueCapacity;
+        this.emitterTimeoutMillis = emitterTimeoutMillis;
+        this.senderThreads = senderThreads;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        this.retryMillis = retryMillis;
+    }
+
+    @PostConstruct
+    @Override
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        senders = new ThreadPoolExecutor(senderThreads, senderThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "message-stream-sender");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        fanOutThread = new Thread(this::fanOut, "message-stream-fan-out");
+        fanOutThread.setDaemon(true);
+        fanOutThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        LockSupport.unpark(fanOutThread);
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        subscribers.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Writes a committed change into the ring buffer
+     * 
+     * @param event The change to publish
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageChanged(MessageChangedEvent event) {
+        synchronized (ring) {
+            long sequence = ++lastSequence;
+            ring[(int) (sequence & mask)] = new Entry(sequence, event);
+            published = sequence;
+        }
+        LockSupport.unpark(fanOutThread);
+    }
+
+    /**
+     * Opens a stream of message changes
+     * 
+     * @param accountId   Only stream changes to this account's messages, or null
+     *                    for every message
+     * @param lastEventId The id of the last event the client received, to resume
+     *                    after it, or null to start with new events
+     * @param policy      What to do when the client falls behind
+     * @return The emitter to return from the handler
+     */
+    public SseEmitter subscribe(Integer accountId, Long lastEventId, OverflowPolicy policy) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, accountId, policy,
+                new ArrayBlockingQueue<>(subscriberQueueCapacity));
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        try {
+            // Sent once the handler returns, which commits the response headers
+            emitter.send(SseEmitter.event().reconnectTime(retryMillis).comment("connected"));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+            return emitter;
+        }
+
+        synchronized (ring) {
+            if (lastEventId != null) {
+                long from = Math.max(Math.max(lastEventId + 1, lastSequence - ring.length + 1), 1);
+                for (long sequence = from; sequence <= lastSequence; sequence++) {
+                    subscriber.offer(ring[(int) (sequence & mask)]);
+                }
+            }
+            // Registered while holding the ring so no event is both replayed and fanned out
+            subscriber.cursor = lastSequence;
+            subscribers.add(subscriber);
+        }
+        subscriber.scheduleDrain();
+        return emitter;
+    }
+
+    /**
+     * @return The number of connected subscribers
+     */
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    private void fanOut() {
+        long cursor = 0;
+        while (running) {
+            checkStalledSends();
+            long available = published;
+            if (cursor == available) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                continue;
+            }
+            while (cursor < available) {
+                Entry entry = ring[(int) (++cursor & mask)];
+                if (entry == null || entry.sequence != cursor) {
+                    // The fan-out thread fell a whole ring behind and these events are gone
+                    long oldest = Math.max(cursor, available - ring.length + 1);
+                    log.warn("Message stream fan-out skipped {} events", oldest - cursor);
+                    cursor = oldest - 1;
+                    continue;
+                }
+                for (Subscriber subscriber : subscribers) {
+                    if (entry.sequence > subscriber.cursor) {
+                        subscriber.offer(entry);
+                        subscriber.scheduleDrain();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the overflow policy to subscribers whose current send has taken
+     * longer than the send timeout, and lends the pool a thread for each
+     */
+    private void checkStalledSends() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            long startedAt = subscriber.sendStartedAt;
+            if (startedAt != 0 && now - startedAt > sendTimeoutNanos && subscriber.markStalled()) {
+                if (subscriber.policy == OverflowPolicy.DISCONNECT) {
+                    subscriber.close();
+                } else {
+                    subscriber.dropBacklog();
+                }
+            }
+        }
+    }
+
+    /**
+     * Grows the sender pool while sends are stuck, by at most senderThreads
+     * threads, and shrinks it back as they return
+     */
+    private synchronized void resizeSenders(int delta) {
+        int stalled = Math.max(0, Math.min(senderThreads, stalledSenders + delta));
+        if (stalled == stalledSenders) {
+            return;
+        }
+        stalledSenders = stalled;
+        int size = senderThreads + stalled;
+        if (delta > 0) {
+            senders.setMaximumPoolSize(size);
+            senders.setCorePoolSize(size);
+        } else {
+            senders.setCorePoolSize(size);
+            senders.setMaximumPoolSize(size);
+        }
+    }
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final Integer accountId;
+        final OverflowPolicy policy;
+        final ArrayBlockingQueue<Entry> queue;
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicBoolean completed = new AtomicBoolean();
+        volatile long cursor;
+        volatile boolean closed;
+        volatile long sendStartedAt;
+        boolean stalled;
+
+        Subscriber(SseEmitter emitter, Integer accountId, OverflowPolicy policy, ArrayBlockingQueue<Entry> queue) {
+            this.emitter = emitter;
+            this.accountId = accountId;
+            this.policy = policy;
+            this.queue = queue;
+        }
+
+        void offer(Entry entry) {
+            if (closed || (accountId != null && !accountId.equals(entry.event.getPostedBy()))) {
+                return;
+            }
+            while (!queue.offer(entry)) {
+                if (policy == OverflowPolicy.DISCONNECT) {
+                    close();
+                    return;
+                }
+                queue.poll();
+                dropped.incrementAndGet();
+            }
+        }
+
+        void scheduleDrain() {
+            if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        void drain() {
+            try {
+                Entry entry;
+                while (!closed && (entry = queue.poll()) != null) {
+                    long droppedSinceLastSend = dropped.getAndSet(0);
+                    sendStartedAt = System.nanoTime();
+                    if (droppedSinceLastSend > 0) {
+                        emitter.send(SseEmitter.event().comment("dropped " + droppedSinceLastSend));
+                    }
+                    emitter.send(SseEmitter.event()
+                            .id(Long.toString(entry.sequence))
+                            .name(entry.event.getType().name().toLowerCase())
+                            .data(entry.event, MediaType.APPLICATION_JSON));
+                    sendFinished();
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+            } finally {
+                sendFinished();
+                draining.set(false);
+            }
+            if (closed) {
+                complete(); // Closed while a send was stuck, which left completing to this thread
+            } else {
+                scheduleDrain();
+            }
+        }
+
+        /**
+         * Marks the current send stuck and lends the pool a thread for it
+         * 
+         * @return False if the send has already finished or was marked before
+         */
+        synchronized boolean markStalled() {
+            if (sendStartedAt == 0 || stalled) {
+                return false;
+            }
+            stalled = true;
+            resizeSenders(1);
+            return true;
+        }
+
+        /**
+         * Marks the current send finished, taking back a thread lent while it
+         * was stuck
+         */
+        synchronized void sendFinished() {
+            sendStartedAt = 0;
+            if (stalled) {
+                stalled = false;
+                resizeSenders(-1);
+            }
+        }
+
+        void dropBacklog() {
+            while (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                subscribers.remove(this);
+                queue.clear();
+                // The emitter is locked for the whole of a send, so a stuck send completes it when it returns
+                if (sendStartedAt == 0) {
+                    complete();
+                }
+            }
+        }
+
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                emitter.complete();
+            }
+        }
+    }
+}
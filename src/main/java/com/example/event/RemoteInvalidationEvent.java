@@ -0,0 +1,62 @@
+package com.example.event;
+
+import java.util.Arrays;
+
+/**
+ * Published by the InvalidationBus when another instance reports that
+ * messages or accounts changed there. Listeners drop or reload whatever they
+ * hold for those ids.
+ * 
+ * An account id means something keyed by that account changed: it registered,
+ * followed or unfollowed someone, or posted, edited or deleted a message.
+ * 
+ * An event for {@link #everything()} carries no ids. It is published when
+ * invalidations from another instance were lost, and listeners drop or reload
+ * all they hold.
+ */
+public class RemoteInvalidationEvent {
+
+    private static final int[] NO_IDS = new int[0];
+
+    private final int[] messageIds;
+    private final int[] accountIds;
+    private final boolean everything;
+
+    public RemoteInvalidationEvent(int[] messageIds, int[] accountIds) {
+        this(messageIds, accountIds, false);
+    }
+
+    private RemoteInvalidationEvent(int[] messageIds, int[] accountIds, boolean everything) {
+        this.messageIds = messageIds;
+        this.accountIds = accountIds;
+        this.everything = everything;
+    }
+
+    /**
+     * @return An event that invalidates every message and account
+     */
+    public static RemoteInvalidationEvent everything() {
+        return new RemoteInvalidationEvent(NO_IDS, NO_IDS, true);
+    }
+
+    public int[] getMessageIds() {
+        return messageIds;
+    }
+
+    public int[] getAccountIds() {
+        return accountIds;
+    }
+
+    public boolean isEverything() {
+        return everything;
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteInvalidationEvent{" +
+                "messageIds=" + Arrays.toString(messageIds) +
+                ", accountIds=" + Arrays.toString(accountIds) +
+                ", everything=" + everything +
+                '}';
+    }
+}
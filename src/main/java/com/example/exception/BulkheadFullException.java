@@ -0,0 +1,8 @@
+package com.example.exception;
+
+public class BulkheadFullException extends RuntimeException {
+
+    public BulkheadFullException(String bulkhead) {
+        super(bulkhead + " bulkhead is full");
+    }
+}
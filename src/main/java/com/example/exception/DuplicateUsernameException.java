@@ -1,5 +0,0 @@
-package com.example.exception;
-
-public class DuplicateUsernameException extends RuntimeException {
-
-}
@@ -0,0 +1,55 @@
+package com.example.jdbc;
+
+import java.util.Arrays;
+
+/**
+ * The types bound to a prepared statement's parameters, by index. Only built
+ * into text when a statement turns out slow, so values never reach the log.
+ */
+public final class ParameterShape {
+
+    private String[] types = new String[8];
+    private int count;
+
+    void set(int index, Object value) {
+        if (index < 1) {
+            return;
+        }
+        if (index > types.length) {
+            types = Arrays.copyOf(types, Math.max(index, types.length * 2));
+        }
+        types[index - 1] = describe(value);
+        count = Math.max(count, index);
+    }
+
+    void setNull(int index) {
+        set(index, null);
+    }
+
+    void clear() {
+        Arrays.fill(types, 0, count, null);
+        count = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(types[i] != null ? types[i] : "?");
+        }
+        return text.toString();
+    }
+
+    private static String describe(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof CharSequence) {
+            return "String(" + ((CharSequence) value).length() + ")";
+        }
+        return value.getClass().getSimpleName();
+    }
+}
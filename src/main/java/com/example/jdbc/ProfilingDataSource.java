@@ -0,0 +1,196 @@
+package com.example.jdbc;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * Wraps a {@link DataSource} so every statement run on its connections is timed
+ * and reported to each {@link StatementListener} bean, such as the
+ * {@link StatementProfiler}. Connections and statements are JDK proxies over
+ * the pool's own; anything other than binding parameters and executing passes
+ * straight through.
+ */
+public class ProfilingDataSource implements DataSource {
+
+    private static final ClassLoader CLASS_LOADER = ProfilingDataSource.class.getClassLoader();
+
+    private final DataSource target;
+    private final ObjectProvider<StatementListener> listenerProvider;
+    private volatile StatementListener[] listeners;
+
+    public ProfilingDataSource(DataSource target, ObjectProvider<StatementListener> listenerProvider) {
+        this.target = target;
+        this.listenerProvider = listenerProvider;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(target.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(target.getConnection(username, password));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> type) throws SQLException {
+        if (type.isInstance(this)) {
+            return (T) this;
+        }
+        return target.unwrap(type);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> type) throws SQLException {
+        return type.isInstance(this) || target.isWrapperFor(type);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return target.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        target.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        target.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return target.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return target.getParentLogger();
+    }
+
+    private void notifyListeners(String sql, ParameterShape parameters, int batchSize, long startNanos,
+            long nanos) {
+        StatementListener[] current = listeners;
+        if (current == null) {
+            // Resolved on first use: the data source is created before the listeners
+            current = listenerProvider.orderedStream().toArray(StatementListener[]::new);
+            listeners = current;
+        }
+        for (StatementListener listener : current) {
+            listener.statementExecuted(sql, parameters, batchSize, startNanos, nanos);
+        }
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(CLASS_LOADER, new Class<?>[] { Connection.class },
+                new ConnectionHandler(connection));
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = call(connection, method, args);
+            String name = method.getName();
+            if (result instanceof CallableStatement) {
+                return wrapStatement(CallableStatement.class, (Statement) result, (String) args[0]);
+            }
+            if (result instanceof PreparedStatement) {
+                return wrapStatement(PreparedStatement.class, (Statement) result, (String) args[0]);
+            }
+            if (result instanceof Statement && "createStatement".equals(name)) {
+                return wrapStatement(Statement.class, (Statement) result, null);
+            }
+            return result;
+        }
+
+        private Object wrapStatement(Class<? extends Statement> type, Statement statement, String sql) {
+            return Proxy.newProxyInstance(CLASS_LOADER, new Class<?>[] { type },
+                    new StatementHandler(statement, sql));
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+        private final String preparedSql;
+        private final ParameterShape parameters;
+        private String batchSql;
+        private int batchSize;
+
+        StatementHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+            this.parameters = preparedSql != null ? new ParameterShape() : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0]
+                        : preparedSql != null ? preparedSql : batchSql;
+                int batch = "executeBatch".equals(name) || "executeLargeBatch".equals(name) ? batchSize : 0;
+                long start = System.nanoTime();
+                try {
+                    return call(statement, method, args);
+                } finally {
+                    notifyListeners(sql, parameters, batch, start, System.nanoTime() - start);
+                    if (batch > 0) {
+                        batchSize = 0;
+                    }
+                }
+            }
+            if (parameters != null && name.startsWith("set") && args != null && args.length >= 2
+                    && args[0] instanceof Integer) {
+                if ("setNull".equals(name)) {
+                    parameters.setNull((Integer) args[0]);
+                } else {
+                    parameters.set((Integer) args[0], args[1]);
+                }
+            } else if ("clearParameters".equals(name) && parameters != null) {
+                parameters.clear();
+            } else if ("addBatch".equals(name)) {
+                batchSize++;
+                if (args != null && args.length == 1 && batchSql == null) {
+                    batchSql = (String) args[0];
+                }
+            } else if ("clearBatch".equals(name)) {
+                batchSize = 0;
+            }
+            return call(statement, method, args);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.jdbc;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+/**
+ * Puts a {@link ProfilingDataSource} in front of the application's data source
+ * bean, so JPA, the JDBC templates and the read/write router all go through it.
+ * The per-shard data sources are left alone. Only installed while the profiler
+ * or tracing, the statement listeners, is enabled.
+ */
+@Component
+@ConditionalOnExpression("${app.jdbc-profiler.enabled:false} or ${app.tracing.enabled:false}")
+public class ProfilingDataSourcePostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<StatementListener> listeners;
+
+    public ProfilingDataSourcePostProcessor(ObjectProvider<StatementListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if ("dataSource".equals(beanName) && bean instanceof DataSource && !(bean instanceof ProfilingDataSource)) {
+            return new ProfilingDataSource((DataSource) bean, listeners);
+        }
+        return bean;
+    }
+}
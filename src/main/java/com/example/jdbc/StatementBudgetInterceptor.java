@@ -0,0 +1,46 @@
+package com.example.jdbc;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Counts the statements each request to a controller runs, and hands the count
+ * to the {@link StatementProfiler} to check against the handler's budget once
+ * the request completes, including after an asynchronous dispatch.
+ */
+@Component
+@ConditionalOnProperty(name = "app.jdbc-profiler.enabled", havingValue = "true")
+public class StatementBudgetInterceptor implements HandlerInterceptor {
+
+    private final StatementProfiler profiler;
+
+    public StatementBudgetInterceptor(StatementProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod) {
+            profiler.beginRequest(request); // An async dispatch keeps the original count
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        if (!(handler instanceof HandlerMethod)) {
+            return;
+        }
+        HandlerMethod method = (HandlerMethod) handler;
+        String name = method.getMethod().getName();
+        profiler.endRequest(request,
+                request.getMethod() + " " + method.getBeanType().getSimpleName() + "." + name, name);
+        request.removeAttribute(StatementProfiler.REQUEST_COUNT_ATTRIBUTE);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.jdbc;
+
+/**
+ * Told about every statement run through the {@link ProfilingDataSource}
+ */
+public interface StatementListener {
+
+    /**
+     * Called on the executing thread once a statement has run, whether or not
+     * it succeeded
+     * 
+     * @param sql        The statement text
+     * @param parameters The bound parameter types by index, or null for a plain
+     *                   statement
+     * @param batchSize  Rows in the batch, or 0 for a single execution
+     * @param startNanos When execution started, from System.nanoTime()
+     * @param nanos      Execution time
+     */
+    void statementExecuted(String sql, ParameterShape parameters, int batchSize, long startNanos, long nanos);
+}
@@ -0,0 +1,202 @@
+package com.example.jdbc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Collects timings of every JDBC statement run through the
+ * {@link ProfilingDataSource}, and statement counts per HTTP request. Enabled
+ * with app.jdbc-profiler.enabled=true.
+ * 
+ * Statements are aggregated by SQL text. One slower than
+ * app.jdbc-profiler.slow-threshold-ms is logged with the types of its
+ * parameters, never their values, and kept among the most recent slow samples.
+ * A request that runs more statements than its handler's budget is logged and
+ * counted against its endpoint, which is how an N+1 pattern shows up.
+ */
+@Component
+@ConditionalOnProperty(name = "app.jdbc-profiler.enabled", havingValue = "true")
+public class StatementProfiler implements StatementListener {
+
+    private static final Logger log = LoggerFactory.getLogger(StatementProfiler.class);
+
+    static final String REQUEST_COUNT_ATTRIBUTE = StatementProfiler.class.getName() + ".statements";
+
+    private final long slowThresholdNanos;
+    private final int slowSampleCount;
+    private final Map<String, Integer> budgets;
+    private final int defaultBudget;
+
+    private final Map<String, QueryStats> queries = new ConcurrentHashMap<>();
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private final ArrayDeque<Map<String, Object>> slowSamples = new ArrayDeque<>();
+
+    public StatementProfiler(@Value("${app.jdbc-profiler.slow-threshold-ms}") long slowThresholdMillis,
+            @Value("${app.jdbc-profiler.slow-samples}") int slowSampleCount,
+            @Value("#{${app.jdbc-profiler.budgets}}") Map<String, Integer> budgets,
+            @Value("${app.jdbc-profiler.default-budget}") int defaultBudget) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.slowSampleCount = slowSampleCount;
+        this.budgets = budgets;
+        this.defaultBudget = defaultBudget;
+    }
+
+    /**
+     * Records one executed statement and counts it against the current request
+     */
+    @Override
+    public void statementExecuted(String sql, ParameterShape parameters, int batchSize, long startNanos,
+            long nanos) {
+        QueryStats stats = queries.computeIfAbsent(sql, key -> new QueryStats());
+        stats.count.increment();
+        stats.totalNanos.add(nanos);
+        stats.maxNanos.accumulateAndGet(nanos, Math::max);
+
+        AtomicInteger requestCount = requestCount();
+        if (requestCount != null) {
+            requestCount.incrementAndGet();
+        }
+
+        if (nanos >= slowThresholdNanos) {
+            stats.slowCount.increment();
+            String shape = parameters != null ? parameters.toString() : "";
+            log.warn("Slow statement ({} ms): {} [{}]{}", TimeUnit.NANOSECONDS.toMillis(nanos), sql, shape,
+                    batchSize > 0 ? " batch of " + batchSize : "");
+            Map<String, Object> sample = new LinkedHashMap<>();
+            sample.put("at", System.currentTimeMillis());
+            sample.put("sql", sql);
+            sample.put("parameters", shape);
+            sample.put("batchSize", batchSize);
+            sample.put("millis", nanos / 1_000_000.0);
+            synchronized (slowSamples) {
+                if (slowSamples.size() == slowSampleCount) {
+                    slowSamples.removeFirst();
+                }
+                slowSamples.addLast(sample);
+            }
+        }
+    }
+
+    /**
+     * Starts counting statements for a request, unless it already is
+     */
+    void beginRequest(HttpServletRequest request) {
+        if (request.getAttribute(REQUEST_COUNT_ATTRIBUTE) == null) {
+            request.setAttribute(REQUEST_COUNT_ATTRIBUTE, new AtomicInteger());
+        }
+    }
+
+    /**
+     * Checks a finished request's statement count against its handler's budget
+     * 
+     * @param handler The controller method name, which budgets are keyed by
+     */
+    void endRequest(HttpServletRequest request, String endpoint, String handler) {
+        AtomicInteger count = (AtomicInteger) request.getAttribute(REQUEST_COUNT_ATTRIBUTE);
+        if (count == null) {
+            return;
+        }
+        int statements = count.get();
+        int budget = budgets.getOrDefault(handler, defaultBudget);
+        EndpointStats stats = endpoints.computeIfAbsent(endpoint, key -> new EndpointStats(budget));
+        stats.requests.increment();
+        stats.statements.add(statements);
+        stats.maxStatements.accumulateAndGet(statements, Math::max);
+        if (statements > budget) {
+            stats.overBudget.increment();
+            log.warn("{} ran {} statements, over its budget of {}", endpoint, statements, budget);
+        }
+    }
+
+    /**
+     * @return Statements ranked by total time, the most recent slow samples, and
+     *         statement counts per endpoint against their budgets
+     */
+    public Map<String, Object> report() {
+        List<Map<String, Object>> ranked = new ArrayList<>();
+        queries.entrySet().stream()
+                .sorted(Comparator.comparingLong(
+                        (Map.Entry<String, QueryStats> entry) -> entry.getValue().totalNanos.sum()).reversed())
+                .forEach(entry -> {
+                    QueryStats stats = entry.getValue();
+                    long count = stats.count.sum();
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("sql", entry.getKey());
+                    row.put("count", count);
+                    row.put("totalMillis", stats.totalNanos.sum() / 1_000_000.0);
+                    row.put("meanMicros", count == 0 ? 0 : stats.totalNanos.sum() / count / 1000);
+                    row.put("maxMicros", stats.maxNanos.get() / 1000);
+                    row.put("slowCount", stats.slowCount.sum());
+                    ranked.add(row);
+                });
+
+        Map<String, Object> perEndpoint = new LinkedHashMap<>();
+        endpoints.forEach((endpoint, stats) -> {
+            long requests = stats.requests.sum();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("budget", stats.budget);
+            row.put("requests", requests);
+            row.put("meanStatements", requests == 0 ? 0 : (double) stats.statements.sum() / requests);
+            row.put("maxStatements", stats.maxStatements.get());
+            row.put("overBudget", stats.overBudget.sum());
+            perEndpoint.put(endpoint, row);
+        });
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("statements", ranked);
+        synchronized (slowSamples) {
+            report.put("slow", new ArrayList<>(slowSamples));
+        }
+        report.put("endpoints", perEndpoint);
+        return report;
+    }
+
+    private static AtomicInteger requestCount() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        // Read straight from the request, which stays usable on a bulkhead thread
+        return (AtomicInteger) ((ServletRequestAttributes) attributes).getRequest()
+                .getAttribute(REQUEST_COUNT_ATTRIBUTE);
+    }
+
+    private static final class QueryStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final LongAdder slowCount = new LongAdder();
+    }
+
+    private static final class EndpointStats {
+        final int budget;
+        final LongAdder requests = new LongAdder();
+        final LongAdder statements = new LongAdder();
+        final AtomicLong maxStatements = new AtomicLong();
+        final LongAdder overBudget = new LongAdder();
+
+        EndpointStats(int budget) {
+            this.budget = budget;
+        }
+    }
+}
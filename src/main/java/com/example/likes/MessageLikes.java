@@ -0,0 +1,245 @@
+package com.example.likes;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.entity.Message;
+import com.example.event.MessageChangedEvent;
+import com.example.repository.MessageLikeRepository;
+
+/**
+ * Counts likes in memory and adds them to the message_likes table in batches,
+ * so a burst of likes on one message costs one row update per flush instead
+ * of one per like, and likes never wait on that row's lock.
+ * 
+ * Each liked message has a {@link LongAdder}, which spreads concurrent
+ * increments over striped cells. The adder is never reset: the flusher
+ * remembers how much of it has been written and adds only the difference, so
+ * a like that lands while a flush reads the adder is picked up by the next
+ * flush rather than lost. Every app.likes.flush-interval-ms the differences
+ * are written in one transaction of batched
+ * {@code update ... set likeCount = likeCount + ?} statements. If the
+ * transaction fails nothing is marked written, and the same differences are
+ * retried next time.
+ * 
+ * A counter left idle for app.likes.idle-flushes flushes is retired so the map
+ * holds only recently liked messages. It is marked retired before it leaves
+ * the map, a like that finds it retired takes its increment back and retries
+ * on a fresh counter, and the retired counter is read once more a flush later,
+ * after any like still holding it has finished.
+ * 
+ * A message's like count is its flushed count plus what its counter has not
+ * written yet. A read racing a flush of that message can be off by that
+ * flush's difference for the moment, and so can a read from the read replica
+ * until the replica has replayed the flush.
+ */
+@Component
+public class MessageLikes implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageLikes.class);
+
+    @Autowired
+    private MessageLikeRepository messageLikeRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${app.likes.flush-interval-ms}")
+    private long flushIntervalMillis;
+
+    @Value("${app.likes.batch-size}")
+    private int batchSize;
+
+    @Value("${app.likes.idle-flushes}")
+    private int idleFlushes;
+
+    private final ConcurrentHashMap<Integer, Counter> counters = new ConcurrentHashMap<>();
+    private List<Counter> retired = new ArrayList<>();
+    private final AtomicLong flushedLikes = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    private ScheduledExecutorService executor;
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "like-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushSafely(); // Write what is left before the data source closes
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Counts one like of a message
+     */
+    public void like(int messageId) {
+        while (true) {
+            Counter counter = counters.computeIfAbsent(messageId, Counter::new);
+            counter.likes.increment();
+            if (!counter.retired) {
+                return;
+            }
+            counter.likes.decrement(); // Retired under us; count it on a fresh counter instead
+        }
+    }
+
+    /**
+     * @return The message's like count, flushed and pending
+     */
+    public long count(int messageId) {
+        return pending(messageId) + messageLikeRepository.findCount(messageId);
+    }
+
+    /**
+     * Sets the like count on each message, with one query per chunk of messages
+     */
+    public void fill(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        int[] messageIds = new int[messages.size()];
+        for (int i = 0; i < messageIds.length; i++) {
+            messageIds[i] = messages.get(i).getMessageId();
+        }
+        Map<Integer, Long> flushed = messageLikeRepository.findCounts(messageIds);
+        for (Message message : messages) {
+            message.setLikes(flushed.getOrDefault(message.getMessageId(), 0L) + pending(message.getMessageId()));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageChanged(MessageChangedEvent event) {
+        if (event.getType() == MessageChangedEvent.Type.DELETED) {
+            Counter counter = counters.remove(event.getMessageId());
+            if (counter != null) {
+                counter.retired = true;
+            }
+            messageLikeRepository.delete(event.getMessageId());
+        }
+    }
+
+    /**
+     * @return Flush totals and the number of counters held
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("counters", counters.size());
+        snapshot.put("flushes", flushes.get());
+        snapshot.put("flushedLikes", flushedLikes.get());
+        return snapshot;
+    }
+
+    private long pending(int messageId) {
+        Counter counter = counters.get(messageId);
+        return counter == null ? 0 : counter.likes.sum() - counter.written;
+    }
+
+    private synchronized void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Like flush failed, will retry", e);
+        }
+    }
+
+    /**
+     * Writes every counter's unwritten likes, then retires idle counters. Called
+     * only from {@link #flushSafely}, one flush at a time.
+     */
+    private void flush() {
+        List<Counter> dirty = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        List<Counter> idle = new ArrayList<>();
+        collect(retired, dirty, deltas, null);
+        collect(counters.values(), dirty, deltas, idle);
+
+        for (int from = 0; from < dirty.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, dirty.size());
+            int[] messageIds = new int[to - from];
+            long[] batch = new long[to - from];
+            for (int i = from; i < to; i++) {
+                messageIds[i - from] = dirty.get(i).messageId;
+                batch[i - from] = deltas.get(i);
+            }
+            transactionTemplate.executeWithoutResult(
+                    status -> messageLikeRepository.addCounts(messageIds, batch, messageIds.length));
+            // Marked written only once committed, so a failed batch is retried whole
+            for (int i = from; i < to; i++) {
+                dirty.get(i).written += deltas.get(i);
+                flushedLikes.addAndGet(deltas.get(i));
+            }
+        }
+        flushes.incrementAndGet();
+
+        retired = new ArrayList<>();
+        for (Counter counter : idle) {
+            counter.retired = true;
+            if (counters.remove(counter.messageId, counter)) {
+                retired.add(counter);
+            }
+        }
+    }
+
+    private void collect(Iterable<Counter> source, List<Counter> dirty, List<Long> deltas, List<Counter> idle) {
+        for (Counter counter : source) {
+            long delta = counter.likes.sum() - counter.written;
+            if (delta != 0) {
+                counter.idleFlushes = 0;
+                dirty.add(counter);
+                deltas.add(delta);
+            } else if (idle != null && ++counter.idleFlushes >= idleFlushes) {
+                idle.add(counter);
+            }
+        }
+    }
+
+    private static final class Counter {
+        final int messageId;
+        final LongAdder likes = new LongAdder();
+        volatile long written;
+        volatile boolean retired;
+        int idleFlushes;
+
+        Counter(int messageId) {
+            this.messageId = messageId;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.outbox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.entity.OutboxRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Appends delivered outbox rows to a file as newline-delimited JSON. Enabled
+ * by setting app.outbox.file-sink.path.
+ */
+@Component
+@ConditionalOnProperty(name = "app.outbox.file-sink.path")
+public class FileOutboxSink implements OutboxSink {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.outbox.file-sink.path}")
+    private String path;
+
+    private FileChannel channel;
+
+    @PostConstruct
+    public void open() throws IOException {
+        Path file = Paths.get(path);
+        if (file.getParent() != null) {
+            file.getParent().toFile().mkdirs();
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public void deliver(List<OutboxRecord> records) throws IOException {
+        StringBuilder lines = new StringBuilder(records.size() * 256);
+        for (OutboxRecord record : records) {
+            lines.append(objectMapper.writeValueAsString(record)).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+}
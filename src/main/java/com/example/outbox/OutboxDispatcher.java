@@ -0,0 +1,109 @@
+package com.example.outbox;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import com.example.entity.OutboxRecord;
+import com.example.repository.OutboxRepository;
+
+/**
+ * Delivers outbox rows to every {@link OutboxSink} on a background thread.
+ * 
+ * Each poll reads the oldest rows in batches by sequence number, hands each
+ * batch to the sinks, and then deletes the delivered rows in chunks. Rows are
+ * removed by their own sequence numbers, so a transaction that commits late
+ * with a lower number is picked up by a later poll rather than skipped.
+ * Without any sink nothing is polled, so rows are never pruned undelivered.
+ */
+@Component
+public class OutboxDispatcher implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired(required = false)
+    private List<OutboxSink> sinks = Collections.emptyList();
+
+    @Value("${app.outbox.batch-size}")
+    private int batchSize;
+
+    @Value("${app.outbox.prune-chunk-size}")
+    private int pruneChunkSize;
+
+    @Value("${app.outbox.poll-interval-ms}")
+    private long pollIntervalMillis;
+
+    private ScheduledExecutorService executor;
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        if (sinks.isEmpty()) {
+            log.info("No outbox sinks, not dispatching");
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "outbox-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::dispatchSafely, pollIntervalMillis, pollIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void dispatchSafely() {
+        try {
+            dispatch();
+        } catch (Exception e) {
+            log.warn("Outbox dispatch failed, will retry", e);
+        }
+    }
+
+    /**
+     * Delivers and prunes batches until the outbox is drained
+     * 
+     * @return The number of rows delivered
+     */
+    int dispatch() throws Exception {
+        int delivered = 0;
+        List<OutboxRecord> batch;
+        do {
+            batch = outboxRepository.findOldest(batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (OutboxSink sink : sinks) {
+                sink.deliver(batch);
+            }
+            outboxRepository.delete(batch, pruneChunkSize);
+            delivered += batch.size();
+        } while (batch.size() == batchSize && !Thread.currentThread().isInterrupted());
+        return delivered;
+    }
+}
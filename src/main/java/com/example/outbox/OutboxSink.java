@@ -0,0 +1,21 @@
+package com.example.outbox;
+
+import java.util.List;
+
+import com.example.entity.OutboxRecord;
+
+/**
+ * Receives batches of committed message changes from the
+ * {@link OutboxDispatcher}. Every bean implementing this interface is a sink.
+ * 
+ * A batch is delivered at least once: if any sink throws, the whole batch is
+ * offered to every sink again on the next poll.
+ */
+public interface OutboxSink {
+
+    /**
+     * @param records Changes in sequence order
+     * @throws Exception if the batch could not be delivered
+     */
+    void deliver(List<OutboxRecord> records) throws Exception;
+}
@@ -0,0 +1,41 @@
+package com.example.outbox;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.example.event.MessageChangedEvent;
+import com.example.repository.OutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Records every message change in the outbox. The listener runs synchronously
+ * while MessageService publishes the event, so the row is written in the same
+ * transaction as the change and rolls back with it. Nothing is recorded when
+ * there is no {@link OutboxSink}, since no one would receive the rows.
+ */
+@Component
+public class OutboxWriter {
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private List<OutboxSink> sinks = Collections.emptyList();
+
+    @EventListener
+    public void onMessageChanged(MessageChangedEvent event) throws JsonProcessingException {
+        if (sinks.isEmpty()) {
+            return;
+        }
+        String payload = event.getMessage() != null ? objectMapper.writeValueAsString(event.getMessage()) : null;
+        outboxRepository.append(event.getType().name(), event.getMessageId(), event.getPostedBy(), payload);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.repository;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps integer keys onto a fixed number of shards with consistent hashing.
+ * Each shard owns several virtual nodes on the ring so keys spread evenly.
+ */
+public class ConsistentHashRing {
+
+    private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+
+    public ConsistentHashRing(int shardCount, int virtualNodes) {
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                ring.put(mix(shard * 0x9E3779B9 + node), shard);
+            }
+        }
+    }
+
+    /**
+     * Finds the shard that owns a key
+     * 
+     * @param key The key to place, such as an accountId
+     * @return The index of the owning shard
+     */
+    public int shardFor(int key) {
+        Map.Entry<Integer, Integer> owner = ring.ceilingEntry(mix(key));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Murmur3 32-bit finalizer
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Access to the account_follow table, one row per follower and followee pair.
+ * Followees are found through the primary key, followers through the index
+ * on followeeId.
+ */
+@Repository
+public class FollowRepository {
+
+    private static final int IDS_PER_QUERY = 500;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Records that one account follows another
+     * 
+     * @return 1 if the follow is new, 0 if it already existed
+     */
+    public int follow(int followerId, int followeeId) {
+        try {
+            return jdbcTemplate.update("insert into account_follow (followerId, followeeId, createdAt) "
+                    + "select ?, ?, ? where not exists "
+                    + "(select 1 from account_follow where followerId = ? and followeeId = ?)",
+                    followerId, followeeId, System.currentTimeMillis(), followerId, followeeId);
+        } catch (DuplicateKeyException e) {
+            return 0; // Followed concurrently
+        }
+    }
+
+    /**
+     * @return 1 if the follow was removed, 0 if there was none
+     */
+    public int unfollow(int followerId, int followeeId) {
+        return jdbcTemplate.update("delete from account_follow where followerId = ? and followeeId = ?",
+                followerId, followeeId);
+    }
+
+    /**
+     * @return The ids of the accounts the follower follows, in ascending order
+     */
+    public int[] findFolloweeIds(int followerId) {
+        return jdbcTemplate.queryForList(
+                "select followeeId from account_follow where followerId = ? order by followeeId", Integer.class,
+                followerId).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Reads an account's followers, stopping early past a limit so an account
+     * with very many followers costs no more than one with limit + 1
+     * 
+     * @param limit The most followers to return
+     * @return Up to limit follower ids
+     */
+    public int[] findFollowerIds(int followeeId, int limit) {
+        return jdbcTemplate.queryForList("select followerId from account_follow where followeeId = ? limit ?",
+                Integer.class, followeeId, limit).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Finds the followers whose followees posted the most messages in a range
+     * of ids, so the home timelines with the most new messages come first
+     * 
+     * @param limit The most followers to return
+     * @return Up to limit follower ids, the most fed first
+     */
+    public List<Integer> findFollowersByPostCount(int fromMessageId, int toMessageId, int limit) {
+        return jdbcTemplate.queryForList("select f.followerId from account_follow f join "
+                + "(select postedBy, count(*) posts from message where messageId between ? and ? group by postedBy) p "
+                + "on f.followeeId = p.postedBy group by f.followerId order by sum(p.posts) desc, f.followerId limit ?",
+                Integer.class, fromMessageId, toMessageId, limit);
+    }
+
+    /**
+     * Counts the followers of several accounts, a chunk of ids per query
+     * 
+     * @return Follower counts by account id; accounts without followers are
+     *         absent
+     */
+    public Map<Integer, Integer> countFollowers(int[] followeeIds) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int from = 0; from < followeeIds.length; from += IDS_PER_QUERY) {
+            int to = Math.min(from + IDS_PER_QUERY, followeeIds.length);
+            StringBuilder sql = new StringBuilder(
+                    "select followeeId, count(*) from account_follow where followeeId in (");
+            for (int i = from; i < to; i++) {
+                sql.append(i == from ? "?" : ", ?");
+            }
+            sql.append(") group by followeeId");
+            int start = from;
+            jdbcTemplate.query(sql.toString(), ps -> {
+                for (int i = start; i < to; i++) {
+                    ps.setInt(i - start + 1, followeeIds[i]);
+                }
+            }, (RowCallbackHandler) rs -> counts.put(rs.getInt(1), rs.getInt(2)));
+        }
+        return counts;
+    }
+}
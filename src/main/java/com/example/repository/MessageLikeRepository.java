@@ -0,0 +1,93 @@
+package com.example.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Access to the message_likes table, which holds the flushed like count of
+ * every message that has been liked. Counts only change by adding deltas, so
+ * concurrent flushes from several instances add up instead of overwriting each
+ * other.
+ */
+@Repository
+public class MessageLikeRepository {
+
+    private static final int IDS_PER_QUERY = 500;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * @return The flushed like count of a message, 0 if it has none
+     */
+    public long findCount(int messageId) {
+        List<Long> counts = jdbcTemplate.queryForList("select likeCount from message_likes where messageId = ?",
+                Long.class, messageId);
+        return counts.isEmpty() ? 0 : counts.get(0);
+    }
+
+    /**
+     * Reads the flushed like counts of several messages, a chunk of ids per query
+     * 
+     * @return Counts by messageId; messages without likes are absent
+     */
+    public Map<Integer, Long> findCounts(int[] messageIds) {
+        Map<Integer, Long> counts = new HashMap<>();
+        for (int from = 0; from < messageIds.length; from += IDS_PER_QUERY) {
+            int to = Math.min(from + IDS_PER_QUERY, messageIds.length);
+            StringBuilder sql = new StringBuilder("select messageId, likeCount from message_likes where messageId in (");
+            for (int i = from; i < to; i++) {
+                sql.append(i == from ? "?" : ", ?");
+            }
+            sql.append(')');
+            int start = from;
+            jdbcTemplate.query(sql.toString(), ps -> {
+                for (int i = start; i < to; i++) {
+                    ps.setInt(i - start + 1, messageIds[i]);
+                }
+            }, (RowCallbackHandler) rs -> counts.put(rs.getInt(1), rs.getLong(2)));
+        }
+        return counts;
+    }
+
+    /**
+     * Adds deltas to like counts in one batched update, and inserts a row for
+     * each message that had none
+     * 
+     * @param messageIds Messages to add to
+     * @param deltas     The amount to add to each, by position
+     * @param count      The number of entries to use from the arrays
+     */
+    public void addCounts(int[] messageIds, long[] deltas, int count) {
+        List<Object[]> updates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            updates.add(new Object[] { deltas[i], messageIds[i] });
+        }
+        int[] updated = jdbcTemplate.batchUpdate(
+                "update message_likes set likeCount = likeCount + ? where messageId = ?", updates);
+
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (updated[i] == 0) {
+                inserts.add(new Object[] { messageIds[i], deltas[i] });
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("insert into message_likes (messageId, likeCount) values (?, ?)", inserts);
+        }
+    }
+
+    /**
+     * Removes a deleted message's count
+     */
+    public void delete(int messageId) {
+        jdbcTemplate.update("delete from message_likes where messageId = ?", messageId);
+    }
+}
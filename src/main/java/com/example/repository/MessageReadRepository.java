@@ -0,0 +1,147 @@
+package com.example.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import com.example.entity.Message;
+
+/**
+ * Read-only access to the message table that bypasses the JPA persistence
+ * context. Rows are mapped straight into detached Message objects, so nothing
+ * is registered with Hibernate for dirty checking.
+ */
+@Repository
+public class MessageReadRepository {
+
+    private static final int IDS_PER_QUERY = 500;
+
+    static final String SELECT_MESSAGE = "select messageId, postedBy, messageText, timePostedEpoch, version from message";
+
+    /**
+     * Maps a row of the message table to a detached Message
+     */
+    public static final RowMapper<Message> MESSAGE_ROW_MAPPER = (rs, rowNum) -> {
+        Message message = new Message(
+                rs.getInt("messageId"),
+                rs.getInt("postedBy"),
+                rs.getString("messageText"),
+                rs.getLong("timePostedEpoch"));
+        message.setVersion(rs.getInt("version"));
+        return message;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Retrieves every message ordered by messageId
+     * 
+     * @return A list of messages, empty if there are none
+     */
+    public List<Message> findAll() {
+        return jdbcTemplate.query(SELECT_MESSAGE + " order by messageId", MESSAGE_ROW_MAPPER);
+    }
+
+    /**
+     * Retrieves one page of messages ordered by messageId
+     * 
+     * @param offset The number of messages to skip
+     * @param limit  The maximum number of messages to return
+     * @return A list of at most limit messages
+     */
+    public List<Message> findPage(int offset, int limit) {
+        return jdbcTemplate.query(SELECT_MESSAGE + " order by messageId limit ? offset ?", MESSAGE_ROW_MAPPER,
+                limit, offset);
+    }
+
+    /**
+     * Retrieves a message by its id
+     * 
+     * @param messageId The unique identifier of the message
+     * @return The message if it exists
+     */
+    public Optional<Message> findById(Integer messageId) {
+        List<Message> messages = jdbcTemplate.query(SELECT_MESSAGE + " where messageId = ?", MESSAGE_ROW_MAPPER,
+                messageId);
+        return messages.isEmpty() ? Optional.empty() : Optional.of(messages.get(0));
+    }
+
+    /**
+     * Retrieves the messages posted by an account ordered by messageId
+     * 
+     * @param accountId The unique identifier of the account
+     * @return A list of messages, empty if the account has none
+     */
+    public List<Message> findByPostedBy(Integer accountId) {
+        return jdbcTemplate.query(SELECT_MESSAGE + " where postedBy = ? order by messageId", MESSAGE_ROW_MAPPER,
+                accountId);
+    }
+
+    /**
+     * Retrieves the messages with ids in a range ordered by messageId, through
+     * the primary key
+     * 
+     * @param fromId The lowest id, inclusive
+     * @param toId   The highest id, inclusive
+     * @return The messages in the range
+     */
+    public List<Message> findByIdRange(int fromId, int toId) {
+        return jdbcTemplate.query(SELECT_MESSAGE + " where messageId between ? and ? order by messageId",
+                MESSAGE_ROW_MAPPER, fromId, toId);
+    }
+
+    /**
+     * Finds the range of ids that covers the newest messages
+     * 
+     * @param count The number of newest messages the range should hold
+     * @return The lowest and highest id of the newest count messages, or null
+     *         if there are no messages
+     */
+    public int[] findNewestIdRange(int count) {
+        List<Integer> highest = jdbcTemplate.queryForList("select max(messageId) from message", Integer.class);
+        if (highest.isEmpty() || highest.get(0) == null) {
+            return null;
+        }
+        List<Integer> lowest = jdbcTemplate.queryForList(
+                "select messageId from message order by messageId desc limit 1 offset ?", Integer.class, count - 1);
+        if (lowest.isEmpty()) {
+            lowest = jdbcTemplate.queryForList("select min(messageId) from message", Integer.class);
+        }
+        return new int[] { lowest.get(0), highest.get(0) };
+    }
+
+    /**
+     * Retrieves the messages with the given ids, a chunk of ids per query
+     * 
+     * @param messageIds Message ids in ascending order
+     * @return The messages that exist, ordered by messageId
+     */
+    public List<Message> findByIds(int[] messageIds) {
+        if (messageIds.length == 0) {
+            return Collections.emptyList();
+        }
+        List<Message> messages = new ArrayList<>(messageIds.length);
+        for (int from = 0; from < messageIds.length; from += IDS_PER_QUERY) {
+            int to = Math.min(from + IDS_PER_QUERY, messageIds.length);
+            StringBuilder sql = new StringBuilder(SELECT_MESSAGE).append(" where messageId in (");
+            for (int i = from; i < to; i++) {
+                sql.append(i == from ? "?" : ", ?");
+            }
+            sql.append(") order by messageId");
+            int start = from;
+            messages.addAll(jdbcTemplate.query(sql.toString(), ps -> {
+                for (int i = start; i < to; i++) {
+                    ps.setInt(i - start + 1, messageIds[i]);
+                }
+            }, MESSAGE_ROW_MAPPER));
+        }
+        return messages;
+    }
+}
@@ -1,6 +1,9 @@
 package com.example.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 
@@ -9,4 +12,26 @@ import com.example.entity.Message;
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Integer> {
     List<Message> findByPostedBy(Integer accountId);
-}
\ No newline at end of file
+
+    /**
+     * Sets a message's text and increments its version in one statement, if
+     * its version is still the expected one
+     * 
+     * @return The number of rows updated, 0 if the message is missing or has
+     *         another version
+     */
+    @Modifying
+    @Query("update Message m set m.messageText = :messageText, m.version = m.version + 1"
+            + " where m.messageId = :messageId and m.version = :version")
+    int updateMessageTextIfVersion(@Param("messageId") Integer messageId, @Param("messageText") String messageText,
+            @Param("version") Integer version);
+
+    /**
+     * Deletes a message, if its version is still the expected one
+     * 
+     * @return The number of rows deleted
+     */
+    @Modifying
+    @Query("delete from Message m where m.messageId = :messageId and m.version = :version")
+    int deleteIfVersion(@Param("messageId") Integer messageId, @Param("version") Integer version);
+}
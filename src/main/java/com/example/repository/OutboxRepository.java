@@ -0,0 +1,65 @@
+package com.example.repository;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import com.example.entity.OutboxRecord;
+
+/**
+ * Access to the message_outbox table. Rows are appended inside the
+ * transaction of the change they describe, and read back and removed by
+ * sequence number.
+ */
+@Repository
+public class OutboxRepository {
+
+    private static final RowMapper<OutboxRecord> OUTBOX_ROW_MAPPER = (rs, rowNum) -> new OutboxRecord(
+            rs.getLong("seq"),
+            rs.getString("eventType"),
+            rs.getInt("messageId"),
+            (Integer) rs.getObject("postedBy"),
+            rs.getString("payload"),
+            rs.getLong("createdAt"));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Appends a change to the outbox, joining the current transaction if there is one
+     */
+    public void append(String eventType, Integer messageId, Integer postedBy, String payload) {
+        jdbcTemplate.update(
+                "insert into message_outbox (eventType, messageId, postedBy, payload, createdAt) values (?, ?, ?, ?, ?)",
+                eventType, messageId, postedBy, payload, System.currentTimeMillis());
+    }
+
+    /**
+     * Reads the oldest undelivered changes through the primary key index
+     * 
+     * @param limit The maximum number of rows to read
+     * @return Up to limit rows in sequence order
+     */
+    public List<OutboxRecord> findOldest(int limit) {
+        return jdbcTemplate.query(
+                "select seq, eventType, messageId, postedBy, payload, createdAt from message_outbox order by seq limit ?",
+                OUTBOX_ROW_MAPPER, limit);
+    }
+
+    /**
+     * Removes delivered rows, one batched statement per chunk
+     * 
+     * @param records   The delivered rows
+     * @param chunkSize The number of rows removed per batch
+     */
+    public void delete(List<OutboxRecord> records, int chunkSize) {
+        for (int from = 0; from < records.size(); from += chunkSize) {
+            List<OutboxRecord> chunk = records.subList(from, Math.min(from + chunkSize, records.size()));
+            jdbcTemplate.batchUpdate("delete from message_outbox where seq = ?", chunk, chunk.size(),
+                    (ps, record) -> ps.setLong(1, record.getSeq()));
+        }
+    }
+}
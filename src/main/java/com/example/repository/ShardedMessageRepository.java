@@ -0,0 +1,349 @@
+package com.example.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import com.example.entity.Message;
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * Stores messages across several databases, partitioned by postedBy.
+ * 
+ * An account's messages all live on the shard chosen for it by a
+ * {@link ConsistentHashRing}. Generated ids carry the shard index in their low
+ * bits, marked by {@link #SHARDED_ID_FLAG}, so a message can be found from its
+ * id alone. Ids without the flag predate sharding and are looked up on every
+ * shard. Listings query all shards in parallel and merge the ordered results.
+ * 
+ * Shards are written through their own connection pools in auto-commit mode,
+ * so a write commits on its shard at once and is not part of any Spring
+ * transaction around it: if that transaction rolls back, the shard write
+ * stays. Callers make the shard write the last step that can fail.
+ */
+public class ShardedMessageRepository implements AutoCloseable {
+
+    public static final int SHARDED_ID_FLAG = 1 << 30;
+    public static final int SHARD_BITS = 4;
+    public static final int MAX_SHARDS = 1 << SHARD_BITS;
+
+    private static final int SHARD_MASK = MAX_SHARDS - 1;
+    private static final long MAX_SEQUENCE = 1L << (30 - SHARD_BITS);
+    private static final String INSERT_EXISTING = "insert into message"
+            + " (messageId, postedBy, messageText, timePostedEpoch, version)"
+            + " select ?, ?, ?, ?, ? where not exists (select 1 from message where messageId = ?)";
+
+    private final List<HikariDataSource> dataSources;
+    private final List<JdbcTemplate> shards = new ArrayList<>();
+    private final ConsistentHashRing ring;
+    private final ExecutorService scatterExecutor;
+
+    public ShardedMessageRepository(List<HikariDataSource> dataSources, int virtualNodes) {
+        if (dataSources.isEmpty() || dataSources.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS);
+        }
+        this.dataSources = dataSources;
+        for (HikariDataSource dataSource : dataSources) {
+            shards.add(new JdbcTemplate(dataSource));
+        }
+        this.ring = new ConsistentHashRing(dataSources.size(), virtualNodes);
+        this.scatterExecutor = Executors.newFixedThreadPool(dataSources.size(), r -> {
+            Thread thread = new Thread(r, "shard-scatter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates the message table and id sequence on every shard
+     */
+    public void createSchema() {
+        for (JdbcTemplate shard : shards) {
+            shard.execute("create table if not exists message ("
+                    + "messageId int primary key, postedBy int, messageText varchar(255), timePostedEpoch bigint,"
+                    + " version int default 0 not null)");
+            shard.execute("create index if not exists message_postedBy on message (postedBy)");
+            shard.execute("create sequence if not exists message_seq");
+        }
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Stores a new message on its account's shard and assigns it a shard-aware id
+     * 
+     * @param message The message to store, without a messageId
+     * @return The same message with its generated messageId
+     */
+    public Message insert(Message message) {
+        int shardIndex = ring.shardFor(message.getPostedBy());
+        JdbcTemplate shard = shards.get(shardIndex);
+        long seq = shard.queryForObject("select next value for message_seq", Long.class);
+        if (seq >= MAX_SEQUENCE) {
+            throw new IllegalStateException("Message id space of shard " + shardIndex + " is exhausted");
+        }
+        message.setMessageId(SHARDED_ID_FLAG | (int) (seq << SHARD_BITS) | shardIndex);
+        message.setVersion(0);
+        shard.update("insert into message (messageId, postedBy, messageText, timePostedEpoch) values (?, ?, ?, ?)",
+                message.getMessageId(), message.getPostedBy(), message.getMessageText(),
+                message.getTimePostedEpoch());
+        return message;
+    }
+
+    /**
+     * Stores a message that already has an id, placing it by postedBy, unless
+     * its shard already holds a message with that id
+     * 
+     * @param message The message to store
+     * @return 1 if it was stored, 0 if its shard already had it
+     */
+    public int insertExisting(Message message) {
+        return shards.get(ring.shardFor(message.getPostedBy())).update(INSERT_EXISTING,
+                ps -> setExisting(ps, message));
+    }
+
+    /**
+     * Stores messages that already have ids as {@link #insertExisting} does,
+     * with one batched statement per shard, and moves each shard's id sequence
+     * past the shard-aware ids it received
+     * 
+     * @param messages The messages to store
+     * @return The number of messages stored
+     * @throws IllegalArgumentException if a message has no postedBy, or a
+     *                                  shard-aware id names a different shard
+     *                                  from its account's, where it could not
+     *                                  be found
+     */
+    public int insertAllExisting(List<Message> messages) {
+        Map<Integer, List<Message>> byShard = new TreeMap<>();
+        for (Message message : messages) {
+            if (message.getPostedBy() == null) {
+                throw new IllegalArgumentException("Message " + message.getMessageId() + " has no postedBy");
+            }
+            int shardIndex = ring.shardFor(message.getPostedBy());
+            int messageId = message.getMessageId();
+            if ((messageId & SHARDED_ID_FLAG) != 0 && (messageId & SHARD_MASK) != shardIndex) {
+                throw new IllegalArgumentException("Message " + messageId + " names shard "
+                        + (messageId & SHARD_MASK) + " but account " + message.getPostedBy() + " is on shard "
+                        + shardIndex);
+            }
+            byShard.computeIfAbsent(shardIndex, k -> new ArrayList<>()).add(message);
+        }
+
+        int stored = 0;
+        for (Map.Entry<Integer, List<Message>> entry : byShard.entrySet()) {
+            JdbcTemplate shard = shards.get(entry.getKey());
+            int[][] counts = shard.batchUpdate(INSERT_EXISTING, entry.getValue(), entry.getValue().size(),
+                    ShardedMessageRepository::setExisting);
+            for (int[] batch : counts) {
+                for (int count : batch) {
+                    stored += count;
+                }
+            }
+            long maxSequence = -1;
+            for (Message message : entry.getValue()) {
+                if ((message.getMessageId() & SHARDED_ID_FLAG) != 0) {
+                    maxSequence = Math.max(maxSequence, (message.getMessageId() & ~SHARDED_ID_FLAG) >>> SHARD_BITS);
+                }
+            }
+            if (maxSequence >= 0) {
+                Long next = shard.queryForObject("select base_value from information_schema.sequences"
+                        + " where lower(sequence_name) = 'message_seq'", Long.class);
+                if (next != null && next <= maxSequence) {
+                    shard.execute("alter sequence message_seq restart with " + (maxSequence + 1));
+                }
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Runs a query on each shard in turn, streaming its rows through a
+     * forward-only cursor
+     */
+    public void queryEachShard(String sql, int fetchSize, RowCallbackHandler handler) {
+        for (JdbcTemplate shard : shards) {
+            shard.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                return ps;
+            }, handler);
+        }
+    }
+
+    public Optional<Message> findById(int messageId) {
+        for (JdbcTemplate shard : shardsFor(messageId)) {
+            List<Message> found = shard.query(MessageReadRepository.SELECT_MESSAGE + " where messageId = ?",
+                    MessageReadRepository.MESSAGE_ROW_MAPPER, messageId);
+            if (!found.isEmpty()) {
+                return Optional.of(found.get(0));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Retrieves an account's messages from the single shard that owns them
+     */
+    public List<Message> findByPostedBy(int accountId) {
+        return shards.get(ring.shardFor(accountId)).query(
+                MessageReadRepository.SELECT_MESSAGE + " where postedBy = ? order by messageId",
+                MessageReadRepository.MESSAGE_ROW_MAPPER, accountId);
+    }
+
+    /**
+     * Retrieves every message from all shards, ordered by messageId
+     */
+    public List<Message> findAll() {
+        return mergeByMessageId(scatter(shard -> shard.query(
+                MessageReadRepository.SELECT_MESSAGE + " order by messageId",
+                MessageReadRepository.MESSAGE_ROW_MAPPER)), 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves one page of messages ordered by messageId. Each shard returns
+     * at most offset + limit rows, which the merge then trims.
+     */
+    public List<Message> findPage(int offset, int limit) {
+        long perShard = Math.min((long) offset + limit, Integer.MAX_VALUE);
+        return mergeByMessageId(scatter(shard -> shard.query(
+                MessageReadRepository.SELECT_MESSAGE + " order by messageId limit ?",
+                MessageReadRepository.MESSAGE_ROW_MAPPER, perShard)), offset, limit);
+    }
+
+    public boolean existsById(int messageId) {
+        for (JdbcTemplate shard : shardsFor(messageId)) {
+            if (shard.queryForObject("select count(*) from message where messageId = ?", Integer.class,
+                    messageId) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets a message's text and increments its version, if its version is the
+     * expected one
+     * 
+     * @param expectedVersion The version the caller read, or null to update any
+     *                        version
+     * @return The number of rows updated
+     */
+    public int updateMessageText(int messageId, String messageText, Integer expectedVersion) {
+        int updated = 0;
+        for (JdbcTemplate shard : shardsFor(messageId)) {
+            updated += expectedVersion == null
+                    ? shard.update("update message set messageText = ?, version = version + 1 where messageId = ?",
+                            messageText, messageId)
+                    : shard.update("update message set messageText = ?, version = version + 1"
+                            + " where messageId = ? and version = ?", messageText, messageId, expectedVersion);
+        }
+        return updated;
+    }
+
+    /**
+     * Deletes a message, if its version is the expected one
+     * 
+     * @param expectedVersion The version the caller read, or null to delete any
+     *                        version
+     * @return The number of rows deleted
+     */
+    public int deleteById(int messageId, Integer expectedVersion) {
+        int deleted = 0;
+        for (JdbcTemplate shard : shardsFor(messageId)) {
+            deleted += expectedVersion == null
+                    ? shard.update("delete from message where messageId = ?", messageId)
+                    : shard.update("delete from message where messageId = ? and version = ?", messageId,
+                            expectedVersion);
+        }
+        return deleted;
+    }
+
+    @Override
+    public void close() {
+        scatterExecutor.shutdownNow();
+        for (HikariDataSource dataSource : dataSources) {
+            dataSource.close();
+        }
+    }
+
+    private static void setExisting(PreparedStatement ps, Message message) throws SQLException {
+        ps.setInt(1, message.getMessageId());
+        ps.setInt(2, message.getPostedBy());
+        ps.setObject(3, message.getMessageText(), Types.VARCHAR);
+        ps.setObject(4, message.getTimePostedEpoch(), Types.BIGINT);
+        ps.setInt(5, message.getVersion() != null ? message.getVersion() : 0);
+        ps.setInt(6, message.getMessageId());
+    }
+
+    private List<JdbcTemplate> shardsFor(int messageId) {
+        if ((messageId & SHARDED_ID_FLAG) != 0) {
+            int shardIndex = messageId & SHARD_MASK;
+            return shardIndex < shards.size() ? Collections.singletonList(shards.get(shardIndex))
+                    : Collections.emptyList();
+        }
+        return shards;
+    }
+
+    private List<List<Message>> scatter(Function<JdbcTemplate, List<Message>> query) {
+        List<CompletableFuture<List<Message>>> futures = new ArrayList<>(shards.size());
+        for (JdbcTemplate shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(shard), scatterExecutor));
+        }
+        List<List<Message>> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<List<Message>> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * K-way merge of lists that are each sorted by messageId
+     */
+    private static List<Message> mergeByMessageId(List<List<Message>> sorted, int offset, int limit) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sorted.size()),
+                (a, b) -> Integer.compare(sorted.get(a[0]).get(a[1]).getMessageId(),
+                        sorted.get(b[0]).get(b[1]).getMessageId()));
+        int total = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            total += sorted.get(i).size();
+            if (!sorted.get(i).isEmpty()) {
+                heads.add(new int[] { i, 0 });
+            }
+        }
+
+        List<Message> merged = new ArrayList<>(Math.max(0, Math.min(total - offset, limit)));
+        int skipped = 0;
+        while (!heads.isEmpty() && merged.size() < limit) {
+            int[] head = heads.poll();
+            List<Message> source = sorted.get(head[0]);
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                merged.add(source.get(head[1]));
+            }
+            if (++head[1] < source.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+}
@@ -4,10 +4,15 @@ import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.example.cluster.InvalidationBus;
 import com.example.entity.Account;
-import com.example.exception.*;
 import com.example.repository.AccountRepository;
+import com.example.validation.Rejection;
+import com.example.validation.Result;
+import com.example.validation.Validation;
 
 /**
  * Business rules and logic of Accounts
@@ -18,6 +23,12 @@ public class AccountService {
     @Autowired
     private AccountRepository accountRepository;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired(required = false)
+    private InvalidationBus invalidationBus;
+
     /**
      * Registers a new account if the provided username and password meet the
      * validation criteria.
@@ -27,32 +38,32 @@ public class AccountService {
      * - The password is at least 4 characters long.
      * - An account with the given username does not already exist in the database.
      * 
+     * The field rules are checked before a transaction is opened.
+     * 
      * @param account The account object containing the username and password to
      *                register
-     * @return The newly created account object with its generated accountId
-     * @throws IllegalArgumentException   if an account with the given username
-     *                                    already exists.
-     * @throws DuplicateUsernameException if the username is blank or the password
-     *                                    is less than 4 characters.
+     * @return The newly created account object with its generated accountId, or
+     *         the rule it broke
      */
-    public Account registerAccount(Account account) throws IllegalArgumentException, DuplicateUsernameException {
-        // Validate that the username is not blank
-        if (account.getUsername() == null || account.getUsername().trim().isEmpty()) {
-            throw new IllegalArgumentException("");
+    public Result<Account> registerAccount(Account account) {
+        Rejection rejection = Validation.checkNewAccount(account);
+        if (rejection != null) {
+            return Result.rejected(rejection);
         }
 
-        // Validate that the password is at least 4 characters long
-        if (account.getPassword() == null || account.getPassword().length() < 4) {
-            throw new IllegalArgumentException("");
-        }
-
-        // Check if the username already exists in the database
-        if (accountRepository.findByUsername(account.getUsername()).isPresent()) {
-            throw new DuplicateUsernameException();
-        }
+        return transactionTemplate.execute(status -> {
+            // Check if the username already exists in the database
+            if (accountRepository.findByUsername(account.getUsername()).isPresent()) {
+                return Result.rejected(Rejection.DUPLICATE_USERNAME);
+            }
 
-        // Save the new account to the database
-        return accountRepository.save(account);
+            // Save the new account to the database
+            Account saved = accountRepository.save(account);
+            if (invalidationBus != null) {
+                invalidationBus.invalidateAccount(saved.getAccountId());
+            }
+            return Result.ok(saved);
+        });
     }
 
     /**
@@ -63,11 +74,10 @@ public class AccountService {
      * 
      * @param username The user's username
      * @param password The user's password
-     * @return the account object with its accountId
-     * @throws UnauthorizedException if access is unauthorized with the given
-     *                               username and password
+     * @return the account object with its accountId, or BAD_CREDENTIALS
      */
-    public Account login(String username, String password) throws UnauthorizedException {
+    @Transactional(readOnly = true)
+    public Result<Account> login(String username, String password) {
         Optional<Account> optionalAccount = accountRepository.findByUsername(username);
 
         if (optionalAccount.isPresent()) {
@@ -75,12 +85,11 @@ public class AccountService {
 
             // Check if the password matches
             if (account.getPassword().equals(password)) {
-                return account;
+                return Result.ok(account);
             }
         }
 
-        // Throw an exception if login is unsuccessful
-        throw new UnauthorizedException();
+        return Result.rejected(Rejection.BAD_CREDENTIALS);
     }
 
     /**
@@ -90,6 +99,7 @@ public class AccountService {
      * @return The Account object associated with the provided account ID, or null
      *         if no account with that ID exists.
      */
+    @Transactional(readOnly = true)
     public Account getAccountById(Integer accountId) {
         return accountRepository.findById(accountId).orElse(null);
     }
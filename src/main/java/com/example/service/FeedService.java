@@ -0,0 +1,365 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.cluster.InvalidationBus;
+import com.example.entity.Message;
+import com.example.event.MessageChangedEvent;
+import com.example.event.RemoteInvalidationEvent;
+import com.example.repository.FollowRepository;
+import com.example.validation.Rejection;
+import com.example.validation.Result;
+
+/**
+ * Business rules and logic of follows and home timelines
+ * 
+ * A timeline mixes two strategies. A message from an account with at most
+ * app.feed.fan-out-threshold followers is pushed, once it commits, into the
+ * bounded in-memory inbox of each follower, so reading those is a lookup.
+ * Messages from accounts with more followers than that are not pushed, since
+ * one post would touch too many inboxes; they are read from the author's
+ * messages when a timeline is requested and merged with the inbox by
+ * timePostedEpoch.
+ * 
+ * Inboxes are only kept for accounts that have read their timeline. The first
+ * read builds one from the messages of the account's followees, and from then
+ * on new messages are pushed into it. Inboxes hold ids, not messages, so a
+ * deleted or edited message shows as it is now, and entries from accounts no
+ * longer followed are skipped when read.
+ * 
+ * An account whose messages have once been read at request time, or not
+ * pushed, stays read at request time even after its follower count drops back
+ * to the threshold, since the inboxes lack what it posted while above it.
+ */
+@Service
+public class FeedService {
+
+    private static final Comparator<Message> NEWEST_FIRST = Comparator
+            .comparing(Message::getTimePostedEpoch, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Message::getMessageId, Comparator.reverseOrder());
+
+    @Autowired
+    private FollowRepository followRepository;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Value("${app.feed.fan-out-threshold}")
+    private int fanOutThreshold;
+
+    @Autowired(required = false)
+    private InvalidationBus invalidationBus;
+
+    @Value("${app.feed.inbox-size}")
+    private int inboxSize;
+
+    private final Map<Integer, Inbox> inboxes = new ConcurrentHashMap<>();
+    private final Set<Integer> pulledAuthors = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Makes one account follow another
+     * 
+     * @return 1 if the follow is new, 0 if it already existed, or SELF_FOLLOW or
+     *         UNKNOWN_ACCOUNT
+     */
+    @Transactional
+    public Result<Integer> follow(Integer followerId, Integer followeeId) {
+        if (followerId.equals(followeeId)) {
+            return Result.rejected(Rejection.SELF_FOLLOW);
+        }
+        if (accountService.getAccountById(followerId) == null || accountService.getAccountById(followeeId) == null) {
+            return Result.rejected(Rejection.UNKNOWN_ACCOUNT);
+        }
+        int added = followRepository.follow(followerId, followeeId);
+        Inbox inbox = inboxes.get(followerId);
+        if (added == 1 && inbox != null) {
+            // Bring the new followee's recent messages in; a high-follower followee is read at request time anyway
+            inbox.addAll(messageService.findMessagesByAccountId(followeeId));
+        }
+        if (added == 1 && invalidationBus != null) {
+            invalidationBus.invalidateAccount(followerId);
+        }
+        return Result.ok(added);
+    }
+
+    /**
+     * Stops one account following another. Its messages already in the
+     * follower's inbox are skipped from then on.
+     * 
+     * @return 1 if the follow was removed, 0 if there was none
+     */
+    @Transactional
+    public Result<Integer> unfollow(Integer followerId, Integer followeeId) {
+        int removed = followRepository.unfollow(followerId, followeeId);
+        if (removed == 1 && invalidationBus != null) {
+            invalidationBus.invalidateAccount(followerId);
+        }
+        return Result.ok(removed);
+    }
+
+    /**
+     * @return The ids of the accounts an account follows, or UNKNOWN_ACCOUNT
+     */
+    @Transactional(readOnly = true)
+    public Result<int[]> getFolloweeIds(Integer accountId) {
+        if (accountService.getAccountById(accountId) == null) {
+            return Result.rejected(Rejection.UNKNOWN_ACCOUNT);
+        }
+        return Result.ok(followRepository.findFolloweeIds(accountId));
+    }
+
+    /**
+     * Retrieves an account's home timeline: the newest messages of the accounts
+     * it follows
+     * 
+     * The inbox and the messages of each high-follower followee are each
+     * ordered newest first, then merged k ways with a heap, taking the newest
+     * head each time until limit messages are taken.
+     * 
+     * @param limit The most messages to return
+     * @return Messages ordered by timePostedEpoch, newest first, or
+     *         UNKNOWN_ACCOUNT
+     */
+    @Transactional(readOnly = true)
+    public Result<List<Message>> getFeed(Integer accountId, int limit) {
+        if (accountService.getAccountById(accountId) == null) {
+            return Result.rejected(Rejection.UNKNOWN_ACCOUNT);
+        }
+        int[] followeeIds = followRepository.findFolloweeIds(accountId);
+        if (followeeIds.length == 0) {
+            return Result.ok(new ArrayList<>());
+        }
+        Set<Integer> followees = new HashSet<>();
+        List<Integer> pushed = new ArrayList<>();
+        List<Integer> pulled = new ArrayList<>();
+        splitFollowees(followeeIds, followees, pushed, pulled);
+
+        List<List<Message>> sources = new ArrayList<>();
+        sources.add(readInbox(inbox(accountId, pushed), followees));
+        for (int followeeId : pulled) {
+            List<Message> messages = messageService.findMessagesByAccountId(followeeId);
+            messages.sort(NEWEST_FIRST);
+            sources.add(messages);
+        }
+        return Result.ok(messageService.withLikes(merge(sources, limit)));
+    }
+
+    /**
+     * Builds an account's inbox ahead of its first timeline read
+     * 
+     * @return True if an inbox was built, false if the account already had one
+     *         or follows no one
+     */
+    @Transactional(readOnly = true)
+    public boolean warmInbox(int accountId) {
+        if (inboxes.containsKey(accountId)) {
+            return false;
+        }
+        int[] followeeIds = followRepository.findFolloweeIds(accountId);
+        if (followeeIds.length == 0) {
+            return false;
+        }
+        List<Integer> pushed = new ArrayList<>();
+        splitFollowees(followeeIds, new HashSet<>(), pushed, new ArrayList<>());
+        inbox(accountId, pushed);
+        return true;
+    }
+
+    /**
+     * Pushes a new message into the inbox of each follower who has one, unless
+     * its author has too many followers
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageChanged(MessageChangedEvent event) {
+        if (event.getType() != MessageChangedEvent.Type.CREATED || inboxes.isEmpty()) {
+            return;
+        }
+        int[] followerIds = followRepository.findFollowerIds(event.getPostedBy(), fanOutThreshold + 1);
+        if (followerIds.length > fanOutThreshold) {
+            pulledAuthors.add(event.getPostedBy());
+            return; // Read from the author's messages instead
+        }
+        Message message = event.getMessage();
+        for (int followerId : followerIds) {
+            Inbox inbox = inboxes.get(followerId);
+            if (inbox != null) {
+                inbox.add(message.getMessageId(), timeOf(message));
+            }
+        }
+    }
+
+    /**
+     * Drops the inboxes that accounts changed on another instance could make
+     * stale: an account's own, since its follows may have changed, and those of
+     * its followers, since its messages may have. They are rebuilt on their next
+     * read. All of them are dropped if some invalidations were lost.
+     */
+    @EventListener
+    public void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (inboxes.isEmpty()) {
+            return;
+        }
+        if (event.isEverything()) {
+            inboxes.clear();
+            return;
+        }
+        for (int accountId : event.getAccountIds()) {
+            inboxes.remove(accountId);
+            for (int followerId : followRepository.findFollowerIds(accountId, fanOutThreshold + 1)) {
+                inboxes.remove(followerId);
+            }
+        }
+    }
+
+    /**
+     * Sorts followees into those whose messages are pushed and those whose
+     * messages are read at request time, by their follower counts and whether
+     * they have been read at request time before
+     */
+    private void splitFollowees(int[] followeeIds, Set<Integer> followees, List<Integer> pushed,
+            List<Integer> pulled) {
+        Map<Integer, Integer> followerCounts = followRepository.countFollowers(followeeIds);
+        for (int followeeId : followeeIds) {
+            followees.add(followeeId);
+            if (followerCounts.getOrDefault(followeeId, 0) > fanOutThreshold) {
+                pulledAuthors.add(followeeId);
+            }
+            (pulledAuthors.contains(followeeId) ? pulled : pushed).add(followeeId);
+        }
+    }
+
+    /**
+     * @return The account's inbox, built from its pushed followees' messages if
+     *         it had none
+     */
+    private Inbox inbox(int accountId, List<Integer> pushedFolloweeIds) {
+        Inbox inbox = inboxes.get(accountId);
+        if (inbox == null) {
+            // Publish it empty first, so messages committed while it is built are pushed into it
+            Inbox created = new Inbox(inboxSize);
+            inbox = inboxes.putIfAbsent(accountId, created);
+            if (inbox == null) {
+                inbox = created;
+                for (int followeeId : pushedFolloweeIds) {
+                    inbox.addAll(messageService.findMessagesByAccountId(followeeId));
+                }
+            }
+        }
+        return inbox;
+    }
+
+    /**
+     * @return The inbox's messages from accounts still followed, newest first
+     */
+    private List<Message> readInbox(Inbox inbox, Set<Integer> followees) {
+        int[] messageIds = inbox.messageIds();
+        Arrays.sort(messageIds);
+        List<Message> messages = new ArrayList<>(messageIds.length);
+        for (Message message : messageService.findMessagesByIds(messageIds)) {
+            if (followees.contains(message.getPostedBy())) {
+                messages.add(message);
+            }
+        }
+        messages.sort(NEWEST_FIRST);
+        return messages;
+    }
+
+    /**
+     * Merges lists ordered newest first into one, dropping a message that
+     * appears in more than one
+     */
+    private static List<Message> merge(List<List<Message>> sources, int limit) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>(
+                (a, b) -> NEWEST_FIRST.compare(sources.get(a[0]).get(a[1]), sources.get(b[0]).get(b[1])));
+        for (int source = 0; source < sources.size(); source++) {
+            if (!sources.get(source).isEmpty()) {
+                heads.add(new int[] { source, 0 });
+            }
+        }
+        List<Message> merged = new ArrayList<>(limit);
+        Set<Integer> seen = new HashSet<>();
+        while (!heads.isEmpty() && merged.size() < limit) {
+            int[] head = heads.poll();
+            List<Message> source = sources.get(head[0]);
+            Message message = source.get(head[1]);
+            if (seen.add(message.getMessageId())) {
+                merged.add(message);
+            }
+            if (++head[1] < source.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    private static long timeOf(Message message) {
+        return message.getTimePostedEpoch() != null ? message.getTimePostedEpoch() : Long.MIN_VALUE;
+    }
+
+    /**
+     * The newest message ids pushed to one account, at most capacity of them,
+     * with their timePostedEpoch
+     */
+    private static final class Inbox {
+        private final long[] times;
+        private final int[] ids;
+        private int size;
+
+        Inbox(int capacity) {
+            this.times = new long[capacity];
+            this.ids = new int[capacity];
+        }
+
+        void addAll(List<Message> messages) {
+            for (Message message : messages) {
+                add(message.getMessageId(), timeOf(message));
+            }
+        }
+
+        /**
+         * Inserts an entry in newest-first order, dropping the oldest when full
+         */
+        synchronized void add(int messageId, long time) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == messageId) {
+                    return;
+                }
+            }
+            int at = size;
+            while (at > 0 && (times[at - 1] < time || (times[at - 1] == time && ids[at - 1] < messageId))) {
+                at--;
+            }
+            if (at == times.length) {
+                return; // Older than everything in a full inbox
+            }
+            int moved = Math.min(size, times.length - 1) - at;
+            System.arraycopy(times, at, times, at + 1, moved);
+            System.arraycopy(ids, at, ids, at + 1, moved);
+            times[at] = time;
+            ids[at] = messageId;
+            size = Math.min(size + 1, times.length);
+        }
+
+        synchronized int[] messageIds() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -1,13 +1,34 @@
 package com.example.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.example.archive.MessageArchive;
+import com.example.cache.AccountMessageIndex;
+import com.example.cache.OffHeapMessageCache;
+import com.example.config.ReadWriteRoutingDataSource;
 import com.example.entity.Message;
+import com.example.event.MessageChangedEvent;
+import com.example.likes.MessageLikes;
+import com.example.repository.MessageReadRepository;
 import com.example.repository.MessageRepository;
+import com.example.repository.ShardedMessageRepository;
+import com.example.tags.TagIndex;
+import com.example.tags.Tags;
+import com.example.validation.Rejection;
+import com.example.validation.Result;
+import com.example.validation.Validation;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Business rules and logic of Messages
@@ -17,9 +38,36 @@ public class MessageService {
     @Autowired
     private MessageRepository messageRepository;
 
+    @Autowired
+    private MessageReadRepository messageReadRepository;
+
+    @Autowired(required = false)
+    private ShardedMessageRepository shardedMessageRepository;
+
+    @Autowired(required = false)
+    private MessageArchive messageArchive;
+
+    @Autowired(required = false)
+    private OffHeapMessageCache messageCache;
+
+    @Autowired(required = false)
+    private AccountMessageIndex accountMessageIndex;
+
+    @Autowired
+    private TagIndex tagIndex;
+
+    @Autowired
+    private MessageLikes messageLikes;
+
     @Autowired
     private AccountService accountService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     /**
      * Creates a new message
      * 
@@ -28,24 +76,54 @@ public class MessageService {
      * - message <= 255 characters
      * - postedBy refers to an existing user
      * 
+     * The field rules are checked before a transaction is opened.
+     * 
      * @param message The message object containing the information needed to create
      *                a message
-     * @return The newly created message object with its generated messageId
+     * @return The newly created message object with its generated messageId and
+     *         no likes, or the rule it broke
      */
-    public Message createMessage(Message message) {
-        String messageText = message.getMessageText();
-        if (messageText == null || messageText.trim().isEmpty() || messageText.length() > 255) {
-            throw new IllegalArgumentException("");
+    public Result<Message> createMessage(Message message) {
+        Rejection rejection = Validation.checkNewMessage(message);
+        if (rejection != null) {
+            return Result.rejected(rejection);
         }
 
-        // Validate that the postedBy account exists
-        Integer postedBy = message.getPostedBy();
-        if (accountService.getAccountById(postedBy) == null) {
-            throw new IllegalArgumentException("");
+        Result<Message> result = transactionTemplate.execute(status -> {
+            // Validate that the postedBy account exists
+            if (accountService.getAccountById(message.getPostedBy()) == null) {
+                return Result.rejected(Rejection.UNKNOWN_ACCOUNT);
+            }
+
+            // If all validation passes, save the message
+            Message created = shardedMessageRepository != null ? shardedMessageRepository.insert(message)
+                    : messageRepository.save(message);
+            eventPublisher.publishEvent(MessageChangedEvent.created(created));
+            return Result.ok(created);
+        });
+        if (result.isOk()) {
+            result.get().setLikes(0L);
         }
+        return result;
+    }
 
-        // If all validation passes, save the message
-        return messageRepository.save(message);
+    /**
+     * Likes a message. The like is counted in memory and stored by a later
+     * flush.
+     * 
+     * @param messageId The unique identifier of the message to like
+     * @return The message with its like count including this like, or
+     *         UNKNOWN_MESSAGE
+     */
+    @Transactional(readOnly = true)
+    public Result<Message> likeMessage(Integer messageId) {
+        Optional<Message> message = findMessage(messageId);
+        if (message.isEmpty()) {
+            return Result.rejected(Rejection.UNKNOWN_MESSAGE);
+        }
+        messageLikes.like(messageId);
+        message.get().setLikes(messageLikes.count(messageId));
+        return Result.ok(message.get());
     }
 
     /**
@@ -54,8 +132,25 @@ public class MessageService {
      * @return A list of messages retrieved from the database if they exist, or an
      *         empty list if there are no messages
      */
+    @Transactional(readOnly = true)
     public List<Message> getAllMessages() {
-        return messageRepository.findAll();
+        return withLikes(findAllMessages());
+    }
+
+    /**
+     * Retrieves one page of messages ordered by messageId
+     * 
+     * @param page The zero-based page number
+     * @param size The maximum number of messages on a page
+     * @return The messages on the requested page, empty past the last page
+     */
+    @Transactional(readOnly = true)
+    public List<Message> getMessagesPage(int page, int size) {
+        int offset = (int) Math.min((long) page * size, Integer.MAX_VALUE);
+        if (shardedMessageRepository != null) {
+            return withLikes(shardedMessageRepository.findPage(offset, size));
+        }
+        return withLikes(messageReadRepository.findPage(offset, size));
     }
 
     /**
@@ -64,49 +159,146 @@ public class MessageService {
      * @param messageId The unique identifier of the message to be retrieved.
      * @return The Message object with its messageId
      */
+    @Transactional(readOnly = true)
     public Optional<Message> getMessageById(Integer messageId) {
-        return messageRepository.findById(messageId);
+        Optional<Message> message = findMessage(messageId);
+        message.ifPresent(found -> found.setLikes(messageLikes.count(messageId)));
+        return message;
+    }
+
+    /**
+     * Reads a message through the message cache, falling back to the archive
+     * 
+     * A cache miss is loaded from the primary. Nothing invalidates the entry
+     * when a lagging replica catches up, so a row read from the replica is
+     * returned but not cached.
+     */
+    private Optional<Message> findMessage(Integer messageId) {
+        if (messageCache == null) {
+            return loadMessage(messageId);
+        }
+        Message cached = messageCache.get(messageId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long stamp = messageCache.stamp();
+        Optional<Message> message = ReadWriteRoutingDataSource.readFromPrimary(() -> loadMessage(messageId));
+        if (!ReadWriteRoutingDataSource.lastReadFromReplica()) {
+            message.ifPresent(found -> messageCache.putIfUnchanged(found, stamp));
+        }
+        return message;
+    }
+
+    private Optional<Message> loadMessage(Integer messageId) {
+        Optional<Message> message = shardedMessageRepository != null ? shardedMessageRepository.findById(messageId)
+                : messageReadRepository.findById(messageId);
+
+        // Fall through to the cold archive for messages no longer in the table
+        if (message.isEmpty() && messageArchive != null) {
+            message = messageArchive.findById(messageId);
+        }
+        return message;
     }
 
     /**
      * Deletes a message
      * 
-     * @param messageId The unique identifier of the message to be deleted
+     * @param messageId       The unique identifier of the message to be deleted
+     * @param expectedVersion The version the caller last read, or null to delete
+     *                        whatever version is stored
      * @return The number of rows affected by the deletion operation (1 if deleted,
-     *         0 if not found).
+     *         0 if not found), STALE_VERSION if the message is at another
+     *         version, or ARCHIVED if it has been archived
      */
-    public int deleteMessage(Integer messageId) {
-        if (messageRepository.existsById(messageId)) {
+    @Transactional
+    public Result<Integer> deleteMessage(Integer messageId, Integer expectedVersion) {
+        Optional<Message> existing = shardedMessageRepository != null ? shardedMessageRepository.findById(messageId)
+                : messageRepository.findById(messageId);
+        if (existing.isEmpty()) {
+            return isArchived(messageId) ? Result.rejected(Rejection.ARCHIVED) : Result.ok(0);
+        }
+        if (expectedVersion != null && !expectedVersion.equals(existing.get().getVersion())) {
+            return Result.rejected(Rejection.STALE_VERSION);
+        }
 
-            messageRepository.deleteById(messageId);
-            return 1;
+        if (shardedMessageRepository != null) {
+            if (shardedMessageRepository.deleteById(messageId, expectedVersion) == 0) {
+                // Deleted, or changed, since it was read
+                return expectedVersion == null ? Result.ok(0) : Result.rejected(Rejection.STALE_VERSION);
+            }
+        } else if (expectedVersion != null) {
+            if (messageRepository.deleteIfVersion(messageId, expectedVersion) == 0) {
+                return Result.rejected(Rejection.STALE_VERSION); // Changed since it was read
+            }
+        } else {
+            // Hibernate deletes by id and version, so a concurrent update fails the commit
+            messageRepository.delete(existing.get());
         }
-        
-        return 0;
+
+        eventPublisher.publishEvent(MessageChangedEvent.deleted(messageId, existing.get().getPostedBy()));
+        return Result.ok(1);
     }
 
     /**
-     * Updates an existing message
+     * Updates an existing message and increments its version
+     * 
+     * The new text is checked before a transaction is opened. Without an
+     * expected version, the message is read and written back through Hibernate,
+     * which fails the commit with an OptimisticLockingFailureException if another
+     * update commits in between. With one, a single conditional update statement
+     * compares and increments the version.
      * 
-     * @param messageId The unique identifier of the message to be updated
-     * @param newMessageText The new text for the message
-     * @return The number of rows updated, 1 if successful
-     * @throws IllegalArgumentException If the messageId does not exist or the new text is invalid.
+     * @param messageId       The unique identifier of the message to be updated
+     * @param newMessageText  The new text for the message
+     * @param expectedVersion The version the caller last read, or null
+     * @return The updated message with its new version, or INVALID_MESSAGE_TEXT,
+     *         UNKNOWN_MESSAGE, STALE_VERSION or ARCHIVED
      */
-    public int updateMessageText(Integer messageId, String newMessageText) {
-        
-        if (messageRepository.existsById(messageId)) {
-            if (newMessageText != null && !newMessageText.isEmpty() && newMessageText.length() <= 255) {
+    public Result<Message> updateMessageText(Integer messageId, String newMessageText, Integer expectedVersion) {
+        Rejection rejection = Validation.checkMessageText(newMessageText);
+        if (rejection != null) {
+            return Result.rejected(rejection);
+        }
+
+        return transactionTemplate.execute(status -> {
+            Message message;
+            if (shardedMessageRepository != null || expectedVersion != null) {
+                int updated = shardedMessageRepository != null
+                        ? shardedMessageRepository.updateMessageText(messageId, newMessageText, expectedVersion)
+                        : messageRepository.updateMessageTextIfVersion(messageId, newMessageText, expectedVersion);
+                if (updated == 0) {
+                    boolean exists = shardedMessageRepository != null
+                            ? shardedMessageRepository.existsById(messageId)
+                            : messageRepository.existsById(messageId);
+                    return Result.rejected(exists ? Rejection.STALE_VERSION : unknownOrArchived(messageId));
+                }
+                message = (shardedMessageRepository != null ? shardedMessageRepository.findById(messageId)
+                        : messageReadRepository.findById(messageId)).orElseThrow();
+            } else {
                 // Find the message
-                Message message = messageRepository.findById(messageId).orElseThrow();
-                // Update the message text
+                Optional<Message> existing = messageRepository.findById(messageId);
+                if (existing.isEmpty()) {
+                    return Result.rejected(unknownOrArchived(messageId));
+                }
+                message = existing.get();
+                // Update the message text; the version is incremented when the change is flushed
                 message.setMessageText(newMessageText);
                 messageRepository.save(message);
-                return 1;
             }
-            throw new IllegalArgumentException("");
-        }
-        throw new IllegalArgumentException("");
+            eventPublisher.publishEvent(MessageChangedEvent.updated(message));
+            return Result.ok(message);
+        });
+    }
+
+    /**
+     * @return Whether a message that is not in the table is in the archive
+     */
+    private boolean isArchived(Integer messageId) {
+        return messageArchive != null && messageArchive.findById(messageId).isPresent();
+    }
+
+    private Rejection unknownOrArchived(Integer messageId) {
+        return isArchived(messageId) ? Rejection.ARCHIVED : Rejection.UNKNOWN_MESSAGE;
     }
 
     /**
@@ -115,7 +307,151 @@ public class MessageService {
      * @param accountId The unique identifier for an account you want messages from
      * @return A List of messages
      */
+    @Transactional(readOnly = true)
     public List<Message> getMessagesByAccountId(Integer accountId) {
-        return messageRepository.findByPostedBy(accountId);
+        return withLikes(findMessagesByAccountId(accountId));
+    }
+
+    /**
+     * Reads an account's messages without their like counts
+     * 
+     * @return The messages, ordered by messageId
+     */
+    List<Message> findMessagesByAccountId(int accountId) {
+        List<Message> messages;
+        int[] messageIds = accountMessageIndex != null && shardedMessageRepository == null
+                ? accountMessageIndex.findMessageIds(accountId) : null;
+        if (messageIds != null) {
+            messages = findByIds(messageIds);
+        } else {
+            messages = shardedMessageRepository != null ? shardedMessageRepository.findByPostedBy(accountId)
+                    : messageReadRepository.findByPostedBy(accountId);
+        }
+        if (messageArchive == null) {
+            return messages;
+        }
+        return withArchived(messages, messageArchive.findByPostedBy(accountId));
+    }
+
+    /**
+     * Retrieves the messages that use a #hashtag or @mention
+     * 
+     * Candidates come from the tag index, and only those whose text, as read
+     * here, still uses the tag are returned. The read may come from a lagging
+     * replica, so candidates that do not match are only skipped; the index
+     * itself is corrected by change events. Until the index is loaded, every
+     * message is checked.
+     * 
+     * @param tag A tag as {@link Tags#normalize} returns it
+     * @return The messages using the tag, ordered by messageId
+     */
+    @Transactional(readOnly = true)
+    public List<Message> getMessagesByTag(String tag) {
+        int[] messageIds = tagIndex.findMessageIds(tag);
+        List<Message> candidates;
+        if (messageIds == null) {
+            candidates = findAllMessages();
+        } else {
+            candidates = findMessagesByIds(messageIds);
+        }
+
+        List<Message> messages = new ArrayList<>(candidates.size());
+        for (Message message : candidates) {
+            if (Tags.extract(message.getMessageText()).contains(tag)) {
+                messages.add(message);
+            }
+        }
+        return withLikes(messages);
+    }
+
+    private List<Message> findAllMessages() {
+        if (shardedMessageRepository != null) {
+            return shardedMessageRepository.findAll();
+        }
+        return messageReadRepository.findAll();
+    }
+
+    /**
+     * Reads messages by id without their like counts
+     * 
+     * @param messageIds Message ids in ascending order
+     * @return The messages that exist, ordered by messageId
+     */
+    List<Message> findMessagesByIds(int[] messageIds) {
+        if (shardedMessageRepository == null) {
+            return findByIds(messageIds);
+        }
+        List<Message> messages = new ArrayList<>(messageIds.length);
+        for (int messageId : messageIds) {
+            shardedMessageRepository.findById(messageId).ifPresent(messages::add);
+        }
+        return messages;
+    }
+
+    /**
+     * Fills in the like count of each message
+     */
+    List<Message> withLikes(List<Message> messages) {
+        messageLikes.fill(messages);
+        return messages;
+    }
+
+    /**
+     * Reads messages by id, taking those in the message cache from it and the
+     * rest from the table in one pass
+     * 
+     * @param messageIds Message ids in ascending order
+     * @return The messages that exist, ordered by messageId
+     */
+    private List<Message> findByIds(int[] messageIds) {
+        if (messageCache == null) {
+            return messageReadRepository.findByIds(messageIds);
+        }
+        Message[] found = new Message[messageIds.length];
+        int[] missing = new int[messageIds.length];
+        int missingCount = 0;
+        for (int i = 0; i < messageIds.length; i++) {
+            found[i] = messageCache.get(messageIds[i]);
+            if (found[i] == null) {
+                missing[missingCount++] = messageIds[i];
+            }
+        }
+
+        // Both the ids and the loaded rows are ascending, so merge them in one pass
+        List<Message> loaded = messageReadRepository.findByIds(Arrays.copyOf(missing, missingCount));
+        List<Message> messages = new ArrayList<>(messageIds.length);
+        int next = 0;
+        for (int i = 0; i < messageIds.length; i++) {
+            if (found[i] != null) {
+                messages.add(found[i]);
+            } else if (next < loaded.size() && loaded.get(next).getMessageId() == messageIds[i]) {
+                messages.add(loaded.get(next++));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Adds archived messages to messages read from the table. A message present
+     * in both, left behind by an interrupted archival run, is taken from the table.
+     * 
+     * @return Both lists merged and ordered by messageId
+     */
+    private static List<Message> withArchived(List<Message> hot, List<Message> archived) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        Set<Integer> hotIds = new HashSet<>();
+        for (Message message : hot) {
+            hotIds.add(message.getMessageId());
+        }
+        List<Message> merged = new ArrayList<>(hot);
+        for (Message message : archived) {
+            if (!hotIds.contains(message.getMessageId())) {
+                merged.add(message);
+            }
+        }
+        merged.sort(Comparator.comparing(Message::getMessageId));
+        return merged;
     }
 }
@@ -0,0 +1,71 @@
+package com.example.tags;
+
+import java.util.Arrays;
+
+/**
+ * A count-min sketch: depth rows of width counters, each row indexed by a
+ * different hash of the key. An estimate is the smallest of the key's
+ * counters, so it never undercounts and overcounts by at most about
+ * total / width with high probability. Not thread-safe.
+ */
+final class CountMinSketch {
+
+    private final int depth;
+    private final int mask;
+    private final int[] counters;
+
+    /**
+     * @param width Counters per row, rounded up to a power of two
+     */
+    CountMinSketch(int depth, int width) {
+        int rowWidth = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+        this.depth = depth;
+        this.mask = rowWidth - 1;
+        this.counters = new int[depth * rowWidth];
+    }
+
+    void add(long hash, int count) {
+        for (int row = 0; row < depth; row++) {
+            counters[index(hash, row)] += count;
+        }
+    }
+
+    /**
+     * Adds the key's counter in each row to sums, so sketches over several time
+     * slices can be estimated together
+     */
+    void addCounters(long hash, long[] sums) {
+        for (int row = 0; row < depth; row++) {
+            sums[row] += counters[index(hash, row)];
+        }
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    void clear() {
+        Arrays.fill(counters, 0);
+    }
+
+    private int index(long hash, int row) {
+        // Kirsch-Mitzenmacher: row i uses h1 + i * h2 from the two halves of one hash
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * (mask + 1) + ((h1 + row * h2) & mask);
+    }
+
+    /**
+     * @return A 64-bit FNV-1a hash of the key, finished with a SplitMix64 mix
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
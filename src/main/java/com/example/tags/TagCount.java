@@ -0,0 +1,22 @@
+package com.example.tags;
+
+/**
+ * A tag and its estimated number of uses
+ */
+public class TagCount {
+    private final String tag;
+    private final long count;
+
+    public TagCount(String tag, long count) {
+        this.tag = tag;
+        this.count = count;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
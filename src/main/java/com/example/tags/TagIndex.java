@@ -0,0 +1,237 @@
+package com.example.tags;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.entity.Message;
+import com.example.event.MessageChangedEvent;
+import com.example.event.RemoteInvalidationEvent;
+import com.example.repository.ShardedMessageRepository;
+
+/**
+ * An in-memory index from each tag to the sorted ids of the messages that use
+ * it.
+ * 
+ * The index is loaded from the messages on startup and then kept current by
+ * change events after they commit, under the same rules as the
+ * {@link com.example.cache.AccountMessageIndex}. A created message is indexed
+ * from the event's text. An updated one is re-read from the primary under the
+ * write lock and moved to the tags of its text as stored, so updates that
+ * commit close together cannot leave it under an older text's tags. A deleted
+ * one is removed from every tag. Finding a message's old tags means scanning
+ * every tag, which is acceptable because updates and deletions are rare next
+ * to reads.
+ *
+ * Messages moved out of the table by the archiver stay indexed until restart,
+ * but are not found when readers load them, so they are not returned.
+ */
+@Component
+public class TagIndex implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(TagIndex.class);
+
+    private static final int[] NO_IDS = new int[0];
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    private ShardedMessageRepository shardedMessageRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    private volatile boolean ready;
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        long startedAt = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            load();
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        running = true;
+        log.info("Indexed {} tags in {} ms", postings.size(), System.currentTimeMillis() - startedAt);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return The ids of the messages that used the tag when last indexed, in
+     *         ascending order, or null if the index is not loaded yet
+     */
+    public int[] findMessageIds(String tag) {
+        if (!ready) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            Postings ids = postings.get(tag);
+            return ids == null ? NO_IDS : Arrays.copyOf(ids.ids, ids.size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageChanged(MessageChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            switch (event.getType()) {
+            case CREATED:
+                addAll(event.getMessageId(), event.getMessage().getMessageText());
+                break;
+            case UPDATED:
+                reindex(event.getMessageId());
+                break;
+            case DELETED:
+                removeAll(event.getMessageId(), Collections.emptySet());
+                break;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-indexes messages changed on another instance from their stored text,
+     * or every message if some of its invalidations were lost
+     */
+    @EventListener
+    public void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (!ready || (!event.isEverything() && event.getMessageIds().length == 0)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (event.isEverything()) {
+                postings.clear();
+                load();
+                return;
+            }
+            for (int messageId : event.getMessageIds()) {
+                reindex(messageId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes every stored message. Called with the write lock held.
+     */
+    private void load() {
+        if (shardedMessageRepository != null) {
+            for (Message message : shardedMessageRepository.findAll()) {
+                addAll(message.getMessageId(), message.getMessageText());
+            }
+        } else {
+            jdbcTemplate.query("select messageId, messageText from message order by messageId",
+                    (RowCallbackHandler) rs -> addAll(rs.getInt(1), rs.getString(2)));
+        }
+    }
+
+    /**
+     * Moves a message to the tags of its stored text, or removes it from every
+     * tag if it no longer exists. Called with the write lock held.
+     */
+    private void reindex(int messageId) {
+        Optional<String> text;
+        if (shardedMessageRepository != null) {
+            text = shardedMessageRepository.findById(messageId).map(Message::getMessageText);
+        } else {
+            text = jdbcTemplate.query("select messageText from message where messageId = ?",
+                    (rs, row) -> rs.getString(1), messageId).stream().findFirst();
+        }
+        Set<String> tags = text.map(Tags::extract).orElse(Collections.emptySet());
+        removeAll(messageId, tags);
+        addAll(messageId, text.orElse(null));
+    }
+
+    /**
+     * Removes a message from every tag but the given ones. Called with the write
+     * lock held.
+     */
+    private void removeAll(int messageId, Set<String> keep) {
+        Iterator<Map.Entry<String, Postings>> entries = postings.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Postings> entry = entries.next();
+            if (!keep.contains(entry.getKey())) {
+                entry.getValue().remove(messageId);
+                if (entry.getValue().size == 0) {
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Indexes a message under each of its tags. Called with the write lock held.
+     */
+    private void addAll(int messageId, String text) {
+        for (String tag : Tags.extract(text)) {
+            postings.computeIfAbsent(tag, key -> new Postings()).add(messageId);
+        }
+    }
+
+    /**
+     * One tag's message ids, sorted, in a growable array
+     */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int messageId) {
+            // New messages have the highest id so far, so check the end first
+            int at = size == 0 || ids[size - 1] < messageId ? size : Arrays.binarySearch(ids, 0, size, messageId);
+            if (at >= 0 && at < size) {
+                return; // Already present
+            }
+            if (at < 0) {
+                at = -at - 1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = messageId;
+            size++;
+        }
+
+        void remove(int messageId) {
+            int at = Arrays.binarySearch(ids, 0, size, messageId);
+            if (at >= 0) {
+                System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+                size--;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.tags;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds #hashtags and @mentions in message text. A tag is the marker followed
+ * by letters, digits or underscores, and is compared in lower case. A marker
+ * directly after a word character, as in an email address, does not start a
+ * tag.
+ */
+public final class Tags {
+
+    private static final Pattern TAG = Pattern.compile("(?<![\\w#@])([#@])(\\w{1,64})",
+            Pattern.UNICODE_CHARACTER_CLASS);
+    private static final Pattern BARE = Pattern.compile("[#@]?\\w{1,64}", Pattern.UNICODE_CHARACTER_CLASS);
+
+    private Tags() {
+    }
+
+    /**
+     * @return The distinct tags in the text, such as "#java" and "@alice", in
+     *         the order they first appear
+     */
+    public static Set<String> extract(String text) {
+        if (text == null || (text.indexOf('#') < 0 && text.indexOf('@') < 0)) {
+            return Collections.emptySet();
+        }
+        Set<String> tags = new LinkedHashSet<>();
+        Matcher matcher = TAG.matcher(text);
+        while (matcher.find()) {
+            tags.add(matcher.group(1) + matcher.group(2).toLowerCase(Locale.ROOT));
+        }
+        return tags;
+    }
+
+    /**
+     * Reads a tag given in a request. A tag without a marker is taken as a
+     * hashtag.
+     * 
+     * @return The tag as {@link #extract} would find it, or null if it is not a
+     *         valid tag
+     */
+    public static String normalize(String tag) {
+        if (tag == null || !BARE.matcher(tag).matches()) {
+            return null;
+        }
+        String lower = tag.toLowerCase(Locale.ROOT);
+        return lower.charAt(0) == '#' || lower.charAt(0) == '@' ? lower : "#" + lower;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.tags;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.event.MessageChangedEvent;
+
+/**
+ * Counts tag use over a sliding window in fixed memory, and tracks the most
+ * used tags in it.
+ * 
+ * The window of app.tags.trending.window-seconds is split into
+ * app.tags.trending.slices slices, each with its own {@link CountMinSketch}. A
+ * tag's count over the window is estimated from the sum of its counters across
+ * the slices, and the oldest slice is cleared and reused as time moves on, so
+ * old uses fall out of the window one slice at a time.
+ * 
+ * The top tags are kept as a bounded set of candidates, a few times larger
+ * than app.tags.trending.top-k, in a min-heap by estimated count. A tag that
+ * is used and estimated above the smallest candidate replaces it. Candidates
+ * are re-estimated when a slice expires.
+ * 
+ * Only tags in newly created messages are counted, so editing a message does
+ * not count its tags again.
+ */
+@Component
+public class TrendingTags {
+
+    private final long sliceMillis;
+    private final int topK;
+    private final int capacity;
+    private final CountMinSketch[] slices;
+    private long currentSlice;
+
+    private final Map<String, Candidate> candidates = new HashMap<>();
+    private final PriorityQueue<Candidate> heap = new PriorityQueue<>(
+            Comparator.comparingLong((Candidate candidate) -> candidate.count));
+
+    public TrendingTags(@Value("${app.tags.trending.window-seconds}") long windowSeconds,
+            @Value("${app.tags.trending.slices}") int sliceCount,
+            @Value("${app.tags.trending.top-k}") int topK,
+            @Value("${app.tags.trending.sketch-depth}") int depth,
+            @Value("${app.tags.trending.sketch-width}") int width) {
+        this.sliceMillis = Math.max(1, windowSeconds * 1000 / sliceCount);
+        this.topK = topK;
+        this.capacity = topK * 4;
+        this.slices = new CountMinSketch[sliceCount];
+        for (int i = 0; i < sliceCount; i++) {
+            slices[i] = new CountMinSketch(depth, width);
+        }
+        this.currentSlice = System.currentTimeMillis() / sliceMillis;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageChanged(MessageChangedEvent event) {
+        if (event.getType() == MessageChangedEvent.Type.CREATED) {
+            for (String tag : Tags.extract(event.getMessage().getMessageText())) {
+                record(tag, System.currentTimeMillis());
+            }
+        }
+    }
+
+    /**
+     * Counts one use of a tag
+     */
+    synchronized void record(String tag, long now) {
+        advance(now);
+        long hash = CountMinSketch.hash(tag);
+        slices[(int) (currentSlice % slices.length)].add(hash, 1);
+        long count = estimate(hash);
+
+        Candidate candidate = candidates.get(tag);
+        if (candidate != null) {
+            heap.remove(candidate);
+            candidate.count = count;
+            heap.add(candidate);
+        } else if (candidates.size() < capacity) {
+            add(new Candidate(tag, count));
+        } else if (heap.peek().count < count) {
+            candidates.remove(heap.poll().tag);
+            add(new Candidate(tag, count));
+        }
+    }
+
+    /**
+     * @param limit The number of tags to return, at most top-k
+     * @return The most used tags in the window, most used first
+     */
+    public synchronized List<TagCount> top(int limit) {
+        advance(System.currentTimeMillis());
+        List<Candidate> ranked = new ArrayList<>(heap);
+        ranked.sort(Comparator.comparingLong((Candidate candidate) -> candidate.count).reversed()
+                .thenComparing(candidate -> candidate.tag));
+        List<TagCount> top = new ArrayList<>();
+        for (int i = 0; i < ranked.size() && i < Math.min(limit, topK); i++) {
+            top.add(new TagCount(ranked.get(i).tag, ranked.get(i).count));
+        }
+        return top;
+    }
+
+    /**
+     * @return The length of the window in seconds
+     */
+    public long getWindowSeconds() {
+        return sliceMillis * slices.length / 1000;
+    }
+
+    /**
+     * Clears the slices that have left the window since the last call, and
+     * re-estimates the candidates if any did
+     */
+    private void advance(long now) {
+        long slice = now / sliceMillis;
+        if (slice <= currentSlice) {
+            return;
+        }
+        long expired = Math.min(slice - currentSlice, slices.length);
+        for (long i = 1; i <= expired; i++) {
+            slices[(int) ((currentSlice + i) % slices.length)].clear();
+        }
+        currentSlice = slice;
+
+        List<Candidate> remaining = new ArrayList<>(heap);
+        heap.clear();
+        candidates.clear();
+        for (Candidate candidate : remaining) {
+            candidate.count = estimate(CountMinSketch.hash(candidate.tag));
+            if (candidate.count > 0) {
+                add(candidate);
+            }
+        }
+    }
+
+    private long estimate(long hash) {
+        long[] sums = new long[slices[0].depth()];
+        for (CountMinSketch slice : slices) {
+            slice.addCounters(hash, sums);
+        }
+        long min = Long.MAX_VALUE;
+        for (long sum : sums) {
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    private void add(Candidate candidate) {
+        candidates.put(candidate.tag, candidate);
+        heap.add(candidate);
+    }
+
+    private static final class Candidate {
+        final String tag;
+        long count;
+
+        Candidate(String tag, long count) {
+            this.tag = tag;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.tracing;
+
+/**
+ * One timed operation within a {@link Trace}. A span only knows its parent;
+ * the tree is assembled from the trace's spans when it is read.
+ */
+public final class Span {
+
+    private final Trace trace;
+    private final Span parent;
+    private final int id;
+    private final String name;
+    private final long startNanos;
+    private volatile String detail;
+    private volatile String error;
+    private volatile long durationNanos = -1;
+
+    Span(Trace trace, Span parent, int id, String name, long startNanos) {
+        this.trace = trace;
+        this.parent = parent;
+        this.id = id;
+        this.name = name;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Starts a child of this span
+     * 
+     * @return The child, or null if the trace already holds its maximum number
+     *         of spans
+     */
+    public Span child(String name) {
+        return trace.newSpan(this, name, System.nanoTime());
+    }
+
+    /**
+     * Adds a child that has already finished, such as a statement timed by the
+     * JDBC layer
+     */
+    public void record(String name, String detail, long startNanos, long durationNanos) {
+        Span span = trace.newSpan(this, name, startNanos);
+        if (span != null) {
+            span.detail = detail;
+            span.durationNanos = durationNanos;
+        }
+    }
+
+    public void finish() {
+        durationNanos = System.nanoTime() - startNanos;
+    }
+
+    public void finish(Throwable failure) {
+        if (failure != null) {
+            error = failure.getClass().getSimpleName();
+        }
+        finish();
+    }
+
+    public void setDetail(String detail) {
+        this.detail = detail;
+    }
+
+    public Trace getTrace() {
+        return trace;
+    }
+
+    public Span getParent() {
+        return parent;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    String getDetail() {
+        return detail;
+    }
+
+    String getError() {
+        return error;
+    }
+
+    long getDurationNanos() {
+        return durationNanos;
+    }
+}
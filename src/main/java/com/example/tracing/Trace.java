@@ -0,0 +1,123 @@
+package com.example.tracing;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The spans recorded for one sampled request. Spans may be added from the
+ * request thread and from a bulkhead thread at the same time, so the list is
+ * guarded by the trace itself. Past the span limit new spans are counted as
+ * dropped instead of growing the trace.
+ */
+public final class Trace {
+
+    private final String traceId;
+    private final long startEpochMillis;
+    private final int maxSpans;
+    private final List<Span> spans = new ArrayList<>();
+    private final Span root;
+    private int droppedSpans;
+
+    Trace(String traceId, String rootName, int maxSpans) {
+        this.traceId = traceId;
+        this.startEpochMillis = System.currentTimeMillis();
+        this.maxSpans = maxSpans;
+        this.root = new Span(this, null, 0, rootName, System.nanoTime());
+        spans.add(root);
+    }
+
+    Span newSpan(Span parent, String name, long startNanos) {
+        synchronized (this) {
+            if (spans.size() >= maxSpans) {
+                droppedSpans++;
+                return null;
+            }
+            Span span = new Span(this, parent, spans.size(), name, startNanos);
+            spans.add(span);
+            return span;
+        }
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public Span getRoot() {
+        return root;
+    }
+
+    long getDurationNanos() {
+        return root.getDurationNanos();
+    }
+
+    /**
+     * @return The trace id, root name, start time, duration and span count
+     */
+    Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("traceId", traceId);
+        summary.put("name", root.getName());
+        summary.put("detail", root.getDetail());
+        summary.put("start", startEpochMillis);
+        summary.put("durationMillis", root.getDurationNanos() / 1_000_000.0);
+        synchronized (this) {
+            summary.put("spans", spans.size());
+            summary.put("droppedSpans", droppedSpans);
+        }
+        return summary;
+    }
+
+    /**
+     * @return The summary with the spans nested under the root. Offsets and
+     *         durations are in microseconds from the start of the trace; a span
+     *         still running has no duration.
+     */
+    Map<String, Object> tree() {
+        List<Span> copy;
+        synchronized (this) {
+            copy = new ArrayList<>(spans);
+        }
+        List<List<Span>> children = new ArrayList<>(copy.size());
+        for (int i = 0; i < copy.size(); i++) {
+            children.add(null);
+        }
+        for (Span span : copy) {
+            if (span.getParent() != null) {
+                int parent = span.getParent().getId();
+                if (children.get(parent) == null) {
+                    children.set(parent, new ArrayList<>());
+                }
+                children.get(parent).add(span);
+            }
+        }
+        Map<String, Object> tree = summary();
+        tree.put("root", node(root, children));
+        return tree;
+    }
+
+    private Map<String, Object> node(Span span, List<List<Span>> children) {
+        Map<String, Object> node = new LinkedHashMap<>();
+        node.put("name", span.getName());
+        if (span.getDetail() != null) {
+            node.put("detail", span.getDetail());
+        }
+        node.put("offsetMicros", (span.getStartNanos() - root.getStartNanos()) / 1000);
+        long duration = span.getDurationNanos();
+        node.put("durationMicros", duration < 0 ? null : duration / 1000);
+        if (span.getError() != null) {
+            node.put("error", span.getError());
+        }
+        List<Span> own = children.get(span.getId());
+        if (own != null) {
+            own.sort((a, b) -> Long.compare(a.getStartNanos(), b.getStartNanos()));
+            List<Map<String, Object>> nested = new ArrayList<>(own.size());
+            for (Span child : own) {
+                nested.add(node(child, children));
+            }
+            node.put("children", nested);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.tracing;
+
+/**
+ * Holds the span the current thread is working in, if its request is being
+ * traced. When tracing is off or the request was not sampled there is no
+ * current span, and every instrumentation point stops after one thread-local
+ * read.
+ */
+public final class TraceContext {
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private TraceContext() {
+    }
+
+    /**
+     * @return The current thread's span, or null if it is not tracing
+     */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes a span current on this thread, such as one carried over from the
+     * thread that queued the work
+     * 
+     * @param span The span, or null to stop tracing on this thread
+     */
+    public static void set(Span span) {
+        if (span == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(span);
+        }
+    }
+
+    /**
+     * Starts a child of the current span and makes it current
+     * 
+     * @return The new span, or null if this thread is not tracing
+     */
+    public static Span start(String name) {
+        Span parent = CURRENT.get();
+        if (parent == null) {
+            return null;
+        }
+        Span span = parent.child(name);
+        if (span != null) {
+            CURRENT.set(span);
+        }
+        return span;
+    }
+
+    /**
+     * Finishes a span from {@link #start(String)} and makes its parent current
+     * again
+     */
+    public static void finish(Span span, Throwable failure) {
+        if (span == null) {
+            return;
+        }
+        span.finish(failure);
+        if (CURRENT.get() == span) {
+            set(span.getParent());
+        }
+    }
+}
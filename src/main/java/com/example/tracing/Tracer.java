@@ -0,0 +1,150 @@
+package com.example.tracing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Decides which requests are traced, and keeps the most recent finished traces
+ * in memory. Enabled with app.tracing.enabled=true.
+ * 
+ * A request is sampled with probability app.tracing.sample-rate, or always
+ * when it asks to be. Only the last app.tracing.max-traces traces are kept,
+ * each with at most app.tracing.max-spans spans; older traces are discarded as
+ * new ones finish. Traces can be written out as one JSON file each under
+ * app.tracing.export-dir.
+ */
+@Component
+@ConditionalOnProperty(name = "app.tracing.enabled", havingValue = "true")
+public class Tracer {
+
+    private static final Logger log = LoggerFactory.getLogger(Tracer.class);
+
+    private final double sampleRate;
+    private final int maxTraces;
+    private final int maxSpans;
+    private final Path exportDirectory;
+    private final ObjectMapper objectMapper;
+
+    private final ArrayDeque<Trace> finished = new ArrayDeque<>();
+
+    public Tracer(@Value("${app.tracing.sample-rate}") double sampleRate,
+            @Value("${app.tracing.max-traces}") int maxTraces,
+            @Value("${app.tracing.max-spans}") int maxSpans,
+            @Value("${app.tracing.export-dir}") String exportDirectory,
+            ObjectMapper objectMapper) {
+        this.sampleRate = sampleRate;
+        this.maxTraces = maxTraces;
+        this.maxSpans = maxSpans;
+        this.exportDirectory = Paths.get(exportDirectory);
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Starts a trace if this request is sampled, and makes its root span current
+     * 
+     * @param force True to trace regardless of the sample rate
+     * @return The root span, or null if the request is not traced
+     */
+    public Span startTrace(String name, boolean force) {
+        if (!force && (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return null;
+        }
+        Trace trace = new Trace(Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE), name,
+                maxSpans);
+        TraceContext.set(trace.getRoot());
+        return trace.getRoot();
+    }
+
+    /**
+     * Finishes a trace's root span and stores the trace
+     */
+    public void finishTrace(Span root) {
+        root.finish();
+        synchronized (finished) {
+            if (finished.size() == maxTraces) {
+                finished.removeFirst();
+            }
+            finished.addLast(root.getTrace());
+        }
+    }
+
+    /**
+     * @param minMillis Only traces that took at least this long
+     * @param limit     The most traces to return
+     * @return Summaries of the stored traces, most recent first
+     */
+    public List<Map<String, Object>> list(double minMillis, int limit) {
+        List<Map<String, Object>> summaries = new ArrayList<>();
+        long minNanos = (long) (minMillis * 1_000_000);
+        synchronized (finished) {
+            Iterator<Trace> traces = finished.descendingIterator();
+            while (traces.hasNext() && summaries.size() < limit) {
+                Trace trace = traces.next();
+                if (trace.getDurationNanos() >= minNanos) {
+                    summaries.add(trace.summary());
+                }
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * @return The span tree of a stored trace, or null if it is not stored
+     */
+    public Map<String, Object> get(String traceId) {
+        Trace trace = find(traceId);
+        return trace == null ? null : trace.tree();
+    }
+
+    /**
+     * Writes every stored trace to its own JSON file, trace-{traceId}.json
+     * 
+     * @return The export directory and the number of files written
+     * @throws IOException If the directory or a file cannot be written
+     */
+    public Map<String, Object> export() throws IOException {
+        List<Trace> traces;
+        synchronized (finished) {
+            traces = new ArrayList<>(finished);
+        }
+        Files.createDirectories(exportDirectory);
+        for (Trace trace : traces) {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(
+                    exportDirectory.resolve("trace-" + trace.getTraceId() + ".json").toFile(), trace.tree());
+        }
+        log.info("Exported {} traces to {}", traces.size(), exportDirectory.toAbsolutePath());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("directory", exportDirectory.toAbsolutePath().toString());
+        result.put("traces", traces.size());
+        return result;
+    }
+
+    private Trace find(String traceId) {
+        synchronized (finished) {
+            for (Trace trace : finished) {
+                if (trace.getTraceId().equals(traceId)) {
+                    return trace;
+                }
+            }
+        }
+        return null;
+    }
+}
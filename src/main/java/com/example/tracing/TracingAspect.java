@@ -0,0 +1,59 @@
+package com.example.tracing;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Opens a span around every controller handler, every public
+ * {@link com.example.service.MessageService} and
+ * {@link com.example.service.AccountService} method, and every repository
+ * call, named after the application type and method. On a thread that is not
+ * tracing the call goes straight through.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "app.tracing.enabled", havingValue = "true")
+public class TracingAspect {
+
+    private final Map<Class<?>, String> typeNames = new ConcurrentHashMap<>();
+
+    @Around("execution(public * com.example.controller.SocialMediaController.*(..))"
+            + " || execution(public * com.example.service.MessageService.*(..))"
+            + " || execution(public * com.example.service.AccountService.*(..))"
+            + " || @within(org.springframework.stereotype.Repository)"
+            + " || this(org.springframework.data.repository.Repository)")
+    public Object trace(ProceedingJoinPoint call) throws Throwable {
+        if (TraceContext.current() == null) {
+            return call.proceed();
+        }
+        Span span = TraceContext.start(typeName(call.getThis().getClass()) + "." + call.getSignature().getName());
+        Throwable failure = null;
+        try {
+            return call.proceed();
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            TraceContext.finish(span, failure);
+        }
+    }
+
+    private String typeName(Class<?> type) {
+        return typeNames.computeIfAbsent(type, key -> {
+            // A Spring Data repository is a proxy; name it after its interface
+            for (Class<?> face : key.getInterfaces()) {
+                if (face.getName().startsWith("com.example.")) {
+                    return face.getSimpleName();
+                }
+            }
+            return ClassUtils.getUserClass(key).getSimpleName();
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.tracing;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Starts a trace for each sampled request and finishes it when the response is
+ * complete, after any asynchronous handling. A request with the header
+ * X-Trace: true is always traced, and a traced response carries its trace id
+ * in X-Trace-Id so it can be looked up under /admin/traces. Admin requests are
+ * not traced.
+ */
+@Component
+@ConditionalOnProperty(name = "app.tracing.enabled", havingValue = "true")
+public class TracingFilter extends OncePerRequestFilter {
+
+    static final String TRACE_HEADER = "X-Trace";
+    static final String TRACE_ID_HEADER = "X-Trace-Id";
+
+    @Autowired
+    private Tracer tracer;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/admin/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Span root = tracer.startTrace(request.getMethod() + " " + request.getRequestURI(),
+                "true".equalsIgnoreCase(request.getHeader(TRACE_HEADER)));
+        if (root == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        response.setHeader(TRACE_ID_HEADER, root.getTrace().getTraceId());
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            TraceContext.set(null);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        finish(request, response, root);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                finish(request, response, root);
+            }
+        }
+    }
+
+    private void finish(HttpServletRequest request, HttpServletResponse response, Span root) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        root.setDetail((pattern != null ? pattern : request.getRequestURI()) + " " + response.getStatus());
+        tracer.finishTrace(root);
+    }
+}
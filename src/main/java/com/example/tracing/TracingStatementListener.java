@@ -0,0 +1,25 @@
+package com.example.tracing;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.jdbc.ParameterShape;
+import com.example.jdbc.StatementListener;
+
+/**
+ * Adds each JDBC statement run while tracing as a finished span under the
+ * current span, with the SQL as its detail
+ */
+@Component
+@ConditionalOnProperty(name = "app.tracing.enabled", havingValue = "true")
+public class TracingStatementListener implements StatementListener {
+
+    @Override
+    public void statementExecuted(String sql, ParameterShape parameters, int batchSize, long startNanos,
+            long nanos) {
+        Span span = TraceContext.current();
+        if (span != null) {
+            span.record(batchSize > 0 ? "jdbc.batch" : "jdbc", sql, startNanos, nanos);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.validation;
+
+/**
+ * Why a request was turned down. These are expected outcomes, not errors, so
+ * they are returned in a {@link Result} rather than thrown.
+ */
+public enum Rejection {
+    /** The message text is missing, blank or longer than 255 characters */
+    INVALID_MESSAGE_TEXT,
+    /** The message has no postedBy */
+    MISSING_POSTED_BY,
+    /** postedBy, or an account to follow or list, does not refer to an existing account */
+    UNKNOWN_ACCOUNT,
+    /** The message to update does not exist */
+    UNKNOWN_MESSAGE,
+    /** The username is missing or blank */
+    INVALID_USERNAME,
+    /** The password is missing or shorter than 4 characters */
+    INVALID_PASSWORD,
+    /** Another account already has the username */
+    DUPLICATE_USERNAME,
+    /** The username and password do not match an account */
+    BAD_CREDENTIALS,
+    /** The message is at a different version than the caller expected */
+    STALE_VERSION,
+    /** An account tried to follow itself */
+    SELF_FOLLOW,
+    /** The message has been moved to the archive, where it can be read but not changed */
+    ARCHIVED
+}
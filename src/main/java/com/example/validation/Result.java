@@ -0,0 +1,52 @@
+package com.example.validation;
+
+/**
+ * The outcome of a service call that can be turned down: either a value or a
+ * {@link Rejection}. There is one shared instance per rejection, so rejecting a
+ * request allocates nothing.
+ */
+public final class Result<T> {
+
+    private static final Result<?>[] REJECTED = new Result<?>[Rejection.values().length];
+
+    static {
+        for (Rejection rejection : Rejection.values()) {
+            REJECTED[rejection.ordinal()] = new Result<>(null, rejection);
+        }
+    }
+
+    private final T value;
+    private final Rejection rejection;
+
+    private Result(T value, Rejection rejection) {
+        this.value = value;
+        this.rejection = rejection;
+    }
+
+    public static <T> Result<T> ok(T value) {
+        return new Result<>(value, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Result<T> rejected(Rejection rejection) {
+        return (Result<T>) REJECTED[rejection.ordinal()];
+    }
+
+    public boolean isOk() {
+        return rejection == null;
+    }
+
+    /**
+     * @return The value, or null if the call was rejected
+     */
+    public T get() {
+        return value;
+    }
+
+    /**
+     * @return Why the call was rejected, or null if it succeeded
+     */
+    public Rejection getRejection() {
+        return rejection;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.validation;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+
+/**
+ * The field rules for accounts and messages, in one place. Each check looks
+ * only at the request itself, so services run it before opening a transaction.
+ * A check returns the first rule broken, or null if there is none.
+ */
+public final class Validation {
+
+    public static final int MAX_MESSAGE_LENGTH = 255;
+    public static final int MIN_PASSWORD_LENGTH = 4;
+
+    private Validation() {
+    }
+
+    /**
+     * A message text must be present, not blank, and at most 255 characters
+     */
+    public static Rejection checkMessageText(String messageText) {
+        if (messageText == null || messageText.isBlank() || messageText.length() > MAX_MESSAGE_LENGTH) {
+            return Rejection.INVALID_MESSAGE_TEXT;
+        }
+        return null;
+    }
+
+    /**
+     * A new message needs valid text and an author
+     */
+    public static Rejection checkNewMessage(Message message) {
+        Rejection rejection = checkMessageText(message.getMessageText());
+        if (rejection != null) {
+            return rejection;
+        }
+        return message.getPostedBy() == null ? Rejection.MISSING_POSTED_BY : null;
+    }
+
+    /**
+     * A new account needs a non-blank username and a password of at least 4
+     * characters
+     */
+    public static Rejection checkNewAccount(Account account) {
+        if (account.getUsername() == null || account.getUsername().isBlank()) {
+            return Rejection.INVALID_USERNAME;
+        }
+        if (account.getPassword() == null || account.getPassword().length() < MIN_PASSWORD_LENGTH) {
+            return Rejection.INVALID_PASSWORD;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.web;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * A structured access log that request threads append to without locks or I/O.
+ * Enabled with app.access-log.enabled=true.
+ * 
+ * Entries go into a ring of preallocated slots. A request thread claims a
+ * sequence number with a compare-and-set, fills the slot's fields and
+ * publishes the slot by storing its sequence. If the ring is full the entry is
+ * counted as dropped instead of waiting. One background thread formats
+ * published slots as JSON lines into a direct buffer and writes the buffer to
+ * a FileChannel when it fills or the ring runs dry. When the file would pass
+ * app.access-log.max-file-bytes it is rotated to .1, .2 and so on. If the
+ * rotation fails the file is reopened and written past the limit, and the
+ * rotation is tried again at the next flush.
+ */
+@Component
+@ConditionalOnProperty(name = "app.access-log.enabled", havingValue = "true")
+public class AccessLog {
+
+    private static final Logger log = LoggerFactory.getLogger(AccessLog.class);
+
+    private static final int MAX_LINE_BYTES = 512;
+
+    private final Path path;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final long idleParkNanos;
+
+    private final Entry[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final LongAdder rotationFailures = new LongAdder();
+
+    private final ByteBuffer batch;
+    private FileChannel channel;
+    private long fileBytes;
+    private Thread writer;
+    private volatile boolean running;
+
+    public AccessLog(@Value("${app.access-log.path}") String path,
+            @Value("${app.access-log.ring-size}") int ringSize,
+            @Value("${app.access-log.batch-bytes}") int batchBytes,
+            @Value("${app.access-log.max-file-bytes}") long maxFileBytes,
+            @Value("${app.access-log.max-files}") int maxFiles,
+            @Value("${app.access-log.idle-park-ms}") long idleParkMillis) {
+        if (Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("app.access-log.ring-size must be a power of two");
+        }
+        this.path = Paths.get(path);
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.idleParkNanos = TimeUnit.MILLISECONDS.toNanos(idleParkMillis);
+        this.slots = new Entry[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            slots[i] = new Entry();
+        }
+        this.published = new AtomicLongArray(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            published.set(i, -1);
+        }
+        this.mask = ringSize - 1;
+        this.batch = ByteBuffer.allocateDirect(Math.max(batchBytes, MAX_LINE_BYTES * 2));
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        openChannel();
+        running = true;
+        writer = new Thread(this::drain, "access-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        channel.close();
+    }
+
+    /**
+     * Appends one entry. Never blocks; drops the entry if the ring is full.
+     * 
+     * @param method    The HTTP method
+     * @param endpoint  The matched path pattern, such as /messages/{messageId}
+     * @param status    The response status
+     * @param latencyNanos Time from receiving the request to completing the response
+     * @param accountId The account the request was about, or null
+     * @param bytes     Response body bytes
+     */
+    public void record(String method, String endpoint, int status, long latencyNanos, Integer accountId,
+            long bytes) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= slots.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Entry entry = slots[(int) sequence & mask];
+        entry.timestampMillis = System.currentTimeMillis();
+        entry.method = method;
+        entry.endpoint = endpoint;
+        entry.status = status;
+        entry.latencyMicros = latencyNanos / 1000;
+        entry.accountId = accountId != null ? accountId : -1;
+        entry.bytes = bytes;
+        published.lazySet((int) sequence & mask, sequence);
+    }
+
+    /**
+     * @return Counts of entries written and dropped, failed rotations, and the
+     *         ring's backlog
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("written", written.get());
+        snapshot.put("dropped", dropped.sum());
+        snapshot.put("rotationFailures", rotationFailures.sum());
+        snapshot.put("pending", claimed.get() - consumed.get());
+        snapshot.put("ringSize", slots.length);
+        return snapshot;
+    }
+
+    private void drain() {
+        while (true) {
+            boolean stopping = !running;
+            try {
+                long next = consumed.get();
+                while (published.get((int) next & mask) == next) {
+                    if (batch.remaining() < MAX_LINE_BYTES) {
+                        flush();
+                    }
+                    format(slots[(int) next & mask]);
+                    consumed.lazySet(++next);
+                    written.incrementAndGet();
+                }
+                flush();
+            } catch (IOException e) {
+                log.warn("Access log write failed", e);
+                batch.clear();
+            }
+            if (stopping) {
+                return;
+            }
+            LockSupport.parkNanos(idleParkNanos);
+        }
+    }
+
+    private void flush() throws IOException {
+        batch.flip();
+        if (batch.hasRemaining()) {
+            if (!channel.isOpen()) {
+                openChannel(); // A failed rotation could not reopen it
+            }
+            if (fileBytes + batch.remaining() > maxFileBytes && fileBytes > 0) {
+                rotate();
+            }
+            while (batch.hasRemaining()) {
+                fileBytes += channel.write(batch);
+            }
+        }
+        batch.clear();
+    }
+
+    private void rotate() throws IOException {
+        channel.close();
+        try {
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path older = rotated(i);
+                if (Files.exists(older)) {
+                    Files.move(older, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(path, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            rotationFailures.increment();
+            log.warn("Access log rotation failed, still writing to {}", path, e);
+        } finally {
+            openChannel();
+        }
+    }
+
+    private Path rotated(int generation) {
+        return path.resolveSibling(path.getFileName() + "." + generation);
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        fileBytes = channel.size();
+    }
+
+    /**
+     * Writes an entry as one JSON line without allocating
+     */
+    private void format(Entry entry) {
+        putRaw("{\"ts\":");
+        putLong(entry.timestampMillis);
+        putRaw(",\"method\":\"");
+        putValue(entry.method);
+        putRaw("\",\"endpoint\":\"");
+        putValue(entry.endpoint);
+        putRaw("\",\"status\":");
+        putLong(entry.status);
+        putRaw(",\"latencyMicros\":");
+        putLong(entry.latencyMicros);
+        putRaw(",\"accountId\":");
+        if (entry.accountId >= 0) {
+            putLong(entry.accountId);
+        } else {
+            putRaw("null");
+        }
+        putRaw(",\"bytes\":");
+        putLong(entry.bytes);
+        putRaw("}\n");
+    }
+
+    private void putRaw(String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            batch.put((byte) ascii.charAt(i));
+        }
+    }
+
+    /**
+     * Writes a string value, truncated, with anything that would need escaping
+     * or is not printable ASCII replaced by '?'
+     */
+    private void putValue(String value) {
+        int length = Math.min(value.length(), MAX_LINE_BYTES / 4);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            batch.put(c < 0x20 || c > 0x7e || c == '"' || c == '\\' ? (byte) '?' : (byte) c);
+        }
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            batch.put((byte) '-');
+            value = -value;
+        }
+        int start = batch.position();
+        do {
+            batch.put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value != 0);
+
+        // Digits went in least significant first, so reverse them in place
+        for (int i = start, j = batch.position() - 1; i < j; i++, j--) {
+            byte digit = batch.get(i);
+            batch.put(i, batch.get(j));
+            batch.put(j, digit);
+        }
+    }
+
+    /**
+     * One preallocated slot of the ring. Written by the claiming request thread
+     * before the slot is published, read by the writer thread after.
+     */
+    private static final class Entry {
+        long timestampMillis;
+        String method;
+        String endpoint;
+        int status;
+        long latencyMicros;
+        int accountId;
+        long bytes;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.web;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import com.example.controller.SocialMediaController;
+import com.example.entity.Account;
+import com.example.entity.Message;
+
+/**
+ * Notes the account a response is about for the {@link AccessLogFilter}: the
+ * accountId of a returned Account, or the postedBy of a returned Message.
+ */
+@ControllerAdvice(assignableTypes = SocialMediaController.class)
+@ConditionalOnProperty(name = "app.access-log.enabled", havingValue = "true")
+public class AccessLogAccountAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+            Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+            ServerHttpResponse response) {
+        Integer accountId = body instanceof Account ? ((Account) body).getAccountId()
+                : body instanceof Message ? ((Message) body).getPostedBy() : null;
+        if (accountId != null && request instanceof ServletServerHttpRequest) {
+            HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+            servletRequest.setAttribute(AccessLogFilter.ACCOUNT_ATTRIBUTE, accountId);
+        }
+        return body;
+    }
+}
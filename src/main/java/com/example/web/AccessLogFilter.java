@@ -0,0 +1,156 @@
+package com.example.web;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.example.controller.SocialMediaController;
+
+/**
+ * Records every request handled by {@link SocialMediaController} in the
+ * {@link AccessLog}: method, path pattern, status, latency, accountId and
+ * response bytes.
+ * 
+ * Bytes are counted by wrapping the response output stream. A request handled
+ * asynchronously is recorded when the async context completes, so its latency
+ * includes the time spent on a bulkhead. The accountId comes from the
+ * accountId path variable or, failing that, from the response body as noted by
+ * {@link AccessLogAccountAdvice}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.access-log.enabled", havingValue = "true")
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    static final String ACCOUNT_ATTRIBUTE = AccessLogFilter.class.getName() + ".accountId";
+
+    @Autowired
+    private AccessLog accessLog;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long startedAt = System.nanoTime();
+        CountingResponse counting = new CountingResponse(response);
+        try {
+            chain.doFilter(request, counting);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(request, counting, startedAt);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                record(request, counting, startedAt);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, CountingResponse response, long startedAt) {
+        Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+        if (!(handler instanceof HandlerMethod)
+                || ((HandlerMethod) handler).getBeanType() != SocialMediaController.class) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        accessLog.record(request.getMethod(), pattern != null ? pattern.toString() : request.getRequestURI(),
+                response.getStatus(), System.nanoTime() - startedAt, accountId(request), response.bytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Integer accountId(HttpServletRequest request) {
+        Map<String, String> pathVariables = (Map<String, String>) request
+                .getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String fromPath = pathVariables != null ? pathVariables.get("accountId") : null;
+        if (fromPath != null) {
+            try {
+                return Integer.valueOf(fromPath);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return (Integer) request.getAttribute(ACCOUNT_ATTRIBUTE);
+    }
+
+    /**
+     * Counts the bytes written through the response's output stream
+     */
+    private static final class CountingResponse extends HttpServletResponseWrapper {
+        long bytes;
+        private ServletOutputStream counted;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (counted == null) {
+                ServletOutputStream out = super.getOutputStream();
+                counted = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        bytes++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        bytes += len;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        out.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        out.close();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return out.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        out.setWriteListener(listener);
+                    }
+                };
+            }
+            return counted;
+        }
+    }
+}
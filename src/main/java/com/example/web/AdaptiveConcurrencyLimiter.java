@@ -0,0 +1,121 @@
+package com.example.web;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrency limit that adapts to measured latency, after the Gradient2
+ * algorithm.
+ * 
+ * A long-term average of the round-trip time serves as the no-load baseline.
+ * Each completed call compares its own latency with that baseline: when calls
+ * get slower than the baseline allows, queueing has started and the limit
+ * shrinks in proportion; otherwise it grows by roughly the square root of the
+ * current limit. The limit is only raised while the endpoint is actually using
+ * at least half of it, so an idle endpoint does not drift upwards.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int WARMUP_SAMPLES = 10;
+    private static final double LONG_RTT_WINDOW = 600;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+    private double longRtt;
+    private long samples;
+    private long rejected;
+
+    /**
+     * @param initialLimit The limit before any latency has been measured
+     * @param minLimit     The limit never drops below this
+     * @param maxLimit     The limit never grows above this
+     * @param tolerance    How much slower than the baseline a call may be before
+     *                     the limit shrinks, e.g. 2.0 for twice as slow
+     * @param smoothing    How far each sample moves the limit towards its new
+     *                     estimate, between 0 and 1
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance,
+            double smoothing) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * Takes a permit if the endpoint is below its limit
+     * 
+     * @return The number of calls in flight including this one, or -1 if the
+     *         call must be rejected
+     */
+    public int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                synchronized (this) {
+                    rejected++;
+                }
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns a permit and feeds the call's latency into the limit
+     * 
+     * @param rttNanos         How long the call took
+     * @param inFlightAtStart  The value returned by {@link #tryAcquire()}
+     */
+    public void release(long rttNanos, int inFlightAtStart) {
+        inFlight.decrementAndGet();
+        onSample(Math.max(1, rttNanos), inFlightAtStart);
+    }
+
+    private synchronized void onSample(long rtt, int inFlightAtStart) {
+        samples++;
+        if (samples <= WARMUP_SAMPLES) {
+            longRtt += (rtt - longRtt) / samples;
+            return;
+        }
+        longRtt += (rtt - longRtt) / LONG_RTT_WINDOW;
+
+        // After a slow period, let the baseline recover quickly once latency drops again
+        if (longRtt / rtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        // An endpoint using under half its limit gives no evidence that more is safe
+        if (inFlightAtStart < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / rtt));
+        double estimate = limit * gradient + Math.sqrt(limit);
+        double next = limit * (1 - smoothing) + estimate * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public synchronized long getLongRttMicros() {
+        return (long) (longRtt / 1000);
+    }
+}
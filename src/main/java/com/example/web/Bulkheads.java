@@ -0,0 +1,215 @@
+package com.example.web;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import com.example.exception.BulkheadFullException;
+import com.example.tracing.Span;
+import com.example.tracing.TraceContext;
+
+/**
+ * Separate bounded executors for read and write handlers, so a burst of slow
+ * writes cannot take the threads that cheap reads need. Enabled with
+ * app.bulkhead.enabled=true; otherwise work runs on the calling thread.
+ * 
+ * A handler holds at most one database connection at a time, but the pool is
+ * shared with background work such as the outbox dispatcher and the replica
+ * replayer. Each bulkhead therefore has its own connection permits,
+ * app.bulkhead.read.connection-permits and app.bulkhead.write.connection-permits,
+ * which together stay below the pool size, and a handler takes one before it
+ * runs. Slow writes holding all of theirs leave the reads' permits untouched.
+ * One that cannot get a permit within app.bulkhead.connection-wait-ms fails
+ * with {@link BulkheadFullException}, as does new work arriving at a full queue.
+ *
+ * When disabled, the handler runs on the request thread and its result is
+ * returned as a completed future, which {@link CompletedFutureReturnValueHandler}
+ * writes without an async dispatch. A traced request's span moves to the
+ * worker thread with it, and the time it spent queued is recorded as a span.
+ */
+@Component
+public class Bulkheads {
+
+    private final boolean enabled;
+    private final Bulkhead read;
+    private final Bulkhead write;
+
+    public Bulkheads(@Value("${app.bulkhead.enabled}") boolean enabled,
+            @Value("${app.bulkhead.read.threads}") int readThreads,
+            @Value("${app.bulkhead.read.queue-capacity}") int readQueueCapacity,
+            @Value("${app.bulkhead.write.threads}") int writeThreads,
+            @Value("${app.bulkhead.write.queue-capacity}") int writeQueueCapacity,
+            @Value("${app.bulkhead.read.connection-permits}") int readConnectionPermits,
+            @Value("${app.bulkhead.write.connection-permits}") int writeConnectionPermits,
+            @Value("${app.bulkhead.connection-wait-ms}") long connectionWaitMillis) {
+        this.enabled = enabled;
+        this.read = enabled ? new Bulkhead("read", readThreads, readQueueCapacity,
+                new Connections(readConnectionPermits, connectionWaitMillis)) : null;
+        this.write = enabled ? new Bulkhead("write", writeThreads, writeQueueCapacity,
+                new Connections(writeConnectionPermits, connectionWaitMillis)) : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (enabled) {
+            read.executor.shutdownNow();
+            write.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a read handler on the read bulkhead, or on the calling thread when
+     * disabled
+     */
+    public <T> CompletableFuture<T> read(Supplier<T> handler) {
+        return enabled ? read.submit(handler) : CompletableFuture.completedFuture(handler.get());
+    }
+
+    /**
+     * Runs a write handler on the write bulkhead, or on the calling thread when
+     * disabled
+     */
+    public <T> CompletableFuture<T> write(Supplier<T> handler) {
+        return enabled ? write.submit(handler) : CompletableFuture.completedFuture(handler.get());
+    }
+
+    /**
+     * @return Queue, rejection and connection permit metrics for each
+     *         bulkhead, empty when disabled
+     */
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+        if (enabled) {
+            snapshot.put(read.name, read.snapshot());
+            snapshot.put(write.name, write.snapshot());
+        }
+        return snapshot;
+    }
+
+    private static final class Bulkhead {
+        final String name;
+        final ThreadPoolExecutor executor;
+        final LongAdder completed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder queueWaitNanos = new LongAdder();
+        final Connections connections;
+
+        Bulkhead(String name, int threads, int queueCapacity, Connections connections) {
+            this.name = name;
+            this.connections = connections;
+            AtomicInteger count = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), r -> {
+                        Thread thread = new Thread(r, name + "-bulkhead-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+
+        <T> CompletableFuture<T> submit(Supplier<T> handler) {
+            // Carry the request along so request-scoped state is visible on the worker thread
+            RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+            Span span = TraceContext.current();
+            long queuedAt = System.nanoTime();
+            CompletableFuture<T> result = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    long waited = System.nanoTime() - queuedAt;
+                    queueWaitNanos.add(waited);
+                    RequestContextHolder.setRequestAttributes(attributes);
+                    if (span != null) {
+                        span.record(name + "-bulkhead.queue", null, queuedAt, waited);
+                        TraceContext.set(span);
+                    }
+                    boolean permitted = false;
+                    try {
+                        permitted = connections.acquire();
+                        if (!permitted) {
+                            rejected.increment();
+                            result.completeExceptionally(new BulkheadFullException(name));
+                            return;
+                        }
+                        T value = handler.get();
+                        completed.increment();
+                        result.complete(value);
+                    } catch (Throwable e) {
+                        completed.increment();
+                        result.completeExceptionally(e);
+                    } finally {
+                        if (permitted) {
+                            connections.release();
+                        }
+                        RequestContextHolder.resetRequestAttributes();
+                        TraceContext.set(null);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                result.completeExceptionally(new BulkheadFullException(name));
+            }
+            return result;
+        }
+
+        Map<String, Object> snapshot() {
+            long completed = this.completed.sum();
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("threads", executor.getMaximumPoolSize());
+            state.put("active", executor.getActiveCount());
+            state.put("queued", executor.getQueue().size());
+            state.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+            state.put("completed", completed);
+            state.put("rejected", rejected.sum());
+            state.put("meanQueueWaitMicros", completed == 0 ? 0 : queueWaitNanos.sum() / completed / 1000);
+            state.put("connectionPermits", connections.permits);
+            state.put("availablePermits", connections.semaphore.availablePermits());
+            state.put("permitTimeouts", connections.timedOut.sum());
+            return state;
+        }
+    }
+
+    /**
+     * Database connection permits held by one bulkhead
+     */
+    private static final class Connections {
+        final int permits;
+        final long waitMillis;
+        final Semaphore semaphore;
+        final LongAdder timedOut = new LongAdder();
+
+        Connections(int permits, long waitMillis) {
+            this.permits = permits;
+            this.waitMillis = waitMillis;
+            this.semaphore = new Semaphore(permits, true);
+        }
+
+        /**
+         * @return Whether a permit was taken within the wait limit
+         */
+        boolean acquire() throws InterruptedException {
+            if (semaphore.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            timedOut.increment();
+            return false;
+        }
+
+        void release() {
+            semaphore.release();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.web;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandlerComposite;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+/**
+ * Writes a handler's CompletableFuture on the request thread when it has
+ * already completed, as if the handler had returned its value directly.
+ *
+ * Spring MVC otherwise starts async processing for every future, and the
+ * request passes through the dispatcher, filters and interceptors a second
+ * time once it completes. With {@link Bulkheads} disabled every handler
+ * returns a completed future, so each request would pay for that dispatch.
+ * Futures that are still running, or that failed, are left to Spring's own
+ * async handling. Installed ahead of the adapter's return value handlers.
+ */
+@Component
+public class CompletedFutureReturnValueHandler implements HandlerMethodReturnValueHandler, BeanPostProcessor {
+
+    private final HandlerMethodReturnValueHandlerComposite handlers = new HandlerMethodReturnValueHandlerComposite();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof RequestMappingHandlerAdapter) {
+            RequestMappingHandlerAdapter adapter = (RequestMappingHandlerAdapter) bean;
+            List<HandlerMethodReturnValueHandler> original = adapter.getReturnValueHandlers();
+            if (original != null) {
+                handlers.addHandlers(original);
+                List<HandlerMethodReturnValueHandler> installed = new ArrayList<>(original.size() + 1);
+                installed.add(this);
+                installed.addAll(original);
+                adapter.setReturnValueHandlers(installed);
+            }
+        }
+        return bean;
+    }
+
+    @Override
+    public boolean supportsReturnType(MethodParameter returnType) {
+        return CompletableFuture.class.isAssignableFrom(returnType.getParameterType());
+    }
+
+    @Override
+    public void handleReturnValue(Object returnValue, MethodParameter returnType, ModelAndViewContainer mavContainer,
+            NativeWebRequest webRequest) throws Exception {
+        CompletableFuture<?> future = (CompletableFuture<?>) returnValue;
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            MethodParameter valueType = new CompletedValueParameter(returnType);
+            if (handlers.supportsReturnType(valueType)) {
+                handlers.handleReturnValue(future.join(), valueType, mavContainer, webRequest);
+                return;
+            }
+        }
+        handlers.handleReturnValue(returnValue, returnType, mavContainer, webRequest);
+    }
+
+    /**
+     * A handler method's return type seen as the type of its future's value
+     */
+    private static final class CompletedValueParameter extends MethodParameter {
+        private final ResolvableType valueType;
+
+        CompletedValueParameter(MethodParameter futureType) {
+            this(futureType, ResolvableType.forMethodParameter(futureType).getGeneric(0));
+        }
+
+        private CompletedValueParameter(MethodParameter original, ResolvableType valueType) {
+            super(original);
+            this.valueType = valueType;
+        }
+
+        @Override
+        public Class<?> getParameterType() {
+            return valueType.toClass();
+        }
+
+        @Override
+        public Type getGenericParameterType() {
+            return valueType.getType();
+        }
+
+        @Override
+        public CompletedValueParameter clone() {
+            return new CompletedValueParameter(this, valueType);
+        }
+    }
+}
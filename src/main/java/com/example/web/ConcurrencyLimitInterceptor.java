@@ -0,0 +1,139 @@
+package com.example.web;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Sheds load per endpoint with an {@link AdaptiveConcurrencyLimiter} for each
+ * handler method. A request over its endpoint's limit is answered at once with
+ * 503 and Retry-After instead of queueing for a worker thread.
+ * 
+ * Reads (GET and HEAD) and writes get separately tuned limiters: writes hold
+ * connections and row locks longer, so they start with a lower limit and back
+ * off at a smaller latency increase than reads do. Long-lived event streams
+ * are not limited.
+ */
+@Component
+@ConditionalOnProperty(name = "app.concurrency-limit.enabled", havingValue = "true")
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".permit";
+
+    /**
+     * Limiter settings for one class of request
+     */
+    static final class Settings {
+        final int initialLimit;
+        final int minLimit;
+        final int maxLimit;
+        final double tolerance;
+
+        Settings(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.tolerance = tolerance;
+        }
+    }
+
+    private static final class Permit {
+        final AdaptiveConcurrencyLimiter limiter;
+        final int inFlightAtStart;
+        final long startedAt;
+
+        Permit(AdaptiveConcurrencyLimiter limiter, int inFlightAtStart, long startedAt) {
+            this.limiter = limiter;
+            this.inFlightAtStart = inFlightAtStart;
+            this.startedAt = startedAt;
+        }
+    }
+
+    private final Settings reads;
+    private final Settings writes;
+    private final double smoothing;
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimitInterceptor(
+            @Value("${app.concurrency-limit.read.initial-limit}") int readInitialLimit,
+            @Value("${app.concurrency-limit.read.min-limit}") int readMinLimit,
+            @Value("${app.concurrency-limit.read.max-limit}") int readMaxLimit,
+            @Value("${app.concurrency-limit.read.tolerance}") double readTolerance,
+            @Value("${app.concurrency-limit.write.initial-limit}") int writeInitialLimit,
+            @Value("${app.concurrency-limit.write.min-limit}") int writeMinLimit,
+            @Value("${app.concurrency-limit.write.max-limit}") int writeMaxLimit,
+            @Value("${app.concurrency-limit.write.tolerance}") double writeTolerance,
+            @Value("${app.concurrency-limit.smoothing}") double smoothing) {
+        this.reads = new Settings(readInitialLimit, readMinLimit, readMaxLimit, readTolerance);
+        this.writes = new Settings(writeInitialLimit, writeMinLimit, writeMaxLimit, writeTolerance);
+        this.smoothing = smoothing;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // An async dispatch re-enters here holding the permit taken by the original dispatch
+        if (!(handler instanceof HandlerMethod) || request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            return true;
+        }
+        HandlerMethod method = (HandlerMethod) handler;
+        if (SseEmitter.class.isAssignableFrom(method.getMethod().getReturnType())) {
+            return true;
+        }
+
+        boolean read = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+        AdaptiveConcurrencyLimiter limiter = limiters.computeIfAbsent(
+                request.getMethod() + " " + method.getBeanType().getSimpleName() + "." + method.getMethod().getName(),
+                key -> newLimiter(read ? reads : writes));
+        int inFlight = limiter.tryAcquire();
+        if (inFlight < 0) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value()); // Shed load instead of queueing
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return false;
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, new Permit(limiter, inFlight, System.nanoTime()));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        Permit permit = (Permit) request.getAttribute(PERMIT_ATTRIBUTE);
+        if (permit != null) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            permit.limiter.release(System.nanoTime() - permit.startedAt, permit.inFlightAtStart);
+        }
+    }
+
+    /**
+     * @return The current state of every endpoint's limiter, keyed by endpoint
+     */
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+        limiters.forEach((endpoint, limiter) -> {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("limit", limiter.getLimit());
+            state.put("inFlight", limiter.getInFlight());
+            state.put("rejected", limiter.getRejected());
+            state.put("baselineRttMicros", limiter.getLongRttMicros());
+            snapshot.put(endpoint, state);
+        });
+        return snapshot;
+    }
+
+    private AdaptiveConcurrencyLimiter newLimiter(Settings settings) {
+        return new AdaptiveConcurrencyLimiter(settings.initialLimit, settings.minLimit, settings.maxLimit,
+                settings.tolerance, smoothing);
+    }
+}
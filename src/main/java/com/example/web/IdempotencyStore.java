@@ -0,0 +1,197 @@
+package com.example.web;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Remembers the responses to requests sent with an Idempotency-Key header so
+ * that retries are answered without running the handler again.
+ * 
+ * Responses are kept serialized with their headers, such as the ETag of a
+ * created message, in a bounded map, in insertion order, and are
+ * evicted after a fixed time to live or when the map is full. A retry that
+ * arrives while the first request is still running waits for its result.
+ * Reusing a key with a different request body is rejected with 422, and a
+ * 5xx response is not remembered so the request can be retried for real.
+ */
+@Component
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final class StoredResponse {
+        final int status;
+        final HttpHeaders headers;
+        final byte[] body;
+
+        StoredResponse(int status, HttpHeaders headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    private static final class Entry {
+        final byte[] fingerprint;
+        final long expiresAt;
+        final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+        Entry(byte[] fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.idempotency.max-entries}")
+    private int maxEntries;
+
+    @Value("${app.idempotency.ttl-ms}")
+    private long ttlMillis;
+
+    @Value("${app.idempotency.in-flight-wait-ms}")
+    private long inFlightWaitMillis;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Runs a handler once per key
+     * 
+     * @param scope   Separates the keys of different endpoints
+     * @param key     The client's Idempotency-Key
+     * @param request The request body, compared across retries
+     * @param type    The response body type, used to read a stored response back
+     * @param handler Produces the response the first time the key is seen
+     * @return The handler's response, or a copy of it for a retry
+     */
+    public <T> ResponseEntity<T> execute(String scope, String key, Object request, Class<T> type,
+            Supplier<ResponseEntity<T>> handler) {
+        String entryKey = scope + ':' + key;
+        byte[] fingerprint = fingerprint(request);
+        Entry entry;
+        boolean first = false;
+        synchronized (entries) {
+            long now = System.currentTimeMillis();
+            evictExpired(now);
+            entry = entries.get(entryKey);
+            if (entry == null) {
+                entry = new Entry(fingerprint, now + ttlMillis);
+                entries.put(entryKey, entry);
+                if (entries.size() > maxEntries) {
+                    Iterator<Entry> eldest = entries.values().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+                first = true;
+            }
+        }
+
+        if (!Arrays.equals(entry.fingerprint, fingerprint)) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build(); // Key reused for a different request
+        }
+        if (first) {
+            return runFirst(entryKey, entry, handler);
+        }
+        return replay(scope, key, request, type, handler, entry);
+    }
+
+    private <T> ResponseEntity<T> runFirst(String entryKey, Entry entry, Supplier<ResponseEntity<T>> handler) {
+        ResponseEntity<T> response;
+        try {
+            response = handler.get();
+        } catch (RuntimeException e) {
+            forget(entryKey, entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+
+        if (response.getStatusCode().is5xxServerError()) {
+            forget(entryKey, entry);
+            entry.response.completeExceptionally(new IllegalStateException("Not stored: server error"));
+            return response;
+        }
+        try {
+            byte[] body = response.hasBody() ? objectMapper.writeValueAsBytes(response.getBody()) : null;
+            HttpHeaders headers = new HttpHeaders();
+            headers.addAll(response.getHeaders());
+            entry.response.complete(new StoredResponse(response.getStatusCodeValue(),
+                    HttpHeaders.readOnlyHttpHeaders(headers), body));
+        } catch (JsonProcessingException e) {
+            forget(entryKey, entry);
+            entry.response.completeExceptionally(e);
+        }
+        return response;
+    }
+
+    private <T> ResponseEntity<T> replay(String scope, String key, Object request, Class<T> type,
+            Supplier<ResponseEntity<T>> handler, Entry entry) {
+        StoredResponse stored;
+        try {
+            stored = entry.response.get(inFlightWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build(); // The first request is still running
+        } catch (ExecutionException e) {
+            // The first attempt was not stored, so this retry runs the handler itself
+            return execute(scope, key, request, type, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        try {
+            T body = stored.body != null ? objectMapper.readValue(stored.body, type) : null;
+            return ResponseEntity.status(stored.status).headers(stored.headers).header(REPLAYED_HEADER, "true")
+                    .body(body);
+        } catch (IOException e) {
+            throw new IllegalStateException("Stored response for key " + key + " is unreadable", e);
+        }
+    }
+
+    private void forget(String entryKey, Entry entry) {
+        synchronized (entries) {
+            entries.remove(entryKey, entry);
+        }
+    }
+
+    /**
+     * Entries are kept in insertion order with the same time to live, so the
+     * expired ones are always at the head
+     */
+    private void evictExpired(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && iterator.next().expiresAt <= now) {
+            iterator.remove();
+        }
+    }
+
+    private byte[] fingerprint(Object request) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint request", e);
+        }
+    }
+}
@@ -1,3 +1,6 @@
+drop table if exists account_follow;
+drop table if exists message_likes;
+drop table if exists message_outbox;
 drop table if exists message;
 drop table if exists account;
 create table account (
@@ -10,8 +13,31 @@ create table message (
     postedBy int,
     messageText varchar(255),
     timePostedEpoch bigint,
+    version int default 0 not null,
     foreign key (postedBy) references account(accountId)
 );
+create index message_timePostedEpoch on message (timePostedEpoch);
+create table message_outbox (
+    seq bigint primary key auto_increment,
+    eventType varchar(16) not null,
+    messageId int not null,
+    postedBy int,
+    payload varchar(2048),
+    createdAt bigint not null
+);
+create table account_follow (
+    followerId int not null,
+    followeeId int not null,
+    createdAt bigint not null,
+    primary key (followerId, followeeId),
+    foreign key (followerId) references account(accountId),
+    foreign key (followeeId) references account(accountId)
+);
+create index account_follow_followeeId on account_follow (followeeId);
+create table message_likes (
+    messageId int primary key,
+    likeCount bigint not null
+);
 
 -- Starting test values with ids of 9999 to avoid test issues
 insert into account values (9999, 'testuser1', 'password');
@@ -19,7 +45,7 @@ insert into account values (9998, 'testuser2', 'password');
 insert into account values (9997, 'testuser3', 'password');
 insert into account values (9996, 'testuser4', 'password');
 
-insert into message values (9999, 9999,'test message 1',1669947792);
-insert into message values (9997, 9997,'test message 2',1669947792);
-insert into message values (9996, 9996,'test message 3',1669947792);
+insert into message (messageId, postedBy, messageText, timePostedEpoch) values (9999, 9999,'test message 1',1669947792);
+insert into message (messageId, postedBy, messageText, timePostedEpoch) values (9997, 9997,'test message 2',1669947792);
+insert into message (messageId, postedBy, messageText, timePostedEpoch) values (9996, 9996,'test message 3',1669947792);
 
@@ -0,0 +1,183 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.web.AccessLog;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Drives the access log directly against a temporary directory, without a server.
+ */
+public class AccessLogTest {
+    static final int MAX_FILE_BYTES = 2048;
+
+    Path logDir;
+    Path logFile;
+    ObjectMapper objectMapper;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        logDir = Files.createTempDirectory("access-log");
+        logFile = logDir.resolve("access.log");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(logDir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Recording a few entries and stopping the log
+     *
+     * Expected Response:
+     *  One JSON line per entry, in order, with every field
+     */
+    @Test
+    public void entriesAreWrittenAsJsonLines() throws IOException, InterruptedException {
+        AccessLog accessLog = new AccessLog(logFile.toString(), 16, 1024, 1 << 20, 2, 10);
+        accessLog.start();
+        accessLog.record("GET", "/messages/{messageId}", 200, 1_500_000, 9999, 120);
+        accessLog.record("POST", "/messages", 400, 2_000, null, 0);
+        accessLog.record("GET", "/weird\"path\n", 404, 0, 1, 0);
+        accessLog.stop();
+
+        List<Map<String, Object>> lines = readLines(logFile);
+        Assertions.assertEquals(3, lines.size());
+        Assertions.assertEquals("GET", lines.get(0).get("method"));
+        Assertions.assertEquals("/messages/{messageId}", lines.get(0).get("endpoint"));
+        Assertions.assertEquals(200, lines.get(0).get("status"));
+        Assertions.assertEquals(1500, lines.get(0).get("latencyMicros"));
+        Assertions.assertEquals(9999, lines.get(0).get("accountId"));
+        Assertions.assertEquals(120, lines.get(0).get("bytes"));
+        Assertions.assertNull(lines.get(1).get("accountId"));
+        Assertions.assertEquals("/weird?path?", lines.get(2).get("endpoint"));
+        Assertions.assertEquals(3L, accessLog.snapshot().get("written"));
+    }
+
+    /**
+     * Recording more entries than the ring holds while the writer is not running
+     *
+     * Expected Response:
+     *  The entries past the ring size dropped, and the rest written once the writer starts
+     */
+    @Test
+    public void fullRingDropsEntries() throws IOException, InterruptedException {
+        AccessLog accessLog = new AccessLog(logFile.toString(), 4, 1024, 1 << 20, 2, 10);
+        for (int i = 0; i < 6; i++) {
+            accessLog.record("GET", "/messages", 200, 0, i, 0);
+        }
+        Assertions.assertEquals(2L, accessLog.snapshot().get("dropped"));
+        Assertions.assertEquals(4L, accessLog.snapshot().get("pending"));
+
+        accessLog.start();
+        accessLog.stop();
+        List<Map<String, Object>> lines = readLines(logFile);
+        Assertions.assertEquals(4, lines.size());
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals(i, lines.get(i).get("accountId"));
+        }
+    }
+
+    /**
+     * Draining a backlog many times larger than the write buffer
+     *
+     * Expected Response:
+     *  Every entry written whole and in order across the buffer's flushes
+     */
+    @Test
+    public void backlogIsWrittenInBatches() throws IOException, InterruptedException {
+        AccessLog accessLog = new AccessLog(logFile.toString(), 1024, 1024, 1 << 20, 2, 10);
+        for (int i = 0; i < 500; i++) {
+            accessLog.record("GET", "/accounts/{accountId}/messages", 200, i, i, i);
+        }
+        accessLog.start();
+        accessLog.stop();
+
+        Assertions.assertTrue(Files.size(logFile) > 10 * 1024, "size " + Files.size(logFile));
+        List<Map<String, Object>> lines = readLines(logFile);
+        Assertions.assertEquals(500, lines.size());
+        for (int i = 0; i < 500; i++) {
+            Assertions.assertEquals(i, lines.get(i).get("accountId"));
+        }
+        Assertions.assertEquals(0L, accessLog.snapshot().get("dropped"));
+    }
+
+    /**
+     * Writing past the file size limit with two rotated files kept
+     *
+     * Expected Response:
+     *  access.log, access.log.1 and access.log.2 within the limit and made of whole lines, no access.log.3,
+     *  and the newest entry last in access.log
+     */
+    @Test
+    public void filesAreRotatedAtTheSizeLimit() throws IOException, InterruptedException {
+        AccessLog accessLog = new AccessLog(logFile.toString(), 256, 1024, MAX_FILE_BYTES, 2, 10);
+        accessLog.start();
+        for (int i = 0; i < 200; i++) {
+            accessLog.record("GET", "/messages/{messageId}", 200, i, i, i);
+        }
+        accessLog.stop();
+
+        for (Path file : List.of(logFile, rotated(1), rotated(2))) {
+            Assertions.assertTrue(Files.size(file) <= MAX_FILE_BYTES, file + " is " + Files.size(file));
+            Assertions.assertFalse(readLines(file).isEmpty(), file + " is empty");
+        }
+        Assertions.assertFalse(Files.exists(rotated(3)));
+        List<Map<String, Object>> current = readLines(logFile);
+        Assertions.assertEquals(199, current.get(current.size() - 1).get("accountId"));
+        Assertions.assertEquals(0L, accessLog.snapshot().get("rotationFailures"));
+    }
+
+    /**
+     * Writing past the file size limit while the rotated file's name is taken by a directory
+     *
+     * Expected Response:
+     *  Failed rotations counted, and every entry still written to access.log
+     */
+    @Test
+    public void failedRotationKeepsWriting() throws IOException, InterruptedException {
+        Files.createDirectory(rotated(1));
+        Files.write(rotated(1).resolve("blocker"), new byte[] {1});
+        AccessLog accessLog = new AccessLog(logFile.toString(), 256, 1024, MAX_FILE_BYTES, 1, 10);
+        accessLog.start();
+        for (int i = 0; i < 100; i++) {
+            accessLog.record("GET", "/messages/{messageId}", 200, i, i, i);
+        }
+        accessLog.stop();
+
+        Assertions.assertTrue(((Number) accessLog.snapshot().get("rotationFailures")).intValue() >= 1);
+        List<Map<String, Object>> lines = readLines(logFile);
+        Assertions.assertEquals(100, lines.size());
+        Assertions.assertEquals(99, lines.get(99).get("accountId"));
+    }
+
+    private Path rotated(int generation) {
+        return logDir.resolve("access.log." + generation);
+    }
+
+    private List<Map<String, Object>> readLines(Path file) throws IOException {
+        List<Map<String, Object>> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            lines.add(objectMapper.readValue(line, new TypeReference<Map<String, Object>>(){}));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.example.web.AdaptiveConcurrencyLimiter;
+
+/**
+ * Drives the limiter with synthetic latencies, without a server.
+ */
+public class AdaptiveConcurrencyLimiterTest {
+    static final long FAST = 1_000_000L;
+    static final long SLOW = 10_000_000L;
+
+    /**
+     * Calls past the limit are rejected until a permit is returned
+     */
+    @Test
+    public void rejectsCallsOverTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 2, 100, 2.0, 0.2);
+        List<Integer> permits = acquireAll(limiter);
+
+        Assertions.assertEquals(List.of(1, 2, 3, 4), permits);
+        Assertions.assertEquals(1, limiter.getRejected()); // The call that ended acquireAll
+        Assertions.assertEquals(-1, limiter.tryAcquire());
+        Assertions.assertEquals(2, limiter.getRejected());
+
+        limiter.release(FAST, permits.get(0));
+        Assertions.assertEquals(4, limiter.tryAcquire());
+    }
+
+    /**
+     * A fully used endpoint whose latency stays at its baseline raises its limit, up to the maximum
+     */
+    @Test
+    public void limitGrowsWhileLatencyHolds() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 50, 2.0, 0.2);
+        round(limiter, FAST); // Sets the baseline
+
+        int before = limiter.getLimit();
+        round(limiter, FAST);
+        Assertions.assertTrue(limiter.getLimit() > before, "limit " + limiter.getLimit() + " after " + before);
+
+        for (int i = 0; i < 50; i++) {
+            round(limiter, FAST);
+        }
+        Assertions.assertEquals(50, limiter.getLimit());
+    }
+
+    /**
+     * Once calls take longer than the baseline allows, the limit shrinks, down to the minimum
+     */
+    @Test
+    public void limitBacksOffWhenLatencyRises() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 4, 100, 2.0, 0.2);
+        round(limiter, FAST);
+        round(limiter, FAST);
+        int before = limiter.getLimit();
+
+        round(limiter, SLOW);
+        Assertions.assertTrue(limiter.getLimit() < before, "limit " + limiter.getLimit() + " after " + before);
+
+        for (int i = 0; i < 20; i++) {
+            round(limiter, SLOW * 10);
+        }
+        Assertions.assertEquals(4, limiter.getLimit());
+    }
+
+    /**
+     * An endpoint using under half its limit keeps the limit it has
+     */
+    @Test
+    public void idleEndpointKeepsItsLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100, 2.0, 0.2);
+        for (int i = 0; i < 100; i++) {
+            limiter.release(FAST, limiter.tryAcquire());
+        }
+        Assertions.assertEquals(10, limiter.getLimit());
+        Assertions.assertEquals(0, limiter.getInFlight());
+    }
+
+    /**
+     * Takes every permit the limiter allows, then returns them all with the same latency
+     */
+    private static void round(AdaptiveConcurrencyLimiter limiter, long rttNanos) {
+        for (int permit : acquireAll(limiter)) {
+            limiter.release(rttNanos, permit);
+        }
+    }
+
+    private static List<Integer> acquireAll(AdaptiveConcurrencyLimiter limiter) {
+        List<Integer> permits = new ArrayList<>();
+        for (int permit = limiter.tryAcquire(); permit != -1; permit = limiter.tryAcquire()) {
+            permits.add(permit);
+        }
+        return permits;
+    }
+}
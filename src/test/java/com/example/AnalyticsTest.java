@@ -0,0 +1,93 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AnalyticsTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with the smallest fork-join leaves so every
+     * merge path runs, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.analytics.leaf-size=1"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Posting two more messages as account 9997, then reading the analytics endpoints
+     * 
+     * Expected Response:
+     *  GET localhost:8080/analytics/top-posters?limit=1: account 9997 with 3 messages
+     *  GET localhost:8080/analytics/activity-histogram: 5 messages across all buckets
+     *  GET localhost:8080/analytics/distinct-posters: an estimate of 3
+     */
+    @Test
+    public void analyticsOverSeededMessages() throws IOException, InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            HttpRequest postRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"postedBy\":9997,\"messageText\": \"busy poster\",\"timePostedEpoch\": 1669957792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            Assertions.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+
+        List<Map<String, Object>> topPosters = objectMapper.readValue(get("/analytics/top-posters?limit=1"),
+                new TypeReference<List<Map<String, Object>>>(){});
+        Assertions.assertEquals(1, topPosters.size());
+        Assertions.assertEquals(9997, topPosters.get(0).get("accountId"));
+        Assertions.assertEquals(3, topPosters.get(0).get("messageCount"));
+
+        Map<String, Object> histogram = objectMapper.readValue(get("/analytics/activity-histogram"),
+                new TypeReference<Map<String, Object>>(){});
+        int total = 0;
+        for (Object bucket : (List<?>) histogram.get("buckets")) {
+            total += ((Number) ((Map<?, ?>) bucket).get("messageCount")).intValue();
+        }
+        Assertions.assertEquals(5, total);
+
+        Map<String, Object> distinct = objectMapper.readValue(get("/analytics/distinct-posters"),
+                new TypeReference<Map<String, Object>>(){});
+        Assertions.assertEquals(3, ((Number) distinct.get("estimate")).intValue());
+    }
+
+    private String get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        return response.body();
+    }
+}
@@ -0,0 +1,108 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+public class BinaryContentNegotiationTest {
+    ApplicationContext app;
+    HttpClient webClient;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept: application/cbor
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: CBOR encoding of the seeded messages
+     */
+    @Test
+    public void getAllMessagesAsCbor() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = getMessages("application/cbor");
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("application/cbor", response.headers().firstValue("Content-Type").orElse(""));
+        List<Message> actualResult = new ObjectMapper(new CBORFactory()).readValue(response.body(),
+                new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(expectedMessages(), actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept: application/x-jackson-smile
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Smile encoding of the seeded messages
+     */
+    @Test
+    public void getAllMessagesAsSmile() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = getMessages("application/x-jackson-smile");
+        Assertions.assertEquals(200, response.statusCode());
+        List<Message> actualResult = new ObjectMapper(new SmileFactory()).readValue(response.body(),
+                new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(expectedMessages(), actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept: *&#47;*
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Content-Type: application/json
+     */
+    @Test
+    public void getAllMessagesDefaultsToJson() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = getMessages("*/*");
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(""));
+    }
+
+    private HttpResponse<byte[]> getMessages(String accept) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept", accept)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static List<Message> expectedMessages() {
+        List<Message> expectedResult = new ArrayList<Message>();
+        expectedResult.add(new Message(9996, 9996, "test message 3", 1669947792L));
+        expectedResult.add(new Message(9997, 9997, "test message 2", 1669947792L));
+        expectedResult.add(new Message(9999, 9999, "test message 1", 1669947792L));
+        return expectedResult;
+    }
+}
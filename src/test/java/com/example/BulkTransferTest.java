@@ -0,0 +1,212 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BulkTransferTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with the per-account message index on and
+     * imports committed two rows at a time, and create a new webClient and ObjectMapper for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.account-index.enabled=true", "--app.bulk.chunk-size=2"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/admin/export/message?format=csv
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a header line followed by the three seeded messages
+     */
+    @Test
+    public void exportMessagesCsv() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/export/message?format=csv"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        String[] lines = response.body().split("\n");
+        Assertions.assertEquals("messageId,postedBy,messageText,timePostedEpoch", lines[0]);
+        Assertions.assertEquals(4, lines.length);
+        Assertions.assertEquals("9996,9996,test message 3,1669947792", lines[1]);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/import/account?format=csv with two accounts, then
+     * logging in as one of them
+     * 
+     * Expected Response:
+     *  Status Code: 200 for both
+     *  Response Body: a report of two imported rows
+     */
+    @Test
+    public void importAccountsCsv() throws IOException, InterruptedException {
+        String csv = "accountId,username,password\n5001,\"imported, one\",secret1\n5002,imported2,secret2\n";
+        HttpRequest importRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/import/account?format=csv&jobId=test-job"))
+                .POST(HttpRequest.BodyPublishers.ofString(csv))
+                .header("Content-Type", "text/csv")
+                .build();
+        HttpResponse<String> response = webClient.send(importRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        JsonNode report = objectMapper.readTree(response.body());
+        Assertions.assertEquals(2, report.get("rows").asInt());
+
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"imported, one\",\"password\":\"secret1\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> login = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, login.statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/import/message?format=ndjson with two tagged
+     * messages, then listing them by account and by tag
+     *
+     * Expected Response:
+     *  GET localhost:8080/accounts/9998/messages: both imported messages
+     *  GET localhost:8080/tags/imported/messages: both imported messages
+     */
+    @Test
+    public void importedMessagesAreIndexed() throws IOException, InterruptedException {
+        String ndjson = "{\"messageId\":5001,\"postedBy\":9998,\"messageText\":\"first #imported\",\"timePostedEpoch\":1669947792}\n"
+                + "{\"messageId\":5002,\"postedBy\":9998,\"messageText\":\"second #imported\",\"timePostedEpoch\":1669947793}\n";
+        HttpRequest importRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/import/message?format=ndjson&jobId=index-job"))
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson))
+                .header("Content-Type", "application/x-ndjson")
+                .build();
+        HttpResponse<String> response = webClient.send(importRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+
+        Assertions.assertEquals(2, getJson("/accounts/9998/messages").size());
+        JsonNode tagged = getJson("/tags/imported/messages");
+        Assertions.assertEquals(2, tagged.size());
+        Assertions.assertEquals(5001, tagged.get(0).get("messageId").asInt());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/import/message?format=csv with a message from an
+     * account that does not exist
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  GET localhost:8080/messages/5003: Status Code 200, empty body, since the whole chunk rolled back
+     */
+    @Test
+    public void importRejectsUnknownAccounts() throws IOException, InterruptedException {
+        String csv = "messageId,postedBy,messageText,timePostedEpoch\n5003,9999,valid,1669947792\n"
+                + "5004,4242,orphan,1669947792\n";
+        HttpRequest importRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/import/message?format=csv&jobId=orphan-job"))
+                .POST(HttpRequest.BodyPublishers.ofString(csv))
+                .header("Content-Type", "text/csv")
+                .build();
+        HttpResponse<String> response = webClient.send(importRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(400, response.statusCode());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/5003"))
+                .build();
+        HttpResponse<String> message = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, message.statusCode());
+        Assertions.assertTrue(message.body().isEmpty());
+    }
+
+    /**
+     * Importing four messages whose second chunk names an unknown account, then re-sending the corrected
+     * file with the same jobId
+     *
+     * Expected Response:
+     *  Status Code: 400 for the first attempt, with the first chunk's messages kept and the second's rolled back
+     *  Status Code: 200 for the retry, reporting the first chunk skipped and only the second chunk's two rows
+     *  GET localhost:8080/accounts/9998/messages: all four messages, each once
+     */
+    @Test
+    public void importResumesAfterFailedChunk() throws IOException, InterruptedException {
+        String first = "messageId,postedBy,messageText,timePostedEpoch\n5001,9998,one,1669947792\n"
+                + "5002,9998,two,1669947792\n5003,9998,three,1669947792\n";
+        HttpResponse<String> failed = importMessagesCsv(first + "5004,4242,four,1669947792\n", "resume-job");
+        Assertions.assertEquals(400, failed.statusCode());
+        Assertions.assertEquals(2, getJson("/accounts/9998/messages").size());
+
+        HttpResponse<String> retried = importMessagesCsv(first + "5004,9998,four,1669947792\n", "resume-job");
+        Assertions.assertEquals(200, retried.statusCode());
+        JsonNode report = objectMapper.readTree(retried.body());
+        Assertions.assertEquals(2, report.get("rows").asInt());
+        Assertions.assertEquals(1, report.get("chunks").asInt());
+        Assertions.assertEquals(1, report.get("skippedChunks").asInt());
+
+        JsonNode messages = getJson("/accounts/9998/messages");
+        Assertions.assertEquals(4, messages.size());
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals(5001 + i, messages.get(i).get("messageId").asInt());
+        }
+    }
+
+    /**
+     * Importing a message without a messageId
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  GET localhost:8080/accounts/9998/messages: no messages, since nothing was committed
+     */
+    @Test
+    public void importRejectsRowsWithoutId() throws IOException, InterruptedException {
+        HttpResponse<String> response = importMessagesCsv(
+                "messageId,postedBy,messageText,timePostedEpoch\n,9998,no id,1669947792\n", "no-id-job");
+        Assertions.assertEquals(400, response.statusCode());
+        Assertions.assertEquals(0, getJson("/accounts/9998/messages").size());
+    }
+
+    private HttpResponse<String> importMessagesCsv(String csv, String jobId) throws IOException, InterruptedException {
+        HttpRequest importRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/import/message?format=csv&jobId=" + jobId))
+                .POST(HttpRequest.BodyPublishers.ofString(csv))
+                .header("Content-Type", "text/csv")
+                .build();
+        return webClient.send(importRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private JsonNode getJson(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        return objectMapper.readTree(response.body());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BulkheadTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with bulkheads enabled, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.bulkhead.enabled=true"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Creating and then reading a message while handlers run on the bulkheads
+     * 
+     * Expected Response:
+     *  Status Code: 200 for both, with the created message read back
+     *  GET localhost:8080/admin/bulkheads: one completed write and one completed read, no rejections,
+     *      and every connection permit of each bulkhead returned
+     */
+    @Test
+    public void handlersRunOnSeparateBulkheads() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"postedBy\":9999,\"messageText\": \"off the request thread\",\"timePostedEpoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> created = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, created.statusCode());
+        Message message = objectMapper.readValue(created.body(), Message.class);
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + message.getMessageId()))
+                .build();
+        HttpResponse<String> read = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, read.statusCode());
+        Assertions.assertEquals(message, objectMapper.readValue(read.body(), Message.class));
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/bulkheads"))
+                .build();
+        HttpResponse<String> metrics = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+        Map<String, Map<String, Object>> bulkheads = objectMapper.readValue(metrics.body(),
+                new TypeReference<Map<String, Map<String, Object>>>(){});
+        Assertions.assertEquals(1, ((Number) bulkheads.get("write").get("completed")).intValue());
+        Assertions.assertEquals(1, ((Number) bulkheads.get("read").get("completed")).intValue());
+        Assertions.assertEquals(0, ((Number) bulkheads.get("read").get("rejected")).intValue());
+        Assertions.assertEquals(0, ((Number) bulkheads.get("write").get("rejected")).intValue());
+        Assertions.assertEquals(5, ((Number) bulkheads.get("read").get("connectionPermits")).intValue());
+        Assertions.assertEquals(3, ((Number) bulkheads.get("write").get("connectionPermits")).intValue());
+        for (String name : new String[] {"read", "write"}) {
+            Map<String, Object> bulkhead = bulkheads.get(name);
+            Assertions.assertEquals(bulkhead.get("connectionPermits"), bulkhead.get("availablePermits"));
+            Assertions.assertEquals(0, ((Number) bulkhead.get("permitTimeouts")).intValue());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.h2.tools.Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ClusterInvalidationTest {
+    private static final String SHARED_DATABASE = "jdbc:h2:tcp://localhost:9092/mem:cluster;DB_CLOSE_DELAY=-1";
+
+    Server databaseServer;
+    ApplicationContext nodeA;
+    ApplicationContext nodeB;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, start an H2 TCP server, start node A on 8080 which resets the shared database,
+     * then node B on 8081, each with the message cache on, a 500 ms invalidation flush interval and the
+     * other as its invalidation peer, and create a new webClient and ObjectMapper for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     * @throws SQLException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException, SQLException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        databaseServer = Server.createTcpServer("-tcpPort", "9092", "-ifNotExists").start();
+        String[] argsA = new String[] {"--spring.datasource.url=" + SHARED_DATABASE,
+                "--spring.sql.init.mode=always", "--spring.jpa.hibernate.ddl-auto=create",
+                "--app.message-cache.enabled=true", "--app.cluster.enabled=true", "--app.cluster.flush-interval-ms=500",
+                "--app.cluster.tcp.port=9190", "--app.cluster.tcp.peers=localhost:9191"};
+        nodeA = SpringApplication.run(SocialMediaApp.class, argsA);
+        String[] argsB = new String[] {"--server.port=8081", "--spring.datasource.url=" + SHARED_DATABASE,
+                "--app.message-cache.enabled=true", "--app.cluster.enabled=true", "--app.cluster.flush-interval-ms=500",
+                "--app.cluster.tcp.port=9191", "--app.cluster.tcp.peers=localhost:9190"};
+        nodeB = SpringApplication.run(SocialMediaApp.class, argsB);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(nodeB);
+        SpringApplication.exit(nodeA);
+        databaseServer.stop();
+    }
+
+    /**
+     * Updating a message on node A after node B has cached it
+     *
+     * Expected Response:
+     *  GET localhost:8081/messages/9999: the original text, now cached on node B
+     *  PATCH localhost:8080/messages/9999: Status Code 200
+     *  GET localhost:8081/messages/9999: the new text
+     *  GET localhost:8081/admin/cluster: at least one received frame
+     */
+    @Test
+    public void updateOnOneNodeInvalidatesTheOther() throws IOException, InterruptedException {
+        Assertions.assertEquals("test message 1", getMessage(8081, 9999).getMessageText());
+
+        String json = "{\"messageText\": \"updated on node A\"}";
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Thread.sleep(1000);
+        Assertions.assertEquals("updated on node A", getMessage(8081, 9999).getMessageText());
+        Map<String, Object> cluster = getCluster(8081);
+        Assertions.assertTrue(((Number) cluster.get("receivedFrames")).intValue() >= 1);
+    }
+
+    /**
+     * Updating the same message five times in a row on node A
+     *
+     * Expected Response:
+     *  GET localhost:8081/messages/9999: the last text
+     *  GET localhost:8080/admin/cluster: 10 ids queued (each message and its author), fewer sent
+     */
+    @Test
+    public void repeatedUpdatesAreCoalesced() throws IOException, InterruptedException {
+        getMessage(8081, 9999);
+        for (int i = 1; i <= 5; i++) {
+            String json = "{\"messageText\": \"edit " + i + "\"}";
+            HttpRequest patchRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/9999"))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString(json))
+                    .header("Content-Type", "application/json")
+                    .build();
+            Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+
+        Thread.sleep(1000);
+        Assertions.assertEquals("edit 5", getMessage(8081, 9999).getMessageText());
+        Map<String, Object> cluster = getCluster(8080);
+        Assertions.assertEquals(10, ((Number) cluster.get("queued")).intValue());
+        Assertions.assertTrue(((Number) cluster.get("sentIds")).intValue() < 10);
+    }
+
+    /**
+     * Sending node B frames 1 and 3 from another node, so that frame 2 was missed
+     *
+     * Expected Response:
+     *  GET localhost:8081/admin/cluster: one gap
+     *  GET localhost:8081/admin/message-cache: no entries, though the warmed messages were cached before
+     */
+    @Test
+    public void missedFrameInvalidatesEverything() throws IOException, InterruptedException {
+        getMessage(8081, 9999);
+        Assertions.assertTrue(((Number) getAdmin(8081, "message-cache").get("entries")).intValue() > 0);
+
+        try (Socket socket = new Socket("localhost", 9191);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            for (long sequence : new long[] {1, 3}) {
+                byte[] frame = ByteBuffer.allocate(28).putInt(0x494e5632).putLong(42).putLong(sequence)
+                        .putInt(0).putInt(0).array();
+                out.writeInt(frame.length);
+                out.write(frame);
+            }
+            out.flush();
+            Thread.sleep(500);
+        }
+
+        Assertions.assertEquals(1, ((Number) getCluster(8081).get("gaps")).intValue());
+        Assertions.assertEquals(0, ((Number) getAdmin(8081, "message-cache").get("entries")).intValue());
+    }
+
+    private Message getMessage(int port, int messageId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/messages/" + messageId))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private Map<String, Object> getCluster(int port) throws IOException, InterruptedException {
+        return getAdmin(port, "cluster");
+    }
+
+    private Map<String, Object> getAdmin(int port, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/admin/" + path))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<Map<String, Object>>(){});
+    }
+}
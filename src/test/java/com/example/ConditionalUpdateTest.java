@@ -0,0 +1,102 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+public class ConditionalUpdateTest {
+    ApplicationContext app;
+    HttpClient webClient;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Two editors PATCH localhost:8080/messages/9999 with the ETag they both read
+     * 
+     * Expected Response:
+     *  GET: ETag "0"
+     *  First PATCH: Status Code 200, ETag "1"
+     *  Second PATCH: Status Code 412
+     */
+    @Test
+    public void staleIfMatchOnPatchIsRejected() throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .build();
+        HttpResponse<String> read = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        String etag = read.headers().firstValue("ETag").orElseThrow();
+        Assertions.assertEquals("\"0\"", etag);
+
+        HttpResponse<String> first = patch("first editor", etag);
+        Assertions.assertEquals(200, first.statusCode());
+        Assertions.assertEquals("\"1\"", first.headers().firstValue("ETag").orElse(""));
+
+        HttpResponse<String> second = patch("second editor", etag);
+        Assertions.assertEquals(412, second.statusCode());
+    }
+
+    /**
+     * DELETE localhost:8080/messages/9999 with a stale If-Match, then with the current one
+     * 
+     * Expected Response:
+     *  Stale: Status Code 412, message kept
+     *  Current: Status Code 200, body 1
+     */
+    @Test
+    public void deleteHonorsIfMatch() throws IOException, InterruptedException {
+        Assertions.assertEquals(200, patch("edited", null).statusCode());
+
+        HttpResponse<String> stale = delete("\"0\"");
+        Assertions.assertEquals(412, stale.statusCode());
+
+        HttpResponse<String> current = delete("\"1\"");
+        Assertions.assertEquals(200, current.statusCode());
+        Assertions.assertEquals("1", current.body());
+    }
+
+    private HttpResponse<String> patch(String messageText, String ifMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"" + messageText + "\"}"))
+                .header("Content-Type", "application/json");
+        if (ifMatch != null) {
+            request.header("If-Match", ifMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> delete(String ifMatch) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .DELETE()
+                .header("If-Match", ifMatch)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,150 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class FeedTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with accounts of more than one follower
+     * read at request time, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.feed.fan-out-threshold=1"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * 9999 follows 9998, which only it follows, and 9997, which 9996 follows too, so 9998's messages are
+     * pushed to 9999's inbox and 9997's are read when the timeline is requested
+     * 
+     * Expected Response:
+     *  GET localhost:8080/accounts/9999/feed?limit=3: the three newest messages of both accounts, newest first
+     *  After unfollowing 9997: only 9998's messages
+     */
+    @Test
+    public void timelineMergesPushedAndPulledMessages() throws IOException, InterruptedException {
+        Assertions.assertEquals("1", follow(9999, 9998).body());
+        Assertions.assertEquals("1", follow(9999, 9997).body());
+        Assertions.assertEquals("1", follow(9996, 9997).body());
+        Assertions.assertEquals(List.of(9997), messageIds(getFeed(9999, 10))); // Builds the inbox
+
+        int older = postMessage(9998, 1669947800L);
+        int newest = postMessage(9997, 1669947900L);
+        int middle = postMessage(9998, 1669947850L);
+
+        Assertions.assertEquals(List.of(newest, middle, older), messageIds(getFeed(9999, 3)));
+
+        HttpRequest unfollowRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9999/following/9997"))
+                .DELETE()
+                .build();
+        Assertions.assertEquals("1", webClient.send(unfollowRequest, HttpResponse.BodyHandlers.ofString()).body());
+        Assertions.assertEquals(List.of(middle, older), messageIds(getFeed(9999, 10)));
+    }
+
+    /**
+     * 9999 follows 9998, whose follower count then crosses the threshold of one follower up, down and
+     * up again as 9996 follows, unfollows and follows it again, posting a message at each step
+     * 
+     * Expected Response:
+     *  GET localhost:8080/accounts/9999/feed?limit=10: every message 9998 posted, newest first, including
+     *  the one posted while it was above the threshold
+     */
+    @Test
+    public void timelineKeepsMessagesAcrossTheThreshold() throws IOException, InterruptedException {
+        Assertions.assertEquals("1", follow(9999, 9998).body());
+        Assertions.assertEquals(List.of(), messageIds(getFeed(9999, 10))); // Builds the inbox
+
+        Assertions.assertEquals("1", follow(9996, 9998).body());
+        int whileAbove = postMessage(9998, 1669947800L);
+        Assertions.assertEquals("1", unfollow(9996, 9998).body());
+        int afterDropping = postMessage(9998, 1669947850L);
+        Assertions.assertEquals(List.of(afterDropping, whileAbove), messageIds(getFeed(9999, 10)));
+
+        Assertions.assertEquals("1", follow(9996, 9998).body());
+        int afterRising = postMessage(9998, 1669947900L);
+        Assertions.assertEquals(List.of(afterRising, afterDropping, whileAbove), messageIds(getFeed(9999, 10)));
+    }
+
+    /**
+     * An account following itself
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void followSelf() throws IOException, InterruptedException {
+        Assertions.assertEquals(400, follow(9999, 9999).statusCode());
+    }
+
+    private HttpResponse<String> follow(int followerId, int followeeId) throws IOException, InterruptedException {
+        HttpRequest followRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + followerId + "/following/" + followeeId))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return webClient.send(followRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> unfollow(int followerId, int followeeId) throws IOException, InterruptedException {
+        HttpRequest unfollowRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + followerId + "/following/" + followeeId))
+                .DELETE()
+                .build();
+        return webClient.send(unfollowRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private int postMessage(int postedBy, long timePostedEpoch) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"postedBy\":" + postedBy
+                        + ",\"messageText\": \"timeline\",\"timePostedEpoch\": " + timePostedEpoch + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), Message.class).getMessageId();
+    }
+
+    private List<Message> getFeed(int accountId, int limit) throws IOException, InterruptedException {
+        HttpRequest feedRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + accountId + "/feed?limit=" + limit))
+                .build();
+        HttpResponse<String> response = webClient.send(feedRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private static List<Integer> messageIds(List<Message> messages) {
+        return messages.stream().map(Message::getMessageId).collect(Collectors.toList());
+    }
+}
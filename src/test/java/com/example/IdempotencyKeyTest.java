@@ -0,0 +1,99 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class IdempotencyKeyTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending the same POST localhost:8080/messages twice with the same Idempotency-Key
+     * 
+     * Expected Response:
+     *  Status Code: 200 for both, with the same message and ETag
+     *  Database: only one new message
+     */
+    @Test
+    public void retriedCreateMessageIsReplayed() throws IOException, InterruptedException {
+        String json = "{\"postedBy\":9999,\"messageText\": \"only once\",\"timePostedEpoch\": 1669947792}";
+        HttpResponse<String> first = postMessage(json, "retry-key-1");
+        HttpResponse<String> second = postMessage(json, "retry-key-1");
+
+        Assertions.assertEquals(200, first.statusCode());
+        Assertions.assertEquals(200, second.statusCode());
+        Assertions.assertEquals(objectMapper.readValue(first.body(), Message.class),
+                objectMapper.readValue(second.body(), Message.class));
+        Assertions.assertEquals("true", second.headers().firstValue("Idempotent-Replayed").orElse(""));
+        Assertions.assertTrue(first.headers().firstValue("ETag").isPresent());
+        Assertions.assertEquals(first.headers().firstValue("ETag"), second.headers().firstValue("ETag"));
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9999/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(2, messages.size(), "Expected the seeded message and one new message");
+    }
+
+    /**
+     * Reusing an Idempotency-Key for POST localhost:8080/messages with a different body
+     * 
+     * Expected Response:
+     *  Status Code: 422
+     */
+    @Test
+    public void reusedKeyWithDifferentBodyIsRejected() throws IOException, InterruptedException {
+        postMessage("{\"postedBy\":9999,\"messageText\": \"first\",\"timePostedEpoch\": 1669947792}", "retry-key-2");
+        HttpResponse<String> response = postMessage(
+                "{\"postedBy\":9999,\"messageText\": \"second\",\"timePostedEpoch\": 1669947792}", "retry-key-2");
+        Assertions.assertEquals(422, response.statusCode());
+    }
+
+    private HttpResponse<String> postMessage(String json, String idempotencyKey)
+            throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", idempotencyKey)
+                .build();
+        return webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,105 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class LikesTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with a short like flush interval, and create
+     * a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.likes.flush-interval-ms=200"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Liking a message 20 times at once
+     * 
+     * Expected Response:
+     *  Status Code: 200 for every like
+     *  GET localhost:8080/messages/9999: 20 likes, before and after they are flushed
+     *  GET localhost:8080/admin/likes: 20 flushed likes
+     */
+    @Test
+    public void concurrentLikesAreCountedAndFlushed() throws IOException, InterruptedException {
+        HttpRequest likeRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999/likes"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        List<CompletableFuture<HttpResponse<String>>> likes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            likes.add(webClient.sendAsync(likeRequest, HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> like : likes) {
+            Assertions.assertEquals(200, like.join().statusCode());
+        }
+        Assertions.assertEquals(20L, getMessage(9999).getLikes());
+
+        Thread.sleep(1000);
+        Assertions.assertEquals(20L, getMessage(9999).getLikes());
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/likes"))
+                .build();
+        HttpResponse<String> metrics = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+        Map<String, Object> snapshot = objectMapper.readValue(metrics.body(), new TypeReference<Map<String, Object>>(){});
+        Assertions.assertEquals(20, ((Number) snapshot.get("flushedLikes")).intValue());
+    }
+
+    /**
+     * Liking a message that does not exist
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void likeUnknownMessage() throws IOException, InterruptedException {
+        HttpRequest likeRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/5050/likes"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        HttpResponse<String> response = webClient.send(likeRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(400, response.statusCode());
+    }
+
+    private Message getMessage(int messageId) throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .build();
+        HttpResponse<String> response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.example.cache.OffHeapMessageCache;
+import com.example.entity.Message;
+
+/**
+ * Compares the heap retained by a HashMap of Message objects and by the
+ * off-heap message cache holding the same messages, and checks the bytes the
+ * off-heap cache reports.
+ */
+public class MessageCacheFootprintTest {
+    static final int MESSAGES = 200_000;
+    static final int SLAB_BYTES = 1 << 20;
+
+    /**
+     * Fills each cache with the same messages and measures the heap each one
+     * retains after a full collection. The off-heap cache keeps only its index
+     * and slot bookkeeping on the heap, a few bytes per message where the
+     * HashMap takes well over a hundred, so it must retain at most a quarter as
+     * much. Its records fit in the slabs of the smallest slot size, and every
+     * message must read back unchanged.
+     */
+    @Test
+    public void heapFootprint() {
+        long baseline = usedHeapAfterGc();
+        Map<Integer, Message> heapCache = new HashMap<>();
+        for (int i = 1; i <= MESSAGES; i++) {
+            heapCache.put(i, message(i));
+        }
+        long heapCacheBytes = usedHeapAfterGc() - baseline;
+        Assertions.assertEquals(MESSAGES, heapCache.size());
+        Reference.reachabilityFence(heapCache);
+        heapCache = null;
+
+        baseline = usedHeapAfterGc();
+        OffHeapMessageCache cache = new OffHeapMessageCache(256L << 20, SLAB_BYTES);
+        for (int i = 1; i <= MESSAGES; i++) {
+            cache.putIfUnchanged(message(i), cache.stamp());
+        }
+        long offHeapCacheBytes = usedHeapAfterGc() - baseline;
+        Reference.reachabilityFence(cache);
+        for (int i = 1; i <= MESSAGES; i += 997) {
+            Assertions.assertEquals(message(i), cache.get(i));
+        }
+
+        Assertions.assertTrue(offHeapCacheBytes * 4 <= heapCacheBytes, "OffHeapMessageCache "
+                + offHeapCacheBytes / MESSAGES + " heap bytes/message, HashMap<Integer, Message> "
+                + heapCacheBytes / MESSAGES);
+
+        Map<String, Object> snapshot = cache.snapshot();
+        Assertions.assertEquals(MESSAGES, ((Number) snapshot.get("entries")).intValue());
+        Assertions.assertEquals(0, ((Number) snapshot.get("evictions")).intValue());
+        long heapBytes = ((Number) snapshot.get("heapBytes")).longValue();
+        Assertions.assertTrue(heapBytes / MESSAGES <= 32, heapBytes / MESSAGES + " heap bytes/message");
+        long slabs = (MESSAGES + SLAB_BYTES / 64 - 1) / (SLAB_BYTES / 64);
+        Assertions.assertEquals(slabs * SLAB_BYTES, ((Number) snapshot.get("offHeapBytes")).longValue());
+    }
+
+    private static Message message(int i) {
+        return new Message(i, 9999, "footprint message number " + i, 1669947792L + i);
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,87 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MessageListCacheTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with the GET /messages snapshot on, and
+     * create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.message-list-cache.enabled=true",
+                "--app.message-list-cache.soft-ttl-ms=60000", "--app.message-list-cache.hard-ttl-ms=120000"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Listing messages before and after a new message is posted
+     * 
+     * Expected Response:
+     *  GET localhost:8080/messages: Status Code 200 with an Age header, 3 messages
+     *  GET localhost:8080/messages right after the post: the stale snapshot of 3 messages
+     *  GET localhost:8080/messages once it is refreshed: 4 messages
+     */
+    @Test
+    public void staleSnapshotIsServedWhileItRefreshes() throws IOException, InterruptedException {
+        HttpResponse<String> first = getMessages();
+        Assertions.assertEquals(200, first.statusCode());
+        Assertions.assertTrue(first.headers().firstValue("Age").isPresent());
+        Assertions.assertEquals(3, readMessages(first).size());
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"postedBy\":9999, " +
+                        "\"messageText\": \"hello message\", " +
+                        "\"timePostedEpoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assertions.assertEquals(3, readMessages(getMessages()).size());
+        Thread.sleep(500);
+        Assertions.assertEquals(4, readMessages(getMessages()).size());
+    }
+
+    private HttpResponse<String> getMessages() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> readMessages(HttpResponse<String> response) throws IOException {
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+}
@@ -0,0 +1,114 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.entity.OutboxRecord;
+import com.example.outbox.OutboxSink;
+
+public class OutboxTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient = HttpClient.newHttpClient();
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Posting a message with a sink that fails its first delivery
+     *
+     * Expected Response:
+     *  The sink receives the CREATED change exactly once, on the retry
+     *  The outbox is empty afterwards
+     */
+    @Test
+    public void changeReachesTheSinkOnceAfterAFailedDelivery() throws IOException, InterruptedException {
+        FlakySink sink = new FlakySink(1);
+        startApp(sink);
+
+        int status = postMessage();
+        Assertions.assertEquals(200, status);
+        Thread.sleep(1000);
+
+        Assertions.assertEquals(1, sink.failures.get());
+        Assertions.assertEquals(1, sink.delivered.size());
+        Assertions.assertEquals("CREATED", sink.delivered.get(0).getEventType());
+        Assertions.assertEquals(0, outboxRows());
+    }
+
+    /**
+     * Posting a message with no sink at all
+     *
+     * Expected Response:
+     *  Nothing is written to the outbox
+     */
+    @Test
+    public void nothingIsRecordedWithoutASink() throws IOException, InterruptedException {
+        startApp(null);
+
+        Assertions.assertEquals(200, postMessage());
+        Thread.sleep(500);
+
+        Assertions.assertEquals(0, outboxRows());
+    }
+
+    private void startApp(OutboxSink sink) throws InterruptedException {
+        SpringApplication application = new SpringApplication(SocialMediaApp.class);
+        if (sink != null) {
+            application.addInitializers(context -> context.getBeanFactory().registerSingleton("testSink", sink));
+        }
+        app = application.run("--app.outbox.poll-interval-ms=100");
+        Thread.sleep(500);
+    }
+
+    private int postMessage() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"postedBy\":9999,\"messageText\": \"outbox\",\"timePostedEpoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+
+    private int outboxRows() {
+        return app.getBean(JdbcTemplate.class).queryForObject("select count(*) from message_outbox", Integer.class);
+    }
+
+    /**
+     * Fails its first deliveries, then keeps every record it is given
+     */
+    static class FlakySink implements OutboxSink {
+        final AtomicInteger failures = new AtomicInteger();
+        final List<OutboxRecord> delivered = new CopyOnWriteArrayList<>();
+        final int failFirst;
+
+        FlakySink(int failFirst) {
+            this.failFirst = failFirst;
+        }
+
+        @Override
+        public void deliver(List<OutboxRecord> records) throws IOException {
+            if (failures.get() < failFirst) {
+                failures.incrementAndGet();
+                throw new IOException("sink unavailable");
+            }
+            delivered.addAll(records);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.entity.Message;
+import com.example.repository.MessageReadRepository;
+import com.example.repository.MessageRepository;
+
+/**
+ * Compares the bytes allocated per row by the JPA repository and by the
+ * JdbcTemplate read path when listing every message.
+ */
+public class ReadPathAllocationBenchmarkTest {
+    static final int ROWS = 5000;
+    static final int WARMUP_ROUNDS = 5;
+    static final int MEASURED_ROUNDS = 10;
+
+    ApplicationContext app;
+
+    @BeforeEach
+    public void setUp() {
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        JdbcTemplate jdbcTemplate = app.getBean(JdbcTemplate.class);
+        for (int i = 0; i < ROWS; i++) {
+            jdbcTemplate.update("insert into message (postedBy, messageText, timePostedEpoch) values (?, ?, ?)",
+                    9999, "benchmark message " + i, 1669947792L + i);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Lists every message through both read paths, which must return the same
+     * rows, and the JdbcTemplate path must allocate less per row.
+     */
+    @Test
+    public void allocationPerRow() {
+        MessageRepository messageRepository = app.getBean(MessageRepository.class);
+        MessageReadRepository messageReadRepository = app.getBean(MessageReadRepository.class);
+        TransactionTemplate readOnly = new TransactionTemplate(
+                app.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+
+        Supplier<List<Message>> jpa = () -> readOnly.execute(status -> messageRepository.findAll());
+        Supplier<List<Message>> jdbc = () -> readOnly.execute(status -> messageReadRepository.findAll());
+
+        int expectedRows = ROWS + 3;
+        Assertions.assertEquals(expectedRows, jpa.get().size());
+        Assertions.assertEquals(expectedRows, jdbc.get().size());
+
+        long jpaBytes = allocatedPerRound(jpa);
+        long jdbcBytes = allocatedPerRound(jdbc);
+        Assertions.assertTrue(jdbcBytes < jpaBytes, "JDBC " + jdbcBytes / expectedRows + " bytes/row, JPA "
+                + jpaBytes / expectedRows + " bytes/row");
+    }
+
+    private static long allocatedPerRound(Supplier<List<Message>> query) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            query.get();
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            query.get();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_ROUNDS;
+    }
+}
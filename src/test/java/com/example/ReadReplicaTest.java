@@ -0,0 +1,232 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.config.ReadWriteRoutingDataSource;
+import com.example.config.ReplicaReplayer;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ReadReplicaTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with the read replica on, a 1 second lag
+     * bound and a short like flush interval, mark message 9999 on the replica alone so the test can tell which database served a read,
+     * and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.datasource.replica.enabled=true",
+                "--app.datasource.replica.max-lag-ms=1000", "--app.likes.flush-interval-ms=200"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        new JdbcTemplate(app.getBean("replicaDataSource", DataSource.class))
+                .update("update message set messageText = 'replica copy' where messageId = 9999");
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Reading a message with no recent write and a replica within its lag bound
+     *
+     * Expected Response:
+     *  GET localhost:8080/messages/9999: the replica's copy
+     */
+    @Test
+    public void readsGoToTheReplica() throws IOException, InterruptedException {
+        Assertions.assertEquals("replica copy", getMessage(null, null).getMessageText());
+    }
+
+    /**
+     * Reading after the replica has stopped replaying for longer than the lag bound
+     *
+     * Expected Response:
+     *  GET localhost:8080/messages/9999: the primary's copy
+     */
+    @Test
+    public void laggingReplicaIsBypassed() throws IOException, InterruptedException {
+        app.getBean(ReplicaReplayer.class).stop();
+        Thread.sleep(1500);
+        Assertions.assertEquals("test message 1", getMessage(null, null).getMessageText());
+    }
+
+    /**
+     * Posting a message as client A, then reading as A and as B
+     *
+     * Expected Response:
+     *  GET localhost:8080/messages/9999 as A: the primary's copy
+     *  GET localhost:8080/messages/9999 as B: the replica's copy
+     */
+    @Test
+    public void writerWithClientIdReadsFromThePrimary() throws IOException, InterruptedException {
+        HttpRequest postRequest = postMessageRequest()
+                .header(ReadWriteRoutingDataSource.CLIENT_ID_HEADER, "A")
+                .build();
+        Assertions.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assertions.assertEquals("test message 1", getMessage("A", null).getMessageText());
+        Assertions.assertEquals("replica copy", getMessage("B", null).getMessageText());
+    }
+
+    /**
+     * Posting a message without a client id, then reading with and without the cookie it returned, all
+     * from the same address
+     *
+     * Expected Response:
+     *  POST localhost:8080/messages: a primary-until cookie
+     *  GET localhost:8080/messages/9999 with the cookie: the primary's copy
+     *  GET localhost:8080/messages/9999 without it: the replica's copy
+     */
+    @Test
+    public void writerWithoutClientIdIsPinnedByCookie() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(postMessageRequest().build(),
+                HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        String cookie = response.headers().firstValue("Set-Cookie").orElseThrow();
+        Assertions.assertTrue(cookie.startsWith(ReadWriteRoutingDataSource.STICKY_COOKIE + "="), cookie);
+
+        Assertions.assertEquals("test message 1", getMessage(null, cookie.split(";")[0]).getMessageText());
+        Assertions.assertEquals("replica copy", getMessage(null, null).getMessageText());
+    }
+
+    /**
+     * Liking message 9999 three times and reading it once the likes are flushed and replayed
+     *
+     * Expected Response:
+     *  GET localhost:8080/messages/9999: the replica's copy with 3 likes
+     */
+    @Test
+    public void likesAreReplicated() throws IOException, InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            HttpRequest likeRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/9999/likes"))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            Assertions.assertEquals(200, webClient.send(likeRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+        Thread.sleep(1000);
+
+        Message message = getMessage(null, null);
+        Assertions.assertEquals("replica copy", message.getMessageText());
+        Assertions.assertEquals(3L, message.getLikes());
+    }
+
+    /**
+     * 9998 following 9999, then reading its followees and feed once the follow is replayed
+     *
+     * Expected Response:
+     *  POST localhost:8080/accounts/9998/following/9999: 1
+     *  GET localhost:8080/accounts/9998/following: [9999]
+     *  GET localhost:8080/accounts/9998/feed: the replica's copy of message 9999
+     *  After unfollowing and another replay, GET localhost:8080/accounts/9998/following: []
+     */
+    @Test
+    public void followsAreReplicated() throws IOException, InterruptedException {
+        HttpRequest followRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9998/following/9999"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        Assertions.assertEquals("1", webClient.send(followRequest, HttpResponse.BodyHandlers.ofString()).body());
+        Thread.sleep(1000);
+
+        HttpRequest followingRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9998/following"))
+                .build();
+        Assertions.assertEquals("[9999]",
+                webClient.send(followingRequest, HttpResponse.BodyHandlers.ofString()).body());
+
+        HttpRequest feedRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9998/feed"))
+                .build();
+        List<Message> feed = objectMapper.readValue(
+                webClient.send(feedRequest, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(1, feed.size());
+        Assertions.assertEquals("replica copy", feed.get(0).getMessageText());
+
+        HttpRequest unfollowRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9998/following/9999"))
+                .DELETE()
+                .build();
+        Assertions.assertEquals(200, webClient.send(unfollowRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Thread.sleep(1000);
+        Assertions.assertEquals("[]", webClient.send(followingRequest, HttpResponse.BodyHandlers.ofString()).body());
+    }
+
+    /**
+     * Restarting with the message cache on and a replica that replays every 2 seconds, then editing message
+     * 9999 and reading it back right away and after the replay
+     *
+     * Expected Response:
+     *  PATCH localhost:8080/messages/9999: Status Code 200
+     *  GET localhost:8080/messages/9999, at once and 3 seconds later: the new text
+     */
+    @Test
+    public void cacheMissesAreLoadedFromThePrimary() throws IOException, InterruptedException {
+        SpringApplication.exit(app);
+        String[] args = new String[] {"--app.datasource.replica.enabled=true",
+                "--app.datasource.replica.max-lag-ms=10000", "--app.datasource.replica.replay-interval-ms=2000",
+                "--app.message-cache.enabled=true"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"edited\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assertions.assertEquals("edited", getMessage(null, null).getMessageText());
+        Thread.sleep(3000);
+        Assertions.assertEquals("edited", getMessage(null, null).getMessageText());
+    }
+
+    private HttpRequest.Builder postMessageRequest() {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"postedBy\":9999,\"messageText\": \"routed\",\"timePostedEpoch\": 1669947792}"))
+                .header("Content-Type", "application/json");
+    }
+
+    private Message getMessage(String clientId, String cookie) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"));
+        if (clientId != null) {
+            request.header(ReadWriteRoutingDataSource.CLIENT_ID_HEADER, clientId);
+        }
+        if (cookie != null) {
+            request.header("Cookie", cookie);
+        }
+        HttpResponse<String> response = webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+}
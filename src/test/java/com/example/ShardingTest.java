@@ -0,0 +1,201 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.example.config.ShardMigration;
+import com.example.entity.Message;
+import com.example.repository.ShardedMessageRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ShardingTest {
+    static final int SHARDS = 4;
+
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    List<JdbcTemplate> shards;
+
+    /**
+     * Before every test, reset the database, restart the app with messages on four shards, which moves
+     * the seeded messages onto them two at a time, and open a connection to each shard to see where rows
+     * landed.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.sharding.enabled=true", "--app.sharding.shard-count=" + SHARDS,
+                "--app.sharding.migration-chunk-size=2"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        shards = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            shards.add(new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:shard" + shard, "sa", "password")));
+        }
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Posting messages from three accounts
+     *
+     * Expected Response:
+     *  Each message on exactly one shard, the one its id names, shared by all of its account's messages
+     *  GET localhost:8080/messages/{id}: each message
+     */
+    @Test
+    public void eachMessageLivesOnOneShard() throws IOException, InterruptedException {
+        for (int account = 9997; account <= 9999; account++) {
+            List<Integer> accountShards = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                Message posted = postMessage(account);
+                int messageId = posted.getMessageId();
+                Assertions.assertNotEquals(0, messageId & ShardedMessageRepository.SHARDED_ID_FLAG);
+
+                List<Integer> holding = shardsHolding(messageId);
+                Assertions.assertEquals(List.of(messageId & (ShardedMessageRepository.MAX_SHARDS - 1)), holding);
+                accountShards.add(holding.get(0));
+                Assertions.assertEquals(posted, getMessage(messageId));
+            }
+            Assertions.assertEquals(1, accountShards.stream().distinct().count());
+        }
+    }
+
+    /**
+     * Starting with the seeded messages in the main table
+     *
+     * Expected Response:
+     *  The main table empty, each seeded message on exactly one shard with its original id
+     *  GET localhost:8080/messages/9999: the seeded message
+     */
+    @Test
+    public void seededMessagesAreMoved() throws IOException, InterruptedException {
+        Assertions.assertEquals(0, mainTableCount());
+        for (int messageId : new int[] {9996, 9997, 9999}) {
+            Assertions.assertEquals(1, shardsHolding(messageId).size());
+        }
+        Assertions.assertEquals(new Message(9999, 9999, "test message 1", 1669947792L), getMessage(9999));
+    }
+
+    /**
+     * Re-running the move after a crash that left a moved message in the main table as well, with
+     * different text, next to two messages that were not moved yet
+     *
+     * Expected Response:
+     *  The re-run moves all three across two chunks and empties the main table
+     *  The message still on exactly one shard, with the shard's text
+     *  GET localhost:8080/messages/7002: the message that was not moved yet
+     */
+    @Test
+    public void moveCanBeRerun() throws Exception {
+        JdbcTemplate jdbcTemplate = app.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("insert into message (messageId, postedBy, messageText, timePostedEpoch)"
+                + " values (9999, 9999, 'stale copy', 1669947792)");
+        for (int messageId = 7001; messageId <= 7002; messageId++) {
+            jdbcTemplate.update("insert into message (messageId, postedBy, messageText, timePostedEpoch)"
+                    + " values (?, 9998, 'not moved', 1669947792)", messageId);
+        }
+
+        Assertions.assertEquals(3, app.getBean(ShardMigration.class).migrate());
+
+        Assertions.assertEquals(0, mainTableCount());
+        Assertions.assertEquals(1, shardsHolding(9999).size());
+        Assertions.assertEquals("test message 1", getMessage(9999).getMessageText());
+        Assertions.assertEquals(1, shardsHolding(7002).size());
+        Assertions.assertEquals(new Message(7002, 9998, "not moved", 1669947792L), getMessage(7002));
+    }
+
+    /**
+     * Importing two messages through POST localhost:8080/admin/import/message, then exporting the table
+     *
+     * Expected Response:
+     *  Status Code: 200 for both
+     *  Each imported message on exactly one shard and not in the main table
+     *  GET localhost:8080/messages/5001: the imported message
+     *  The export holding the three seeded and two imported messages
+     */
+    @Test
+    public void bulkTransferUsesShards() throws IOException, InterruptedException {
+        String ndjson = "{\"messageId\":5001,\"postedBy\":9998,\"messageText\":\"imported\",\"timePostedEpoch\":1669947792}\n"
+                + "{\"messageId\":5002,\"postedBy\":9997,\"messageText\":\"imported\",\"timePostedEpoch\":1669947792}\n";
+        HttpRequest importRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/import/message?format=ndjson&jobId=shard-job"))
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson))
+                .header("Content-Type", "application/x-ndjson")
+                .build();
+        HttpResponse<String> imported = webClient.send(importRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, imported.statusCode());
+        Assertions.assertEquals(0, mainTableCount());
+        Assertions.assertEquals(1, shardsHolding(5001).size());
+        Assertions.assertEquals(1, shardsHolding(5002).size());
+        Assertions.assertEquals(new Message(5001, 9998, "imported", 1669947792L), getMessage(5001));
+
+        HttpRequest exportRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/export/message?format=ndjson"))
+                .build();
+        HttpResponse<String> exported = webClient.send(exportRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, exported.statusCode());
+        List<Integer> exportedIds = new ArrayList<>();
+        for (String line : exported.body().split("\n")) {
+            exportedIds.add(objectMapper.readTree(line).get("messageId").asInt());
+        }
+        exportedIds.sort(null);
+        Assertions.assertEquals(List.of(5001, 5002, 9996, 9997, 9999), exportedIds);
+    }
+
+    private List<Integer> shardsHolding(int messageId) {
+        List<Integer> holding = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            if (shards.get(shard).queryForObject("select count(*) from message where messageId = ?", Integer.class,
+                    messageId) > 0) {
+                holding.add(shard);
+            }
+        }
+        return holding;
+    }
+
+    private int mainTableCount() {
+        return app.getBean(JdbcTemplate.class).queryForObject("select count(*) from message", Integer.class);
+    }
+
+    private Message postMessage(int postedBy) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"postedBy\":" + postedBy
+                        + ",\"messageText\": \"sharded\",\"timePostedEpoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private Message getMessage(int messageId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+}
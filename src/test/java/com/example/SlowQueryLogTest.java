@@ -0,0 +1,81 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SlowQueryLogTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with the JDBC profiler enabled and every
+     * statement counted as slow, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.jdbc-profiler.enabled=true", "--app.jdbc-profiler.slow-threshold-ms=0",
+                "--app.jdbc-profiler.budgets={getMessageById:0}"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Reading a message with a budget of no statements
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  GET localhost:8080/admin/slow-queries: the message select among the slow statements, with its
+     *  parameter's type and not its value, and the read counted as over budget
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void slowStatementsAndBudgetsAreReported() throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .build();
+        HttpResponse<String> read = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, read.statusCode());
+
+        HttpRequest reportRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/slow-queries"))
+                .build();
+        HttpResponse<String> response = webClient.send(reportRequest, HttpResponse.BodyHandlers.ofString());
+        Map<String, Object> report = objectMapper.readValue(response.body(),
+                new TypeReference<Map<String, Object>>(){});
+
+        List<Map<String, Object>> slow = (List<Map<String, Object>>) report.get("slow");
+        Assertions.assertTrue(slow.stream().anyMatch(sample -> ((String) sample.get("sql")).contains("from message")
+                && "Integer".equals(sample.get("parameters"))));
+        Assertions.assertFalse(((List<?>) report.get("statements")).isEmpty());
+
+        Map<String, Map<String, Object>> endpoints = (Map<String, Map<String, Object>>) report.get("endpoints");
+        Map<String, Object> endpoint = endpoints.get("GET SocialMediaController.getMessageById");
+        Assertions.assertEquals(1, ((Number) endpoint.get("requests")).intValue());
+        Assertions.assertEquals(1, ((Number) endpoint.get("overBudget")).intValue());
+    }
+}
@@ -0,0 +1,265 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.event.MessageStreamHub;
+
+public class StreamMessagesTest {
+    ApplicationContext app;
+    HttpClient webClient;
+
+    /**
+     * Before every test, reset the database, restart the app with room for eight pending events per
+     * subscriber, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] {"--app.stream.subscriber-queue-capacity=8"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Subscribing to GET localhost:8080/accounts/9999/messages/stream and then creating a message for account 9999
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Stream: a "created" event carrying the new message
+     */
+    @Test
+    public void streamReceivesCreatedMessage() throws Exception {
+        HttpRequest streamRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9999/messages/stream"))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<Stream<String>> stream = webClient.sendAsync(streamRequest, HttpResponse.BodyHandlers.ofLines())
+                .get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(200, stream.statusCode());
+
+        postMessage("{\"postedBy\":9997,\"messageText\": \"other account\",\"timePostedEpoch\": 1669947792}");
+        postMessage("{\"postedBy\":9999,\"messageText\": \"streamed message\",\"timePostedEpoch\": 1669947792}");
+
+        CompletableFuture<String[]> firstEvent = CompletableFuture.supplyAsync(() -> {
+            Iterator<String> lines = stream.body().iterator();
+            String name = null;
+            while (lines.hasNext()) {
+                String line = lines.next();
+                if (line.startsWith("event:")) {
+                    name = line.substring("event:".length());
+                } else if (line.startsWith("data:")) {
+                    return new String[] { name, line.substring("data:".length()) };
+                }
+            }
+            return null;
+        });
+        String[] event = firstEvent.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals("created", event[0]);
+        Assertions.assertTrue(event[1].contains("streamed message"), "Unexpected event data: " + event[1]);
+        stream.body().close();
+    }
+
+    /**
+     * Subscribing to both GET localhost:8080/messages/stream and GET localhost:8080/accounts/9999/messages/stream,
+     * then creating messages for accounts 9997 and 9999 in turn
+     *
+     * Expected Response:
+     *  The stream of every message: all four events, in order
+     *  The account's stream: only the two events for account 9999
+     */
+    @Test
+    public void accountStreamOnlyCarriesItsAccount() throws Exception {
+        HttpResponse<Stream<String>> all = openStream("/messages/stream");
+        HttpResponse<Stream<String>> account = openStream("/accounts/9999/messages/stream");
+
+        for (int i = 1; i <= 2; i++) {
+            postMessage("{\"postedBy\":9997,\"messageText\": \"other " + i + "\",\"timePostedEpoch\": 1669947792}");
+            postMessage("{\"postedBy\":9999,\"messageText\": \"own " + i + "\",\"timePostedEpoch\": 1669947792}");
+        }
+
+        List<String> allData = readData(all, 4);
+        Assertions.assertTrue(allData.get(0).contains("other 1"), allData.get(0));
+        Assertions.assertTrue(allData.get(1).contains("own 1"), allData.get(1));
+        Assertions.assertTrue(allData.get(2).contains("other 2"), allData.get(2));
+        Assertions.assertTrue(allData.get(3).contains("own 2"), allData.get(3));
+        List<String> accountData = readData(account, 2);
+        Assertions.assertTrue(accountData.get(0).contains("own 1"), accountData.get(0));
+        Assertions.assertTrue(accountData.get(1).contains("own 2"), accountData.get(1));
+        all.body().close();
+        account.body().close();
+    }
+
+    /**
+     * Subscribing with overflow=disconnect from a client that stops reading, then importing enough messages
+     * to fill its connection and its queue
+     *
+     * Expected Response:
+     *  The subscriber disconnected
+     */
+    @Test
+    public void disconnectPolicyClosesSlowSubscriber() throws Exception {
+        MessageStreamHub hub = app.getBean(MessageStreamHub.class);
+        try (Socket slowClient = openUnreadStream("/messages/stream?overflow=disconnect")) {
+            awaitSubscribers(hub, 1);
+            importMessages(2000);
+            awaitSubscribers(hub, 0);
+        }
+    }
+
+    /**
+     * Subscribing with overflow=drop from a client that stops reading, importing enough messages to fill
+     * its connection and its queue, and then reading again
+     *
+     * Expected Response:
+     *  The subscriber still connected after the import
+     *  Stream: a "dropped" comment counting the events it missed
+     */
+    @Test
+    public void dropOldestPolicyKeepsSlowSubscriber() throws Exception {
+        MessageStreamHub hub = app.getBean(MessageStreamHub.class);
+        try (Socket slowClient = openUnreadStream("/messages/stream?overflow=drop")) {
+            awaitSubscribers(hub, 1);
+            importMessages(2000);
+            Thread.sleep(1000);
+            Assertions.assertEquals(1, hub.subscriberCount());
+
+            slowClient.setSoTimeout(10000);
+            BufferedReader lines = new BufferedReader(
+                    new InputStreamReader(slowClient.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = lines.readLine()) != null && !line.startsWith(":dropped ")) {
+            }
+            Assertions.assertNotNull(line, "No dropped comment before the stream ended");
+            Assertions.assertTrue(Long.parseLong(line.substring(":dropped ".length())) > 0, line);
+        }
+    }
+
+    /**
+     * Shutting the app down while a client is subscribed to GET localhost:8080/messages/stream
+     *
+     * Expected Response:
+     *  Stream: ends cleanly, since the hub completes it before the web server stops
+     */
+    @Test
+    public void streamsEndCleanlyOnShutdown() throws Exception {
+        HttpResponse<Stream<String>> stream = openStream("/messages/stream");
+        SpringApplication.exit(app);
+
+        CompletableFuture<Long> lineCount = CompletableFuture.supplyAsync(() -> stream.body().count());
+        Assertions.assertTrue(lineCount.get(5, TimeUnit.SECONDS) > 0);
+
+        app = SpringApplication.run(SocialMediaApp.class);
+    }
+
+    private HttpResponse<Stream<String>> openStream(String path) throws Exception {
+        HttpRequest streamRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<Stream<String>> stream = webClient.sendAsync(streamRequest, HttpResponse.BodyHandlers.ofLines())
+                .get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(200, stream.statusCode());
+        return stream;
+    }
+
+    /**
+     * Reads the data lines of the first events on a stream
+     */
+    private List<String> readData(HttpResponse<Stream<String>> stream, int events) throws Exception {
+        CompletableFuture<List<String>> data = CompletableFuture.supplyAsync(() -> {
+            List<String> found = new ArrayList<>();
+            Iterator<String> lines = stream.body().iterator();
+            while (found.size() < events && lines.hasNext()) {
+                String line = lines.next();
+                if (line.startsWith("data:")) {
+                    found.add(line);
+                }
+            }
+            return found;
+        });
+        List<String> found = data.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(events, found.size());
+        return found;
+    }
+
+    /**
+     * Opens a stream over a socket with a small receive buffer that the test does not read from, so the
+     * server's writes to it soon block
+     */
+    private Socket openUnreadStream(String path) throws IOException {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(1024);
+        socket.connect(new InetSocketAddress("localhost", 8080));
+        socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\nHost: localhost:8080\r\n"
+                + "Accept: text/event-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().flush();
+        return socket;
+    }
+
+    private void awaitSubscribers(MessageStreamHub hub, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (hub.subscriberCount() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Assertions.assertEquals(expected, hub.subscriberCount());
+    }
+
+    /**
+     * Imports messages for account 9998 through POST localhost:8080/admin/import/message, publishing one
+     * change per message as each chunk commits
+     */
+    private void importMessages(int count) throws IOException, InterruptedException {
+        StringBuilder ndjson = new StringBuilder();
+        String text = "x".repeat(200);
+        for (int i = 0; i < count; i++) {
+            ndjson.append("{\"messageId\":").append(10001 + i).append(",\"postedBy\":9998,\"messageText\":\"")
+                    .append(text).append("\",\"timePostedEpoch\":1669947792}\n");
+        }
+        HttpRequest importRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/import/message?format=ndjson"))
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson.toString()))
+                .header("Content-Type", "application/x-ndjson")
+                .build();
+        HttpResponse<String> response = webClient.send(importRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+    }
+
+    private void postMessage(String json) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+    }
+}
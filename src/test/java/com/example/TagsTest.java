@@ -0,0 +1,180 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.entity.Message;
+import com.example.tags.TagIndex;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TagsTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Posting three tagged messages
+     * 
+     * Expected Response:
+     *  GET localhost:8080/trending: #java twice, then #spring, then @alice
+     *  GET localhost:8080/tags/java/messages: the two messages using #java, in messageId order
+     */
+    @Test
+    public void trendingAndTaggedMessages() throws IOException, InterruptedException {
+        postMessage("Learning #Java with @alice");
+        postMessage("#java and #spring");
+        postMessage("#spring again, email me at someone@example.com");
+
+        HttpRequest trendingRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/trending?limit=3"))
+                .build();
+        HttpResponse<String> trending = webClient.send(trendingRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, trending.statusCode());
+        List<Map<String, Object>> tags = objectMapper.readValue(trending.body(),
+                new TypeReference<List<Map<String, Object>>>(){});
+        Assertions.assertEquals(3, tags.size());
+        Assertions.assertEquals("#java", tags.get(0).get("tag"));
+        Assertions.assertEquals(2, ((Number) tags.get(0).get("count")).intValue());
+        Assertions.assertEquals("#spring", tags.get(1).get("tag"));
+        Assertions.assertEquals("@alice", tags.get(2).get("tag"));
+
+        HttpRequest taggedRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tags/java/messages"))
+                .build();
+        HttpResponse<String> tagged = webClient.send(taggedRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, tagged.statusCode());
+        List<Message> messages = objectMapper.readValue(tagged.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(2, messages.size());
+        Assertions.assertEquals(1, messages.get(0).getMessageId());
+        Assertions.assertEquals(2, messages.get(1).getMessageId());
+    }
+
+    /**
+     * Editing a message so it no longer uses a tag
+     * 
+     * Expected Response:
+     *  GET localhost:8080/tags/java/messages: empty
+     *  GET localhost:8080/tags/kotlin/messages: the edited message
+     */
+    @Test
+    public void editedMessageMovesBetweenTags() throws IOException, InterruptedException {
+        postMessage("Learning #java");
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"Learning #kotlin\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest javaRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tags/java/messages"))
+                .build();
+        HttpResponse<String> java = webClient.send(javaRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals("[]", java.body());
+
+        HttpRequest kotlinRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tags/kotlin/messages"))
+                .build();
+        HttpResponse<String> kotlin = webClient.send(kotlinRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = objectMapper.readValue(kotlin.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(1, messages.size());
+        Assertions.assertEquals("Learning #kotlin", messages.get(0).getMessageText());
+    }
+
+    /**
+     * Editing a message off a tag, then deleting a message, as seen in the tag index
+     *
+     * Expected Response:
+     *  The edited message indexed under #kotlin only, the deleted one under nothing
+     */
+    @Test
+    public void editsAndDeletionsUpdateTheIndex() throws IOException, InterruptedException {
+        postMessage("Learning #java");
+        postMessage("More #java");
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"Learning #kotlin\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build();
+        Assertions.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        TagIndex tagIndex = app.getBean(TagIndex.class);
+        Assertions.assertArrayEquals(new int[0], tagIndex.findMessageIds("#java"));
+        Assertions.assertArrayEquals(new int[] {1}, tagIndex.findMessageIds("#kotlin"));
+    }
+
+    /**
+     * A read that sees a candidate's text without the tag, as a lagging replica could
+     *
+     * Expected Response:
+     *  GET localhost:8080/tags/java/messages: empty while the row lacks the tag, the message again once
+     *  the row has it back, since the read left the index alone
+     */
+    @Test
+    public void readsDoNotPruneTheIndex() throws IOException, InterruptedException {
+        postMessage("Learning #java");
+        JdbcTemplate jdbcTemplate = app.getBean(JdbcTemplate.class);
+        HttpRequest javaRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tags/java/messages"))
+                .build();
+
+        jdbcTemplate.update("update message set messageText = 'Learning' where messageId = 1");
+        Assertions.assertEquals("[]", webClient.send(javaRequest, HttpResponse.BodyHandlers.ofString()).body());
+
+        jdbcTemplate.update("update message set messageText = 'Learning #java' where messageId = 1");
+        List<Message> messages = objectMapper.readValue(
+                webClient.send(javaRequest, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(1, messages.size());
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"postedBy\":9999,\"messageText\": \"" + text + "\",\"timePostedEpoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+    }
+}
@@ -0,0 +1,103 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TracingTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with tracing enabled but nothing sampled
+     * unless asked for, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.tracing.enabled=true", "--app.tracing.sample-rate=0"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Reading a message once without and once with the X-Trace header
+     * 
+     * Expected Response:
+     *  Status Code: 200 for both; only the second response carries X-Trace-Id
+     *  GET localhost:8080/admin/traces/{traceId}: spans for the handler, the service method, the
+     *  repository call and its statement
+     */
+    @Test
+    public void requestedTraceCoversEveryLayer() throws IOException, InterruptedException {
+        HttpRequest untraced = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .build();
+        HttpResponse<String> plain = webClient.send(untraced, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, plain.statusCode());
+        Assertions.assertTrue(plain.headers().firstValue("X-Trace-Id").isEmpty());
+
+        HttpRequest traced = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .header("X-Trace", "true")
+                .build();
+        HttpResponse<String> response = webClient.send(traced, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        String traceId = response.headers().firstValue("X-Trace-Id").orElseThrow();
+
+        HttpRequest traceRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/traces/" + traceId))
+                .build();
+        HttpResponse<String> traceResponse = webClient.send(traceRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, traceResponse.statusCode());
+        Map<String, Object> trace = objectMapper.readValue(traceResponse.body(),
+                new TypeReference<Map<String, Object>>(){});
+        List<String> names = new ArrayList<>();
+        collectNames(trace.get("root"), names);
+        Assertions.assertTrue(names.contains("SocialMediaController.getMessageById"));
+        Assertions.assertTrue(names.contains("MessageService.getMessageById"));
+        Assertions.assertTrue(names.stream().anyMatch(name -> name.startsWith("MessageRepository.")
+                || name.startsWith("MessageReadRepository.")));
+        Assertions.assertTrue(names.contains("jdbc"));
+
+        HttpRequest listRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/traces"))
+                .build();
+        HttpResponse<String> list = webClient.send(listRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(1, objectMapper.readValue(list.body(), List.class).size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectNames(Object node, List<String> names) {
+        Map<String, Object> span = (Map<String, Object>) node;
+        names.add((String) span.get("name"));
+        List<Object> children = (List<Object>) span.get("children");
+        if (children != null) {
+            children.forEach(child -> collectNames(child, names));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.cache.CacheWarmer;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class WarmupTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with the message cache on and a chunk size
+     * smaller than the seeded id range, and create a new webClient and ObjectMapper for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.message-cache.enabled=true", "--app.warmup.chunk-size=2"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Reading readiness once the app has started
+     * 
+     * Expected Response:
+     *  GET localhost:8080/admin/readiness: Status Code 200, ACCEPTING_TRAFFIC, 3 warmed messages
+     *  GET localhost:8080/admin/message-cache: 3 entries before any message has been read
+     */
+    @Test
+    public void newestMessagesAreCachedBeforeReady() throws IOException, InterruptedException {
+        HttpRequest readinessRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/readiness"))
+                .build();
+        HttpResponse<String> readiness = webClient.send(readinessRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, readiness.statusCode());
+        Map<String, Object> body = objectMapper.readValue(readiness.body(), new TypeReference<Map<String, Object>>(){});
+        Assertions.assertEquals("ACCEPTING_TRAFFIC", body.get("state"));
+        Map<?, ?> warmup = (Map<?, ?>) body.get("warmup");
+        Assertions.assertEquals(3, ((Number) warmup.get("messages")).intValue());
+        Assertions.assertTrue(warmup.containsKey("totalMillis"));
+
+        HttpRequest cacheRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/message-cache"))
+                .build();
+        HttpResponse<String> cache = webClient.send(cacheRequest, HttpResponse.BodyHandlers.ofString());
+        Map<String, Object> snapshot = objectMapper.readValue(cache.body(), new TypeReference<Map<String, Object>>(){});
+        Assertions.assertEquals(3, ((Number) snapshot.get("entries")).intValue());
+    }
+
+    /**
+     * Warming again once 9998 follows 9997 and 9999 follows 9996 and 9997, none of whom follow anyone
+     *
+     * Expected Response:
+     *  Two inboxes built, for the followers 9998 and 9999 rather than the posters
+     */
+    @Test
+    public void timelinesOfFollowersAreBuilt() throws Exception {
+        Assertions.assertEquals("1", follow(9998, 9997).body());
+        Assertions.assertEquals("1", follow(9999, 9996).body());
+        Assertions.assertEquals("1", follow(9999, 9997).body());
+
+        CacheWarmer warmer = app.getBean(CacheWarmer.class);
+        warmer.run(null);
+        Assertions.assertEquals(2, ((Number) warmer.report().get("inboxes")).intValue());
+    }
+
+    /**
+     * Restarting the app without the message cache
+     *
+     * Expected Response:
+     *  GET localhost:8080/admin/readiness: Status Code 200, no messages read and none cached
+     */
+    @Test
+    public void messagesAreNotReadWithoutTheCache() throws IOException, InterruptedException {
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class);
+        Thread.sleep(500);
+
+        HttpRequest readinessRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/readiness"))
+                .build();
+        HttpResponse<String> readiness = webClient.send(readinessRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, readiness.statusCode());
+        Map<String, Object> body = objectMapper.readValue(readiness.body(), new TypeReference<Map<String, Object>>(){});
+        Map<?, ?> warmup = (Map<?, ?>) body.get("warmup");
+        Assertions.assertEquals(0, ((Number) warmup.get("messages")).intValue());
+        Assertions.assertEquals(false, warmup.get("messagesCached"));
+    }
+
+    private HttpResponse<String> follow(int followerId, int followeeId) throws IOException, InterruptedException {
+        HttpRequest followRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + followerId + "/following/" + followeeId))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return webClient.send(followRequest, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.archive;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.SocialMediaApp;
+import com.example.entity.Message;
+import com.example.repository.MessageReadRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Lives in the archive package to drive the archiver and segments directly,
+ * instead of waiting for a scheduled run.
+ */
+public class MessageArchiverTest {
+    Path archiveDir;
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, start the app with the archive on in a new directory, every message old
+     * enough to archive and no scheduled run during the test.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws IOException, InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        archiveDir = Files.createTempDirectory("archive");
+        app = startApp();
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException, InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+        try (Stream<Path> files = Files.walk(archiveDir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Writing a segment of several blocks and reading it back, before and after a restart
+     *
+     * Expected Response:
+     *  Every message found by id, and by poster, with its text and time
+     *  Ids between and around the archived ones not found
+     */
+    @Test
+    public void segmentRoundTrip() throws IOException, InterruptedException {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < ArchiveSegment.BLOCK_RECORDS * 3 + 5; i++) {
+            messages.add(new Message(20000 + i * 2, 9996 + i % 3, "archived message " + i, 1669947792L + i));
+        }
+        app.getBean(MessageArchive.class).append(messages);
+        assertArchived(app.getBean(MessageArchive.class), messages);
+
+        SpringApplication.exit(app);
+        app = startApp();
+        assertArchived(app.getBean(MessageArchive.class), messages);
+    }
+
+    /**
+     * Archiving every message, then reading one through the API
+     *
+     * Expected Response:
+     *  3 messages archived and none left in the table
+     *  GET localhost:8080/messages/9999: the archived message
+     */
+    @Test
+    public void archivedMessagesAreReadFromTheArchive() throws IOException, InterruptedException {
+        Assertions.assertEquals(3, app.getBean(MessageArchiver.class).archive());
+        Assertions.assertEquals(0, app.getBean(JdbcTemplate.class).queryForObject("select count(*) from message",
+                Integer.class));
+
+        Message expectedResult = new Message(9999, 9999, "test message 1", 1669947792L);
+        Assertions.assertEquals(expectedResult, getMessage(9999));
+    }
+
+    /**
+     * Archiving every message, then deleting and editing one of them through the API
+     *
+     * Expected Response:
+     *  DELETE localhost:8080/messages/9999: Status Code 409
+     *  PATCH localhost:8080/messages/9999: Status Code 409
+     *  GET localhost:8080/messages/9999: the archived message, unchanged
+     *  DELETE localhost:8080/messages/12345, which never existed: Status Code 200, empty body
+     */
+    @Test
+    public void archivedMessagesCannotBeChanged() throws IOException, InterruptedException {
+        Assertions.assertEquals(3, app.getBean(MessageArchiver.class).archive());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .DELETE()
+                .build();
+        Assertions.assertEquals(409, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"edited\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(409, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assertions.assertEquals(new Message(9999, 9999, "test message 1", 1669947792L), getMessage(9999));
+
+        HttpRequest deleteUnknownRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/12345"))
+                .DELETE()
+                .build();
+        HttpResponse<String> unknown = webClient.send(deleteUnknownRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, unknown.statusCode());
+        Assertions.assertTrue(unknown.body().isEmpty());
+    }
+
+    /**
+     * Archiving a batch read before one of its messages was edited and another deleted
+     *
+     * Expected Response:
+     *  Only the unchanged message archived
+     *  GET localhost:8080/messages/9999: the edited text, still in the table
+     *  GET localhost:8080/messages/9997: Status Code 200, empty body
+     *  GET localhost:8080/messages/9996: the archived message
+     */
+    @Test
+    public void messagesChangedAfterTheReadAreLeftOut() throws IOException, InterruptedException {
+        JdbcTemplate jdbcTemplate = app.getBean(JdbcTemplate.class);
+        List<Message> batch = jdbcTemplate.query(
+                "select messageId, postedBy, messageText, timePostedEpoch, version from message order by messageId",
+                MessageReadRepository.MESSAGE_ROW_MAPPER);
+        jdbcTemplate.update("update message set messageText = 'edited', version = version + 1 where messageId = 9999");
+        jdbcTemplate.update("delete from message where messageId = 9997");
+
+        Assertions.assertEquals(1, app.getBean(MessageArchiver.class).archiveBatch(batch));
+
+        Assertions.assertEquals("edited", getMessage(9999).getMessageText());
+        Assertions.assertTrue(getBody(9997).isEmpty());
+        Assertions.assertEquals(new Message(9996, 9996, "test message 3", 1669947792L), getMessage(9996));
+        MessageArchive archive = app.getBean(MessageArchive.class);
+        Assertions.assertTrue(archive.findById(9999).isEmpty());
+        Assertions.assertTrue(archive.findById(9997).isEmpty());
+    }
+
+    private ConfigurableApplicationContext startApp() {
+        String[] args = new String[] {"--app.archive.enabled=true", "--app.archive.dir=" + archiveDir,
+                "--app.archive.max-age-seconds=0", "--app.archive.interval-ms=3600000"};
+        return SpringApplication.run(SocialMediaApp.class, args);
+    }
+
+    private static void assertArchived(MessageArchive archive, List<Message> messages) {
+        for (Message message : messages) {
+            Assertions.assertEquals(message, archive.findById(message.getMessageId()).orElse(null));
+            Assertions.assertTrue(archive.findById(message.getMessageId() + 1).isEmpty());
+        }
+        Assertions.assertTrue(archive.findById(19999).isEmpty());
+        for (int account = 9996; account <= 9998; account++) {
+            int postedBy = account;
+            long expected = messages.stream().filter(message -> message.getPostedBy() == postedBy).count();
+            Assertions.assertEquals(expected, archive.findByPostedBy(account).size());
+        }
+    }
+
+    private Message getMessage(int messageId) throws IOException, InterruptedException {
+        return objectMapper.readValue(getBody(messageId), Message.class);
+    }
+
+    private String getBody(int messageId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        return response.body();
+    }
+}